@@ -0,0 +1,155 @@
+package bench;
+
+import main.ast.Chunk;
+import main.ast.NodeKind;
+import main.examples.rewriters.FlattenerRewriter;
+import main.lexer.Lexer;
+import main.lexer.Token;
+import main.parser.Parser;
+import main.util.ASTPrettyPrinter;
+import main.util.ASTStringGenerator;
+import main.visit.BaseRewriter;
+import main.visit.CompositeVisitor;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Throughput and allocation benchmarks for the lexer, parser, rewriters and generators,
+ * run over every combination of corpus {@link Corpus.Shape shape} and size.
+ * <p>{@link #BENCHMARKS} is the one list of benchmarks. {@link JmhBenchmarks} runs it
+ * under JMH and is the one to trust; this runner and its {@link Harness} remain for
+ * when only a JDK is at hand.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * java -cp out bench.Benchmarks                         # everything, default sizes
+ * java -cp out bench.Benchmarks parse -size 100,10000 -shape NESTED,MIXED -wi 5 -i 10 -t 1000
+ * }</pre>
+ * The optional first argument is a regular expression matched against benchmark names.
+ */
+public class Benchmarks {
+
+    record Input(String source, List<Token> tokens, Chunk chunk) {
+        static Input of(Corpus.Shape shape, int size) {
+            String source = Corpus.generate(shape, size);
+            List<Token> tokens = new Lexer(source).tokenize();
+            return new Input(source, tokens, new Parser(tokens).parseChunk());
+        }
+    }
+
+    record Benchmark(String name, Function<Input, Supplier<?>> op) {}
+
+    static final List<Benchmark> BENCHMARKS = List.of(
+            new Benchmark("lex", in -> () -> new Lexer(in.source()).tokenize()),
+            new Benchmark("parse", in -> () -> new Parser(in.tokens()).parseChunk()),
+            new Benchmark("rewrite.identity", in -> () -> in.chunk().accept(new BaseRewriter() {})),
+            new Benchmark("rewrite.flatten", in -> () -> in.chunk().accept(new FlattenerRewriter())),
+            new Benchmark("generate.string", in -> () -> ASTStringGenerator.generate(in.chunk(), true)),
+            new Benchmark("generate.pretty", in -> () -> ASTPrettyPrinter.generate(in.chunk())),
+            new Benchmark("visit.rules.separate", in -> () -> visitSeparately(in.chunk())),
+            new Benchmark("visit.rules.composite", in -> () -> visitComposite(in.chunk()))
+    );
+
+    /**
+     * The benchmark called {@code name}.
+     *
+     * @throws IllegalArgumentException if there is none
+     */
+    static Benchmark named(String name) {
+        for (Benchmark b : BENCHMARKS) {
+            if (b.name().equals(name)) return b;
+        }
+        throw new IllegalArgumentException("Unknown benchmark: " + name);
+    }
+
+    // 40 lint-style rules spread over the node kinds, each counting its matches
+    private static final List<CompositeVisitor.Rule> RULES = countingRules(40);
+    private static final CompositeVisitor COMPOSITE = new CompositeVisitor();
+    private static long hits;
+
+    static {
+        RULES.forEach(COMPOSITE::add);
+    }
+
+    private static List<CompositeVisitor.Rule> countingRules(int count) {
+        NodeKind[] kinds = NodeKind.values();
+        List<CompositeVisitor.Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rules.add(CompositeVisitor.Rule.onEnter(kinds[i % kinds.length], node -> hits++));
+        }
+        return rules;
+    }
+
+    // One full walk per rule, as with a NodeVisitor per analysis: nodes x rules.
+    static long visitSeparately(Chunk chunk) {
+        hits = 0;
+        for (CompositeVisitor.Rule rule : RULES) {
+            long kinds = rule.enterKinds();
+            chunk.descendantsAndSelf().forEach(node -> {
+                if ((node.getKind().mask() & kinds) != 0) rule.enter(node);
+            });
+        }
+        return hits;
+    }
+
+    // One walk dispatching through the per-kind table: nodes + matches.
+    static long visitComposite(Chunk chunk) {
+        hits = 0;
+        COMPOSITE.walk(chunk);
+        return hits;
+    }
+
+    void main(String[] args) {
+        Pattern filter = Pattern.compile(".*");
+        int[] sizes = { 100, 1000, 10000, 100000 };
+        Set<Corpus.Shape> shapes = EnumSet.allOf(Corpus.Shape.class);
+        int warmup = 3, iterations = 5;
+        long millis = 1000;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-size"  -> sizes = parseInts(args[++i]);
+                case "-shape" -> {
+                    shapes = EnumSet.noneOf(Corpus.Shape.class);
+                    for (String s : args[++i].split(",")) shapes.add(Corpus.Shape.valueOf(s.trim().toUpperCase()));
+                }
+                case "-wi"    -> warmup = Integer.parseInt(args[++i]);
+                case "-i"     -> iterations = Integer.parseInt(args[++i]);
+                case "-t"     -> millis = Long.parseLong(args[++i]);
+                default       -> filter = Pattern.compile(args[i]);
+            }
+        }
+
+        Harness harness = new Harness(warmup, iterations, millis);
+        List<Harness.Measurement> results = new ArrayList<>();
+        for (Corpus.Shape shape : shapes) {
+            for (int size : sizes) {
+                Input input = Input.of(shape, size);
+                String params = shape + "/" + size;
+
+                for (Benchmark b : BENCHMARKS) {
+                    if (!filter.matcher(b.name()).find()) continue;
+                    Harness.Measurement m = harness.run(b.name(), params, b.op().apply(input));
+                    IO.println(m);
+                    results.add(m);
+                }
+            }
+        }
+
+        IO.println("");
+        IO.println(String.format("%-18s %-20s %30s %20s", "Benchmark", "Shape/Size", "Throughput", "gc.alloc.rate.norm"));
+        results.forEach(IO::println);
+    }
+
+    private static int[] parseInts(String csv) {
+        String[] parts = csv.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+}
@@ -0,0 +1,139 @@
+package bench;
+
+import main.util.ASTStringGenerator;
+import main.util.CorpusGenerator;
+
+import java.util.Random;
+
+/**
+ * Deterministic Lua sources of a given shape, so benchmark runs compare like with like.
+ */
+final class Corpus {
+
+    enum Shape {
+        /** Functions, loops and ifs nested dozens of levels deep. */
+        NESTED,
+        /** Table constructors with hundreds of fields. */
+        WIDE_TABLES,
+        /** Short and long string literals of several kilobytes. */
+        LONG_STRINGS,
+        /** Many distinct dotted names, calls and arithmetic on identifiers. */
+        IDENTIFIERS,
+        /** A blend of everything, including the blocks {@code FlattenerRewriter} targets. */
+        MIXED,
+        /** Default {@link CorpusGenerator} output. */
+        SYNTHETIC
+    }
+
+    private static final String[] WORDS = {
+            "player", "health", "damage", "inventory", "item", "count", "index", "target",
+            "position", "velocity", "speed", "timer", "state", "config", "value", "result"
+    };
+
+    private final Random random;
+    private final StringBuilder out = new StringBuilder();
+
+    private Corpus(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Roughly {@code statements} top-level statements of the given shape.
+     */
+    static String generate(Shape shape, int statements) {
+        if (shape == Shape.SYNTHETIC) {
+            return ASTStringGenerator.generate(new CorpusGenerator(statements).generateChunk(statements), false);
+        }
+        Corpus c = new Corpus(shape.ordinal() * 31L + statements);
+        for (int i = 0; i < statements; i++) {
+            switch (shape) {
+                case NESTED       -> c.nested(i % 40 + 1);
+                case WIDE_TABLES  -> c.table(50 + c.random.nextInt(150));
+                case LONG_STRINGS -> c.longString(1024 + c.random.nextInt(3072));
+                case IDENTIFIERS  -> c.identifiers();
+                case MIXED        -> c.mixed(i);
+                default           -> throw new IllegalArgumentException("Unsupported shape: " + shape);
+            }
+        }
+        return c.out.toString();
+    }
+
+    private void mixed(int i) {
+        switch (i % 6) {
+            case 0 -> nested(3 + random.nextInt(6));
+            case 1 -> table(4 + random.nextInt(12));
+            case 2 -> longString(16 + random.nextInt(200));
+            case 3 -> flattenTarget();
+            default -> identifiers();
+        }
+    }
+
+    private void nested(int depth) {
+        for (int d = 0; d < depth; d++) {
+            indent(d);
+            switch (d % 4) {
+                case 0 -> out.append("if ").append(name()).append(" > ").append(d).append(" then\n");
+                case 1 -> out.append("for i").append(d).append(" = 1, ").append(name()).append(" do\n");
+                case 2 -> out.append("while ").append(name()).append(" do\n");
+                default -> out.append("local function f").append(d).append("(a, b)\n");
+            }
+        }
+        indent(depth);
+        out.append(name()).append(" = ").append(name()).append(" + 1\n");
+        for (int d = depth - 1; d >= 0; d--) {
+            indent(d);
+            out.append("end\n");
+        }
+    }
+
+    private void table(int fields) {
+        out.append("local ").append(name()).append(" = {");
+        for (int f = 0; f < fields; f++) {
+            if (f > 0) out.append(", ");
+            switch (f % 4) {
+                case 0 -> out.append(word()).append(f).append(" = ").append(random.nextInt(1000));
+                case 1 -> out.append('"').append(word()).append('"');
+                case 2 -> out.append('[').append(f).append("] = ").append(name()).append("(").append(f).append(")");
+                default -> out.append("{ ").append(random.nextInt(10)).append(", ").append(name()).append(" }");
+            }
+        }
+        out.append("}\n");
+    }
+
+    private void longString(int length) {
+        boolean bracketed = random.nextBoolean();
+        out.append("local ").append(name()).append(" = ").append(bracketed ? "[[" : "\"");
+        int start = out.length();
+        while (out.length() - start < length) {
+            out.append(word()).append(bracketed && random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+        out.append(bracketed ? "]]" : "\"").append('\n');
+    }
+
+    private void identifiers() {
+        out.append("local ").append(name()).append(" = ")
+                .append(name()).append('.').append(word()).append(" + ")
+                .append(name()).append('(').append(name()).append(", ").append(name()).append(".").append(word()).append(") * ")
+                .append(name()).append(':').append(word()).append("(").append(name()).append(")\n");
+    }
+
+    private void flattenTarget() {
+        out.append("if test == \"flatten me\" then\n");
+        for (int s = 0; s < 5; s++) {
+            out.append("    print(").append(name()).append(")\n");
+        }
+        out.append("end\n");
+    }
+
+    private String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private String name() {
+        return word() + "_" + WORDS[random.nextInt(WORDS.length)] + random.nextInt(50);
+    }
+
+    private void indent(int depth) {
+        out.repeat("    ", depth);
+    }
+}
@@ -0,0 +1,81 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/**
+ * Minimal JMH-style measurement loop: timed warmup iterations, then timed measurement
+ * iterations reporting throughput and bytes allocated per operation.
+ * <p>Results are fed to a volatile sink so the JIT cannot drop the work. Allocation
+ * comes from the current thread's allocation counter, the same source as JMH's
+ * {@code gc.alloc.rate.norm}. Everything runs in one JVM, so run a single benchmark
+ * per invocation when comparing numbers across changes. A fallback for building
+ * without Maven; prefer {@link JmhBenchmarks}, which forks and guards against dead code
+ * elimination properly.</p>
+ */
+final class Harness {
+
+    /**
+     * @param error half-width of the 99.9% confidence interval of {@code opsPerSecond}
+     */
+    record Measurement(String benchmark, String params, double opsPerSecond, double error, double bytesPerOp) {
+        @Override
+        public String toString() {
+            return String.format("%-18s %-20s %14.3f ± %11.3f  ops/s %14.1f  B/op",
+                    benchmark, params, opsPerSecond, error, bytesPerOp);
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static volatile Object sink;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+
+    Harness(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+    }
+
+    Measurement run(String benchmark, String params, Supplier<?> op) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(op);
+        }
+        double[] throughput = new double[measurementIterations];
+        long ops = 0;
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < measurementIterations; i++) {
+            long[] result = iteration(op);
+            ops += result[0];
+            throughput[i] = result[0] * 1e9 / result[1];
+        }
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        double mean = 0;
+        for (double t : throughput) mean += t;
+        mean /= throughput.length;
+        double variance = 0;
+        for (double t : throughput) variance += (t - mean) * (t - mean);
+        double stddev = throughput.length > 1 ? Math.sqrt(variance / (throughput.length - 1)) : 0;
+        double error = 3.291 * stddev / Math.sqrt(throughput.length);   // z at 99.9%
+        return new Measurement(benchmark, params, mean, error, (double) allocated / ops);
+    }
+
+    // {operations, elapsed nanos}
+    private long[] iteration(Supplier<?> op) {
+        long start = System.nanoTime();
+        long deadline = start + iterationNanos;
+        long ops = 0;
+        long now;
+        do {
+            sink = op.get();
+            ops++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return new long[] { ops, now - start };
+    }
+}
@@ -0,0 +1,68 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The {@link Benchmarks#BENCHMARKS} table under JMH, over every corpus shape and size.
+ * Each entry is a value of the {@code benchmark} parameter; setup fails if that list
+ * and the table differ, so a benchmark added to the table cannot be missed here.
+ * Built by {@code bench/pom.xml} into {@code bench/target/benchmarks.jar}; use
+ * {@code -prof gc} for {@code gc.alloc.rate.norm}.
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * mvn -B package
+ * java -jar bench/target/benchmarks.jar                                   # everything
+ * java -jar bench/target/benchmarks.jar -p benchmark=parse -p size=100,10000 -p shape=NESTED,MIXED -prof gc
+ * }</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JmhBenchmarks {
+
+    @Param({ "lex", "parse", "rewrite.identity", "rewrite.flatten", "generate.string", "generate.pretty",
+            "visit.rules.separate", "visit.rules.composite" })
+    public String benchmark;
+
+    // Corpus.Shape names; a String because the generated code cannot see the package-private enum
+    @Param({ "NESTED", "WIDE_TABLES", "LONG_STRINGS", "IDENTIFIERS", "MIXED", "SYNTHETIC" })
+    public String shape;
+
+    @Param({ "100", "1000", "10000", "100000" })
+    public int size;
+
+    private Supplier<?> op;
+
+    @Setup
+    public void setUp() throws NoSuchFieldException {
+        List<String> listed = Arrays.asList(JmhBenchmarks.class.getField("benchmark").getAnnotation(Param.class).value());
+        List<String> table = Benchmarks.BENCHMARKS.stream().map(Benchmarks.Benchmark::name).toList();
+        if (!listed.equals(table)) {
+            throw new IllegalStateException("benchmark parameter " + listed + " does not match Benchmarks.BENCHMARKS " + table);
+        }
+        op = Benchmarks.named(benchmark).op().apply(Benchmarks.Input.of(Corpus.Shape.valueOf(shape), size));
+    }
+
+    @Benchmark
+    public Object run() {
+        return op.get();
+    }
+}
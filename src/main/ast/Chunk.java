@@ -5,12 +5,16 @@ import main.util.Comment;
 import main.util.Span;
 import main.visit.NodeVisitor;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public final class Chunk extends Node {
 
     private final Block block;
+    // volatile: cached chunks are shared between threads, which must see a whole index
+    private volatile KindIndex kindIndex;    // null unless built, see buildKindIndex()
+    private volatile SpanIndex spanIndex;    // built on first offset query
+
     public Chunk(Block statements,
                  Span span,
                  List<Comment> leading,
@@ -28,11 +32,95 @@ public final class Chunk extends Node {
         return block;
     }
 
+    /**
+     * Number of nodes in this chunk, every syntactic child included; node ids of
+     * {@link RedNode#root(Node) RedNode.root(chunk)} run from 0 to {@code getNodeCount() - 1}.
+     */
+    public int getNodeCount() {
+        return getSubtreeSize();
+    }
+
+    /**
+     * Offset index over this chunk's node spans, built on first use.
+     */
+    public SpanIndex getSpanIndex() {
+        SpanIndex index = spanIndex;
+        if (index == null) {
+            index = SpanIndex.of(this);
+            spanIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * The innermost node covering {@code offset}, or null. See {@link SpanIndex#nodeAt(int)}.
+     */
+    public Node nodeAt(int offset) {
+        return getSpanIndex().nodeAt(offset);
+    }
+
+    public KindIndex getKindIndex() {
+        return kindIndex;
+    }
+
+    public boolean hasKindIndex() {
+        return kindIndex != null;
+    }
+
+    /**
+     * Indexes all descendants by {@link NodeKind} so {@link #ofKind(NodeKind)} and
+     * {@link #getDescendantsOfType(Class)} no longer walk the tree.
+     */
+    public KindIndex buildKindIndex() {
+        KindIndex index = KindIndex.of(this);
+        kindIndex = index;
+        return index;
+    }
+
+    public void invalidateKindIndex() {
+        kindIndex = null;
+    }
+
     @Override
-    public List<Node> getChildren() {
-        List<Node> out = new ArrayList<>();
-        out.addAll(block.getStatements());
-        return out;
+    public List<Node> ofKind(NodeKind kind) {
+        KindIndex index = kindIndex;
+        if (index != null) {
+            return index.ofKind(kind);
+        }
+        return super.ofKind(kind);
+    }
+
+    @Override
+    public <T extends Node> List<T> getDescendantsOfType(Class<T> type) {
+        KindIndex index = kindIndex;
+        if (index != null) {
+            List<T> indexed = index.ofType(type);
+            if (indexed != null) {
+                return indexed;
+            }
+        }
+        return super.getDescendantsOfType(type);
+    }
+
+    @Override
+    public int childCount() {
+        return block.getStatements().size();
+    }
+
+    @Override
+    public Node childAt(int index) {
+        return block.getStatements().get(index);
+    }
+
+    @Override
+    public int syntaxChildCount() {
+        return 1;
+    }
+
+    @Override
+    public Node syntaxChildAt(int index) {
+        Objects.checkIndex(index, 1);
+        return block;
     }
 
     @Override
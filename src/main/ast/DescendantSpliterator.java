@@ -0,0 +1,116 @@
+package main.ast;
+
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Lazy preorder walk over one or more subtrees.
+ * <p>Pending subtrees are kept on a stack with the next one on top. Splitting hands
+ * the front half of the stack to the new spliterator; when only one subtree is
+ * left it is opened up and split at its child boundaries, so parallel streams
+ * keep document order.</p>
+ */
+final class DescendantSpliterator implements Spliterator<Node> {
+
+    private static final int CHARACTERISTICS = ORDERED | NONNULL | IMMUTABLE;
+
+    private final ArrayDeque<Node> pending;
+    private Node head;      // emitted on its own before anything on the stack
+    private long estimate;
+
+    private DescendantSpliterator(ArrayDeque<Node> pending, Node head, long estimate) {
+        this.pending = pending;
+        this.head = head;
+        this.estimate = estimate;
+    }
+
+    /**
+     * Descendants of {@code root}, optionally preceded by {@code root} itself.
+     */
+    static DescendantSpliterator of(Node root, boolean includeSelf) {
+        ArrayDeque<Node> pending = new ArrayDeque<>();
+        if (includeSelf) {
+            pending.push(root);
+        } else {
+            pushChildren(pending, root, 0, root.childCount());
+        }
+        return new DescendantSpliterator(pending, null, Long.MAX_VALUE);
+    }
+
+    // Pushes children [from, to) so that child 'from' ends up on top.
+    private static void pushChildren(ArrayDeque<Node> stack, Node parent, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            stack.push(parent.childAt(i));
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Node> action) {
+        if (head != null) {
+            Node n = head;
+            head = null;
+            action.accept(n);
+            return true;
+        }
+        Node n = pending.poll();
+        if (n == null) return false;
+        pushChildren(pending, n, 0, n.childCount());
+        action.accept(n);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Node> action) {
+        if (head != null) {
+            Node n = head;
+            head = null;
+            action.accept(n);
+        }
+        Node n;
+        while ((n = pending.poll()) != null) {
+            pushChildren(pending, n, 0, n.childCount());
+            action.accept(n);
+        }
+    }
+
+    @Override
+    public Spliterator<Node> trySplit() {
+        if (head != null) return null;
+
+        ArrayDeque<Node> prefix = new ArrayDeque<>();
+        Node prefixHead = null;
+
+        if (pending.size() >= 2) {
+            // Top of the stack comes first in document order; move the top half over.
+            int half = pending.size() / 2;
+            for (int i = 0; i < half; i++) {
+                prefix.addLast(pending.pop());
+            }
+        } else if (pending.size() == 1 && pending.peek().childCount() >= 2) {
+            // A single subtree: emit its root and first half of its children first.
+            Node root = pending.pop();
+            int count = root.childCount();
+            int mid = count / 2;
+            prefixHead = root;
+            pushChildren(prefix, root, 0, mid);
+            pushChildren(pending, root, mid, count);
+        } else {
+            return null;
+        }
+
+        estimate >>>= 1;
+        return new DescendantSpliterator(prefix, prefixHead, estimate);
+    }
+
+    @Override
+    public long estimateSize() {
+        if (pending.isEmpty()) return head != null ? 1 : 0;
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+}
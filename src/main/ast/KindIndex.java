@@ -0,0 +1,142 @@
+package main.ast;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Descendants of a root node grouped by {@link NodeKind}, each group in document
+ * order (a preorder walk over {@link Node#syntaxChildAt(int) syntactic children}).
+ * <p>Built once with a single preorder walk; lookups are O(k) in the number of
+ * matching nodes. The index describes the tree as it was when it was built, so
+ * it is only valid for trees that are not rewritten in place.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * Parser parser = new Parser(source);
+ * parser.setKindIndexing(true);
+ * Chunk chunk = parser.parseChunk();
+ * List<Node> calls = chunk.ofKind(NodeKind.FUNCTION_CALL);
+ * }</pre>
+ */
+public final class KindIndex {
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final Node[] EMPTY = new Node[0];
+
+    private final Node[][] nodes;           // indexed by NodeKind.ordinal()
+    private final Class<?>[][] classes;     // concrete node classes seen per kind
+
+    private KindIndex(Node[][] nodes, Class<?>[][] classes) {
+        this.nodes = nodes;
+        this.classes = classes;
+    }
+
+    /**
+     * Indexes all {@link Node#syntaxChildAt(int) syntactic} descendants of {@code root}
+     * (not {@code root} itself).
+     */
+    public static KindIndex of(Node root) {
+        Node[][] nodes = new Node[KINDS.length][];
+        int[] sizes = new int[KINDS.length];
+        Class<?>[][] classes = new Class<?>[KINDS.length][];
+
+        Deque<Node> stack = new ArrayDeque<>();
+        for (int i = root.syntaxChildCount() - 1; i >= 0; i--) {
+            Node child = root.syntaxChildAt(i);
+            if (child != null) stack.push(child);
+        }
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            int k = n.getKind().ordinal();
+
+            Node[] bucket = nodes[k];
+            if (bucket == null) {
+                bucket = nodes[k] = new Node[8];
+            } else if (sizes[k] == bucket.length) {
+                bucket = nodes[k] = Arrays.copyOf(bucket, bucket.length * 2);
+            }
+            bucket[sizes[k]++] = n;
+            classes[k] = addClass(classes[k], n.getClass());
+
+            for (int i = n.syntaxChildCount() - 1; i >= 0; i--) {
+                Node child = n.syntaxChildAt(i);
+                if (child != null) stack.push(child);
+            }
+        }
+
+        // Trim to exact size so the index stays compact.
+        for (int k = 0; k < nodes.length; k++) {
+            if (nodes[k] == null) {
+                nodes[k] = EMPTY;
+            } else if (nodes[k].length != sizes[k]) {
+                nodes[k] = Arrays.copyOf(nodes[k], sizes[k]);
+            }
+        }
+        return new KindIndex(nodes, classes);
+    }
+
+    private static Class<?>[] addClass(Class<?>[] seen, Class<?> c) {
+        if (seen == null) return new Class<?>[] { c };
+        for (Class<?> s : seen) {
+            if (s == c) return seen;
+        }
+        Class<?>[] grown = Arrays.copyOf(seen, seen.length + 1);
+        grown[seen.length] = c;
+        return grown;
+    }
+
+    /**
+     * All indexed nodes of the given kind, in document order.
+     */
+    public List<Node> ofKind(NodeKind kind) {
+        Node[] bucket = nodes[kind.ordinal()];
+        if (bucket.length == 0) return List.of();
+        return Collections.unmodifiableList(Arrays.asList(bucket));
+    }
+
+    public int count(NodeKind kind) {
+        return nodes[kind.ordinal()].length;
+    }
+
+    /**
+     * All indexed nodes of the given type, or null if instances of {@code type}
+     * are spread over several kinds and cannot be answered from a single group
+     * while keeping document order.
+     */
+    <T extends Node> List<T> ofType(Class<T> type) {
+        int match = -1;
+        for (int k = 0; k < classes.length; k++) {
+            if (classes[k] == null) continue;
+            for (Class<?> c : classes[k]) {
+                if (type.isAssignableFrom(c)) {
+                    if (match != -1 && match != k) return null;
+                    match = k;
+                    break;
+                }
+            }
+        }
+        if (match == -1) return List.of();
+
+        // Some kinds are shared by several classes, so filter unless every class matches.
+        boolean all = true;
+        for (Class<?> c : classes[match]) {
+            all &= type.isAssignableFrom(c);
+        }
+        Node[] bucket = nodes[match];
+        if (all) {
+            @SuppressWarnings("unchecked")
+            List<T> view = (List<T>) (List<?>) Collections.unmodifiableList(Arrays.asList(bucket));
+            return view;
+        }
+        List<T> result = new ArrayList<>();
+        for (Node n : bucket) {
+            if (type.isInstance(n)) {
+                result.add(type.cast(n));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
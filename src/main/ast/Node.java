@@ -6,16 +6,26 @@ import main.util.Comment;
 import main.util.Span;
 import main.visit.NodeVisitor;
 
+import java.util.AbstractList;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class Node {
 
-    private Node parent;                 // null for root
+    private static final int UNINDEXED = -2;
+
+    private Node parent;                 // first node to adopt this one, see claim()
+    private int indexInParent = UNINDEXED;
+    private long subtreeKinds;           // NodeKind bits of this node and everything it adopted
+    private int subtreeSize = 1;         // this node plus everything it adopted
+    private volatile long structuralHash;  // 0 until first computed; volatile so reads never tear
     private final Span span;
     private final NodeKind kind;
     private final Token token;
@@ -28,6 +38,7 @@ public abstract class Node {
                    List<Comment> leadingComments,
                    List<Comment> trailingComments) {
         this.kind = Objects.requireNonNull(kind, "kind");
+        this.subtreeKinds = kind.mask();
         this.span = Objects.requireNonNull(span, "span");
         this.token = new Token(TokenType.UNKNOWN, "UNKNOWN", span);
         this.leadingComments  = leadingComments  != null ? List.copyOf(leadingComments)  : List.of();
@@ -40,6 +51,7 @@ public abstract class Node {
                    List<Comment> leadingComments,
                    List<Comment> trailingComments) {
         this.kind = Objects.requireNonNull(kind, "kind");
+        this.subtreeKinds = kind.mask();
         this.token = token;
         this.span = Objects.requireNonNull(span, "span");
         this.leadingComments  = leadingComments  != null ? List.copyOf(leadingComments)  : List.of();
@@ -61,27 +73,128 @@ public abstract class Node {
     public NodeKind getKind()      { return kind; }
     public Token getToken()        { return token; }
     public Span getSpan()          { return span; }
+
+    /**
+     * The first node that adopted this one, or null for a root.
+     * @deprecated a node may be shared by several trees, and this only knows the first;
+     * use {@link RedNode#getParent()}
+     */
+    @Deprecated
     public Node getParent()        { return parent; }
+
+    /**
+     * @deprecated use {@code RedNode.getParent() != null}
+     */
+    @Deprecated
     public boolean hasParent()     { return parent != null; }
 
-    public void setParent(Node parent) {   // package-private: only AST building code calls this
+    /**
+     * @deprecated parents are set on adoption; navigate a specific tree through {@link RedNode}
+     */
+    @Deprecated
+    public void setParent(Node parent) {
         this.parent = parent;
+        this.indexInParent = UNINDEXED;
+    }
+
+    /**
+     * Union of {@link NodeKind#mask()} over this node and its whole subtree,
+     * computed bottom-up as children are adopted.
+     */
+    public long getSubtreeKinds()  { return subtreeKinds; }
+
+    /**
+     * False if no node of the given kind occurs in this subtree (this node included),
+     * so searches and rewriters can skip it entirely.
+     */
+    public boolean mayContain(NodeKind kind) {
+        return (subtreeKinds & kind.mask()) != 0;
+    }
+
+    /**
+     * Number of nodes in this subtree, this node and every syntactic descendant
+     * included. Fixed when the node is built, so it holds wherever the subtree is shared.
+     */
+    public int getSubtreeSize()    { return subtreeSize; }
+
+    /**
+     * 64-bit hash of this subtree's structure, ignoring spans, comments and parents.
+     * Computed bottom-up on first use, with an explicit stack, and cached in every
+     * node it reaches.
+     */
+    public long structuralHash() {
+        long h = structuralHash;
+        return h != 0 ? h : StructuralHash.hash(this);
+    }
+
+    long cachedStructuralHash()              { return structuralHash; }
+    void cacheStructuralHash(long hash)      { structuralHash = hash; }
+
+    /**
+     * True if both subtrees have the same shape and contents, ignoring spans,
+     * comments and parents. Differing hashes answer without walking either tree.
+     */
+    public boolean structurallyEquals(Node other) {
+        if (this == other) return true;
+        if (other == null || structuralHash() != other.structuralHash()) return false;
+        return StructuralHash.equal(this, other);
     }
 
     public List<Comment> getLeadingComments()  { return leadingComments; }
     public List<Comment> getTrailingComments() { return trailingComments; }
 
     // Implemented by subclasses
-    public abstract List<Node> getChildren();
+    public abstract int childCount();
+    public abstract Node childAt(int index);
     public abstract <R> R accept(NodeVisitor<R> nodeVisitor);
 
+    /**
+     * Number of syntactic children: every node this one holds, including the blocks
+     * and declared names that {@link #childAt(int)} leaves out (the body of a
+     * {@code do}, the names of a {@code local}). {@link #syntaxChildAt(int)} lists
+     * them in source order, which {@code childAt} does not always follow (the body of
+     * an {@code if} comes last there). Defaults to {@link #childCount()} for nodes
+     * whose {@code childAt} already lists everything in order.
+     */
+    public int syntaxChildCount() {
+        return childCount();
+    }
+
+    public Node syntaxChildAt(int index) {
+        return childAt(index);
+    }
+
+    /**
+     * Read-only view over {@link #childAt(int)}; nothing is copied.
+     */
+    public List<Node> getChildren() {
+        if (childCount() == 0) return List.of();
+        return new AbstractList<>() {
+            @Override public Node get(int index) { return childAt(index); }
+            @Override public int size()          { return childCount(); }
+        };
+    }
+
     // ----------------------------------------------------------------------
     // Child attachment helpers (used in constructors of concrete nodes)
     // ----------------------------------------------------------------------
 
+    /*
+     * A subtree can be shared by any number of trees (rewrites, hash-consing), so only
+     * orphans take a parent here, for the deprecated navigation below; RedNode supplies
+     * positions within one tree.
+     */
+    private void claim(Node child) {
+        if (child.parent == null) {
+            child.parent = this;
+        }
+        subtreeKinds |= child.subtreeKinds;
+        subtreeSize += child.subtreeSize;
+    }
+
     protected <T extends Node> T adoptChild(T child) {
         if (child != null) {
-            child.setParent(this);
+            claim(child);
         }
         return child;
     }
@@ -93,7 +206,7 @@ public abstract class Node {
         List<T> copy = new ArrayList<>(children.size());
         for (T child : children) {
             if (child != null) {
-                child.setParent(this);
+                claim(child);
                 copy.add(child);
             }
         }
@@ -102,8 +215,11 @@ public abstract class Node {
 
     protected <T extends Node> List<T> adoptAll(List<T> children) {
         if (children == null || children.isEmpty()) return List.of();
-        for (T child : children)
-            if (child != null) child.setParent(this);
+        for (T child : children) {
+            if (child != null) {
+                claim(child);
+            }
+        }
         return List.copyOf(children);
     }
 
@@ -112,45 +228,62 @@ public abstract class Node {
     // ----------------------------------------------------------------------
 
     public boolean hasChildren() {
-        return !getChildren().isEmpty();
+        return childCount() != 0;
     }
 
     public int getChildCount() {
-        return getChildren().size();
+        return childCount();
     }
 
     public Node getChild(int index) {
-        return getChildren().get(index);
+        return childAt(index);
     }
 
     /**
-     * Index of this node in its parent's children list, or -1 if no parent.
+     * Index of this node among {@link #getParent()}'s children, or -1 if no parent.
+     * <p>The first lookup indexes all siblings in one pass; the result is cached
+     * until the node is re-parented.</p>
+     * @deprecated use {@link RedNode#getIndexInParent()}
      */
+    @Deprecated
     public int getIndexInParent() {
         if (parent == null) return -1;
-        List<Node> siblings = parent.getChildren();
-        for (int i = 0; i < siblings.size(); i++) {
-            if (siblings.get(i) == this) {
-                return i;
+        if (indexInParent == UNINDEXED) {
+            parent.indexChildren();
+            if (indexInParent == UNINDEXED) {
+                indexInParent = -1;   // parent owns us but does not list us as a child
+            }
+        }
+        return indexInParent;
+    }
+
+    private void indexChildren() {
+        for (int i = 0, n = childCount(); i < n; i++) {
+            Node child = childAt(i);
+            if (child != null && child.parent == this && child.indexInParent == UNINDEXED) {
+                child.indexInParent = i;
             }
         }
-        return -1;
     }
 
+    /**
+     * @deprecated use {@link RedNode#getPreviousSibling()}
+     */
+    @Deprecated
     public Node getPreviousSibling() {
-        if (parent == null) return null;
-        List<Node> siblings = parent.getChildren();
         int idx = getIndexInParent();
         if (idx <= 0) return null;
-        return siblings.get(idx - 1);
+        return parent.childAt(idx - 1);
     }
 
+    /**
+     * @deprecated use {@link RedNode#getNextSibling()}
+     */
+    @Deprecated
     public Node getNextSibling() {
-        if (parent == null) return null;
-        List<Node> siblings = parent.getChildren();
         int idx = getIndexInParent();
-        if (idx == -1 || idx + 1 >= siblings.size()) return null;
-        return siblings.get(idx + 1);
+        if (idx == -1 || idx + 1 >= parent.childCount()) return null;
+        return parent.childAt(idx + 1);
     }
 
     // ----------------------------------------------------------------------
@@ -159,7 +292,9 @@ public abstract class Node {
 
     /**
      * Returns all ancestors of this node, starting from the parent up to the root.
+     * @deprecated use {@link RedNode#getAncestors()}
      */
+    @Deprecated
     public List<Node> getAncestors() {
         List<Node> result = new ArrayList<>();
         Node current = this.parent;
@@ -171,8 +306,10 @@ public abstract class Node {
     }
 
     /**
-     * Returns the root of the tree that contains this node.
+     * Returns the root of the tree that first adopted this node.
+     * @deprecated use {@link RedNode#getRoot()}
      */
+    @Deprecated
     public Node getRoot() {
         Node current = this;
         while (current.parent != null) {
@@ -183,7 +320,9 @@ public abstract class Node {
 
     /**
      * Returns the nearest ancestor of the given type, or null if none.
+     * @deprecated use {@link RedNode#getAncestorOfType(Class)}
      */
+    @Deprecated
     public <T extends Node> T getAncestorOfType(Class<T> type) {
         Node current = this.parent;
         while (current != null) {
@@ -204,14 +343,16 @@ public abstract class Node {
      */
     public List<Node> getDescendants() {
         List<Node> result = new ArrayList<>();
-        Deque<Node> stack = new ArrayDeque<>(getChildren());
+        Deque<Node> stack = new ArrayDeque<>();
+        for (int i = childCount() - 1; i >= 0; i--) {
+            stack.push(childAt(i));
+        }
         while (!stack.isEmpty()) {
             Node n = stack.pop();
             result.add(n);
             // Push children in reverse so natural left-to-right order is preserved.
-            List<Node> children = n.getChildren();
-            for (int i = children.size() - 1; i >= 0; i--) {
-                stack.push(children.get(i));
+            for (int i = n.childCount() - 1; i >= 0; i--) {
+                stack.push(n.childAt(i));
             }
         }
         return Collections.unmodifiableList(result);
@@ -227,26 +368,99 @@ public abstract class Node {
         while (!stack.isEmpty()) {
             Node n = stack.pop();
             result.add(n);
-            List<Node> children = n.getChildren();
-            for (int i = children.size() - 1; i >= 0; i--) {
-                stack.push(children.get(i));
+            for (int i = n.childCount() - 1; i >= 0; i--) {
+                stack.push(n.childAt(i));
             }
         }
         return Collections.unmodifiableList(result);
     }
 
     /**
-     * All descendants of a given type.
+     * All {@link #syntaxChildAt(int) syntactic} descendants of a given type, the
+     * same nodes a {@link KindIndex} holds.
      */
     public <T extends Node> List<T> getDescendantsOfType(Class<T> type) {
         List<T> result = new ArrayList<>();
-        for (Node n : getDescendants()) {
+        Deque<Node> stack = new ArrayDeque<>();
+        for (int i = syntaxChildCount() - 1; i >= 0; i--) {
+            Node child = syntaxChildAt(i);
+            if (child != null) stack.push(child);
+        }
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
             if (type.isInstance(n)) {
                 result.add(type.cast(n));
             }
+            for (int i = n.syntaxChildCount() - 1; i >= 0; i--) {
+                Node child = n.syntaxChildAt(i);
+                if (child != null) stack.push(child);
+            }
         }
         return Collections.unmodifiableList(result);
     }
 
+    /**
+     * All {@link #syntaxChildAt(int) syntactic} descendants of the given kind, in
+     * document order; the same nodes a {@link KindIndex} holds.
+     */
+    public List<Node> ofKind(NodeKind kind) {
+        List<Node> result = new ArrayList<>();
+        long bit = kind.mask();
+        Deque<Node> stack = new ArrayDeque<>();
+        for (int i = syntaxChildCount() - 1; i >= 0; i--) {
+            Node child = syntaxChildAt(i);
+            if (child != null && (child.subtreeKinds & bit) != 0) stack.push(child);
+        }
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            if (n.getKind() == kind) {
+                result.add(n);
+            }
+            // Skip subtrees that cannot contain the kind.
+            for (int i = n.syntaxChildCount() - 1; i >= 0; i--) {
+                Node child = n.syntaxChildAt(i);
+                if (child != null && (child.subtreeKinds & bit) != 0) stack.push(child);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Lazy stream over all descendants, in the same order as {@link #getDescendants()}.
+     * <p>Nothing is materialized up front, and the stream splits at child boundaries
+     * so {@code .parallel()} spreads large trees over several threads.</p>
+     */
+    public Stream<Node> descendants() {
+        return StreamSupport.stream(DescendantSpliterator.of(this, false), false);
+    }
+
+    /**
+     * Lazy stream over this node plus all descendants (preorder).
+     */
+    public Stream<Node> descendantsAndSelf() {
+        return StreamSupport.stream(DescendantSpliterator.of(this, true), false);
+    }
+
+    /**
+     * First descendant in preorder that matches the predicate, or null if none.
+     * Stops walking as soon as a match is found.
+     */
+    public Node findFirstDescendant(Predicate<? super Node> predicate) {
+        Deque<Node> stack = new ArrayDeque<>();
+        for (int i = childCount() - 1; i >= 0; i--) {
+            stack.push(childAt(i));
+        }
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            if (predicate.test(n)) {
+                return n;
+            }
+            for (int i = n.childCount() - 1; i >= 0; i--) {
+                stack.push(n.childAt(i));
+            }
+        }
+        return null;
+    }
+
 
 }
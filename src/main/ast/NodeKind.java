@@ -37,6 +37,19 @@ public enum NodeKind {
     TABLE_FIELD,
     PARENTHESIS_EXPRESSION, //parenthesis
     METHOD_CALL,
-    METHOD_DEFINITION,
+    METHOD_DEFINITION;
 
+    // Kinds are used as bits of a long, see Node.getSubtreeKinds(); keep this enum under 64 entries.
+
+    public long mask() {
+        return 1L << ordinal();
+    }
+
+    public static long maskOf(NodeKind... kinds) {
+        long mask = 0;
+        for (NodeKind k : kinds) {
+            mask |= k.mask();
+        }
+        return mask;
+    }
 }
\ No newline at end of file
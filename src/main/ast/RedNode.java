@@ -0,0 +1,196 @@
+package main.ast;
+
+import main.util.Span;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Position-aware view of a {@link Node} inside one particular tree.
+ * <p>AST nodes act as the immutable "green" layer: they hold no parent link, so a
+ * {@link main.visit.BaseRewriter} can share unchanged subtrees between the old and the
+ * new tree, and hash-consing can put one instance at several positions. A
+ * {@code RedNode} records the path it was reached by, so parent, index, siblings,
+ * ancestors and ids are always those of the tree it was created from. Children are
+ * the {@link Node#syntaxChildAt(int) syntactic children}, so blocks and declared names
+ * are reachable too. Wrappers are cheap, created on demand, and safe to read from
+ * several threads.</p>
+ * <p>Every wrapper also has a dense preorder id, with its subtree spanning the ids
+ * {@code [getId(), getSubtreeEnd())}. Ids are derived from {@link Node#getSubtreeSize()}
+ * rather than stored in the nodes, so each tree, and each position of a shared node,
+ * numbers independently. They key {@link main.util.AttributeTable}s and make
+ * {@link #isAncestorOf(RedNode)} a constant-time check.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * Chunk rewritten = (Chunk) chunk.accept(rewriter);
+ * RedNode root = RedNode.root(rewritten);   // old chunk stays valid
+ * RedNode first = root.childAt(0);
+ * RedNode back = first.getParent();         // == root, even if first is shared
+ * }</pre>
+ */
+public final class RedNode {
+
+    private final Node green;
+    private final RedNode parent;
+    private final int index;
+    private final int offset;
+    private final int id;
+    private final RedNode[] children;   // created lazily; a race only builds an equal duplicate
+
+    private RedNode(Node green, RedNode parent, int index, int offset, int id) {
+        this.green = Objects.requireNonNull(green, "green");
+        this.parent = parent;
+        this.index = index;
+        this.offset = offset;
+        this.id = id;
+        this.children = new RedNode[green.syntaxChildCount()];
+    }
+
+    public static RedNode root(Node green) {
+        return new RedNode(green, null, -1, startOf(green, 0), 0);
+    }
+
+    // Synthesized nodes carry an empty span; they inherit the offset of their parent.
+    private static int startOf(Node green, int inherited) {
+        Span span = green.getSpan();
+        if (span.getStartOffset() == 0 && span.getEndOffset() == 0) return inherited;
+        return span.getStartOffset();
+    }
+
+    public Node getGreen()          { return green; }
+    public NodeKind getKind()       { return green.getKind(); }
+    public Span getSpan()           { return green.getSpan(); }
+    public RedNode getParent()      { return parent; }
+    public int getIndexInParent()   { return index; }
+
+    /**
+     * Start offset of the source text this node was parsed from, or, for a synthesized
+     * node with an empty span, its parent's offset. Spans are the only positions nodes
+     * record, so a parsed node placed at several positions reports the same offset at
+     * each; only the other accessors tell the positions apart.
+     */
+    public int getOffset()          { return offset; }
+
+    /**
+     * Preorder id of this position, 0 for the root.
+     */
+    public int getId()              { return id; }
+
+    /**
+     * One past the highest id in this subtree.
+     */
+    public int getSubtreeEnd()      { return id + green.getSubtreeSize(); }
+
+    /**
+     * True if this node is a proper ancestor of {@code other}; both must come from the same root.
+     */
+    public boolean isAncestorOf(RedNode other) {
+        return id < other.id && other.id < getSubtreeEnd();
+    }
+
+    public int childCount() {
+        return children.length;
+    }
+
+    public RedNode childAt(int index) {
+        RedNode child = children[index];
+        if (child == null) {
+            Node g = green.syntaxChildAt(index);
+            child = new RedNode(g, this, index, startOf(g, offset), idOfChild(index));
+            children[index] = child;
+        }
+        return child;
+    }
+
+    // Counts on from the nearest sibling already built, so walking children in order is O(1) each.
+    private int idOfChild(int index) {
+        int from = 0;
+        int childId = id + 1;
+        for (int i = index - 1; i >= 0; i--) {
+            RedNode sibling = children[i];
+            if (sibling != null) {
+                from = i + 1;
+                childId = sibling.getSubtreeEnd();
+                break;
+            }
+        }
+        for (int i = from; i < index; i++) {
+            childId += green.syntaxChildAt(i).getSubtreeSize();
+        }
+        return childId;
+    }
+
+    public List<RedNode> getChildren() {
+        List<RedNode> out = new ArrayList<>(children.length);
+        for (int i = 0; i < children.length; i++) {
+            out.add(childAt(i));
+        }
+        return Collections.unmodifiableList(out);
+    }
+
+    public RedNode getPreviousSibling() {
+        if (parent == null || index <= 0) return null;
+        return parent.childAt(index - 1);
+    }
+
+    public RedNode getNextSibling() {
+        if (parent == null || index + 1 >= parent.childCount()) return null;
+        return parent.childAt(index + 1);
+    }
+
+    /**
+     * Ancestors from the parent up to the root.
+     */
+    public List<RedNode> getAncestors() {
+        List<RedNode> result = new ArrayList<>();
+        for (RedNode current = parent; current != null; current = current.parent) {
+            result.add(current);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    public RedNode getRoot() {
+        RedNode current = this;
+        while (current.parent != null) {
+            current = current.parent;
+        }
+        return current;
+    }
+
+    /**
+     * Nearest ancestor whose green node is of the given type, or null if none.
+     */
+    public RedNode getAncestorOfType(Class<? extends Node> type) {
+        RedNode current = parent;
+        while (current != null) {
+            if (type.isInstance(current.green)) {
+                return current;
+            }
+            current = current.parent;
+        }
+        return null;
+    }
+
+    /**
+     * Wrappers are equal when they wrap the same node at the same position of the same tree.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RedNode other)) return false;
+        // the id pins the position within the tree, the root's green node pins the tree
+        return id == other.id && green == other.green && getRoot().green == other.getRoot().green;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(green) * 31 + id;
+    }
+
+    @Override
+    public String toString() {
+        return green.getKind() + "@" + offset;
+    }
+}
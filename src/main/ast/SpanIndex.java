@@ -0,0 +1,168 @@
+package main.ast;
+
+import main.util.Span;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Offset lookups over the spans of a subtree: which nodes cover an offset, which
+ * overlap a range, and which is the innermost node at an offset.
+ * <p>Nodes are sorted by start offset and a max-end tree is kept over that order,
+ * so a query binary searches the candidates that start early enough and skips every
+ * block whose spans all end too early. A query reporting k nodes costs O((k + 1) log n).
+ * Spans do not need to nest; zero-width spans (synthesized nodes) never match.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * Node hovered = chunk.getSpanIndex().nodeAt(caretOffset);
+ * }</pre>
+ */
+public final class SpanIndex {
+
+    private final Node[] nodes;     // sorted by start offset, ties in preorder
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] preorder;   // position in the preorder walk, deeper nodes come later
+    private final int[] maxEnd;     // implicit segment tree over ends, leaves at [size, 2 * size)
+    private final int size;
+
+    private SpanIndex(Node[] nodes, int[] preorder) {
+        this.nodes = nodes;
+        this.preorder = preorder;
+        this.starts = new int[nodes.length];
+        this.ends = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            Span span = nodes[i].getSpan();
+            starts[i] = span.getStartOffset();
+            ends[i] = span.getEndOffset();
+        }
+
+        int s = 1;
+        while (s < nodes.length) s <<= 1;
+        this.size = s;
+        this.maxEnd = new int[2 * s];
+        Arrays.fill(maxEnd, Integer.MIN_VALUE);
+        System.arraycopy(ends, 0, maxEnd, s, nodes.length);
+        for (int i = s - 1; i >= 1; i--) {
+            maxEnd[i] = Math.max(maxEnd[2 * i], maxEnd[2 * i + 1]);
+        }
+    }
+
+    /**
+     * Indexes {@code root} and all of its {@link Node#syntaxChildAt(int) syntactic}
+     * descendants, so blocks and declared names can be found too.
+     */
+    public static SpanIndex of(Node root) {
+        List<Node> all = new ArrayList<>(root.getSubtreeSize());
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            all.add(n);
+            for (int i = n.syntaxChildCount() - 1; i >= 0; i--) {
+                Node child = n.syntaxChildAt(i);
+                if (child != null) stack.push(child);
+            }
+        }
+        // Sort (start, preorder) pairs packed into longs; ties keep preorder.
+        long[] keys = new long[all.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ((long) all.get(i).getSpan().getStartOffset() << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        Node[] nodes = new Node[keys.length];
+        int[] preorder = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            preorder[i] = (int) keys[i];
+            nodes[i] = all.get(preorder[i]);
+        }
+        return new SpanIndex(nodes, preorder);
+    }
+
+    /**
+     * The innermost node whose span contains {@code offset}, or null if none.
+     * Innermost means the shortest span; equal spans resolve to the deeper node.
+     */
+    public Node nodeAt(int offset) {
+        int[] best = { -1 };
+        collect(1, 0, size, upperBound(offset), offset, hit -> {
+            int b = best[0];
+            if (b == -1) {
+                best[0] = hit;
+                return;
+            }
+            int len = ends[hit] - starts[hit];
+            int bestLen = ends[b] - starts[b];
+            if (len < bestLen || (len == bestLen && preorder[hit] > preorder[b])) {
+                best[0] = hit;
+            }
+        });
+        return best[0] == -1 ? null : nodes[best[0]];
+    }
+
+    /**
+     * All nodes whose span contains {@code offset}, outermost (earliest start) first.
+     */
+    public List<Node> covering(int offset) {
+        return overlapping(offset, offset + 1);
+    }
+
+    /**
+     * All nodes whose span overlaps {@code [from, to)}, ordered by start offset.
+     */
+    public List<Node> overlapping(int from, int to) {
+        if (to <= from) return List.of();
+        List<Node> result = new ArrayList<>();
+        collect(1, 0, size, lowerBound(to), from, hit -> result.add(nodes[hit]));
+        return Collections.unmodifiableList(result);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    private interface Hit {
+        void accept(int index);
+    }
+
+    // Visits, in order, every index in [0, limit) with ends[i] > after.
+    private void collect(int node, int lo, int hi, int limit, int after, Hit hit) {
+        if (lo >= limit || maxEnd[node] <= after) return;
+        if (hi - lo == 1) {
+            if (starts[lo] < ends[lo]) {     // zero-width spans cover nothing
+                hit.accept(lo);
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        collect(2 * node, lo, mid, limit, after, hit);
+        collect(2 * node + 1, mid, hi, limit, after, hit);
+    }
+
+    // First index whose start is > offset.
+    private int upperBound(int offset) {
+        int lo = 0, hi = starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= offset) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // First index whose start is >= offset.
+    private int lowerBound(int offset) {
+        int lo = 0, hi = starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < offset) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,175 @@
+package main.ast;
+
+import main.ast.exp.*;
+import main.ast.stmt.*;
+import main.lexer.TokenType;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+/**
+ * Span-insensitive structural hash and equality, backing
+ * {@link Node#structuralHash()} and {@link Node#structurallyEquals(Node)}.
+ * <p>Two nodes are structurally equal when they have the same kind, the same
+ * node-local data (names, literal values, operators, access style) and pairwise
+ * structurally equal children. Spans, comments and parent links are ignored.</p>
+ * <p>Both walk with explicit stacks, so arbitrarily deep trees hash and compare
+ * without overflowing the thread's stack.</p>
+ */
+final class StructuralHash {
+
+    private static final long PRIME = 0x9E3779B97F4A7C15L;
+
+    private StructuralHash() {
+    }
+
+    /**
+     * Hashes {@code root} and caches the result in it and in every descendant that
+     * had none yet. A node is hashed once all of its parts are.
+     */
+    static long hash(Node root) {
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node n = stack.peek();
+            if (n.cachedStructuralHash() != 0) {     // a shared node reached twice
+                stack.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (int i = 0, c = partCount(n); i < c; i++) {
+                Node part = partAt(n, i);
+                if (part.cachedStructuralHash() == 0) {
+                    stack.push(part);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                n.cacheStructuralHash(combine(n));
+            }
+        }
+        return root.cachedStructuralHash();
+    }
+
+    // Every part is already hashed.
+    private static long combine(Node n) {
+        long h = mix(n.getKind().ordinal() + 1, payload(n));
+        for (int i = 0, c = partCount(n); i < c; i++) {
+            h = mix(h, partAt(n, i).cachedStructuralHash());
+        }
+        h = finish(mix(h, n.childCount()));
+        return h != 0 ? h : 1;   // 0 marks "not computed yet"
+    }
+
+    // The children, then the names of a LocalStatement: not children, but part of its structure.
+    private static int partCount(Node n) {
+        int c = n.childCount();
+        return n instanceof LocalStatement local ? c + local.getVariables().size() : c;
+    }
+
+    private static Node partAt(Node n, int index) {
+        int c = n.childCount();
+        return index < c ? n.childAt(index) : ((LocalStatement) n).getVariables().get(index - c);
+    }
+
+    static boolean equal(Node a, Node b) {
+        Deque<Node> left = new ArrayDeque<>();
+        Deque<Node> right = new ArrayDeque<>();
+        left.push(a);
+        right.push(b);
+        while (!left.isEmpty()) {
+            Node x = left.pop();
+            Node y = right.pop();
+            if (x == y) continue;
+            if (x.structuralHash() != y.structuralHash()) return false;
+            if (x.getClass() != y.getClass() || x.getKind() != y.getKind()) return false;
+            if (!samePayload(x, y)) return false;
+            if (x.childCount() != y.childCount()) return false;
+
+            int c = partCount(x);
+            if (c != partCount(y)) return false;
+            for (int i = 0; i < c; i++) {
+                left.push(partAt(x, i));
+                right.push(partAt(y, i));
+            }
+        }
+        return true;
+    }
+
+    // Node-local data, plus list sizes where flattened children would be ambiguous.
+    private static long payload(Node n) {
+        if (n instanceof IdentifierExpression id) {
+            return hashString(id.getName());
+        }
+        if (n instanceof LiteralExpression lit) {
+            long h = mix(lit.getType().ordinal(), hashString(String.valueOf(lit.getValue())));
+            if (lit.getType() == TokenType.MULTILINE_STRING && lit.getToken() != null) {
+                h = mix(h, hashString(lit.getToken().lexeme()));   // keeps the [==[ level
+            }
+            return h;
+        }
+        if (n instanceof BinaryExpression bin) return bin.getOp().ordinal();
+        if (n instanceof UnaryExpression un) return un.getOp().ordinal();
+        if (n instanceof TableAccessExpression ta) return (ta.isDotAccess() ? 1 : 0) | (ta.isBracketAccess() ? 2 : 0);
+        if (n instanceof AssignmentStatement as) return as.getVariables().size();
+        if (n instanceof ForGenericStatement fg) return fg.getNames().size();
+        if (n instanceof LocalStatement local) return local.getVariables().size();
+        return 0;
+    }
+
+    private static boolean samePayload(Node a, Node b) {
+        if (a instanceof IdentifierExpression ia) {
+            return ia.getName().equals(((IdentifierExpression) b).getName());
+        }
+        if (a instanceof LiteralExpression la) {
+            LiteralExpression lb = (LiteralExpression) b;
+            if (la.getType() != lb.getType()) return false;
+            if (!String.valueOf(la.getValue()).equals(String.valueOf(lb.getValue()))) return false;
+            if (la.getType() == TokenType.MULTILINE_STRING) {
+                String ta = la.getToken() != null ? la.getToken().lexeme() : null;
+                String tb = lb.getToken() != null ? lb.getToken().lexeme() : null;
+                return Objects.equals(ta, tb);
+            }
+            return true;
+        }
+        if (a instanceof BinaryExpression ba) return ba.getOp() == ((BinaryExpression) b).getOp();
+        if (a instanceof UnaryExpression ua) return ua.getOp() == ((UnaryExpression) b).getOp();
+        if (a instanceof TableAccessExpression ta) {
+            TableAccessExpression tb = (TableAccessExpression) b;
+            return ta.isDotAccess() == tb.isDotAccess() && ta.isBracketAccess() == tb.isBracketAccess();
+        }
+        if (a instanceof AssignmentStatement sa) {
+            return sa.getVariables().size() == ((AssignmentStatement) b).getVariables().size();
+        }
+        if (a instanceof ForGenericStatement fa) {
+            return fa.getNames().size() == ((ForGenericStatement) b).getNames().size();
+        }
+        return true;
+    }
+
+    private static long hashString(String s) {
+        long h = 1125899906842597L;
+        for (int i = 0; i < s.length(); i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return finish(h);
+    }
+
+    private static long mix(long h, long v) {
+        h ^= v;
+        h *= PRIME;
+        return h ^ (h >>> 29);
+    }
+
+    // murmur3 fmix64
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -9,6 +9,7 @@ import main.util.Span;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public final class AnonymousFunctionExpression extends Expression {
 
@@ -21,15 +22,15 @@ public final class AnonymousFunctionExpression extends Expression {
                                        List<Comment> lead,
                                        List<Comment> trail) {
         super(NodeKind.ANONYMOUS_FUNCTION, span, lead, trail);
-        this.parameters.addAll(parameters);
-        this.chunk = chunk;
+        this.parameters.addAll(adoptAll(parameters));
+        this.chunk = adoptChild(chunk);
     }
 
     public AnonymousFunctionExpression(List<Expression> parameters,
                                        Chunk chunk) {
         super(NodeKind.ANONYMOUS_FUNCTION);
-        this.parameters.addAll(parameters);
-        this.chunk = chunk;
+        this.parameters.addAll(adoptAll(parameters));
+        this.chunk = adoptChild(chunk);
     }
 
     public Chunk getChunk() {
@@ -41,11 +42,14 @@ public final class AnonymousFunctionExpression extends Expression {
     }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> children = new ArrayList<>();
-        children.addAll(parameters);
-        children.add(chunk);
-        return children;
+    public int childCount() {
+        return parameters.size() + 1;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        Objects.checkIndex(index, childCount());
+        return index < parameters.size() ? parameters.get(index) : chunk;
     }
 
     @Override
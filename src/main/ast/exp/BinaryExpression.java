@@ -7,6 +7,7 @@ import main.util.Span;
 import main.visit.NodeVisitor;
 
 import java.util.List;
+import java.util.Objects;
 
 public final class BinaryExpression extends Expression {
 
@@ -48,8 +49,14 @@ public final class BinaryExpression extends Expression {
     }
 
     @Override
-    public List<Node> getChildren() {
-        return List.of(left, right);
+    public int childCount() {
+        return 2;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        Objects.checkIndex(index, 2);
+        return index == 0 ? left : right;
     }
 
     @Override
@@ -5,7 +5,6 @@ import main.util.Comment;
 import main.util.Span;
 import main.visit.NodeVisitor;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public final class FunctionCallExpression extends Expression {
@@ -39,11 +38,13 @@ public final class FunctionCallExpression extends Expression {
     }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> out = new ArrayList<>();
-        out.add(target);
-        out.addAll(args);
-        return out;
+    public int childCount() {
+        return 1 + args.size();
+    }
+
+    @Override
+    public Node childAt(int index) {
+        return index == 0 ? target : args.get(index - 1);
     }
 
     @Override
@@ -27,8 +27,13 @@ public final class IdentifierExpression extends Expression {
     public String getName() { return name; }
 
     @Override
-    public List<Node> getChildren() {
-        return List.of();
+    public int childCount() {
+        return 0;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        throw new IndexOutOfBoundsException(index);
     }
 
     @Override
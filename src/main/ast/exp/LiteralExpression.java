@@ -59,8 +59,13 @@ public final class LiteralExpression extends Expression {
     }
 
     @Override
-    public List<Node> getChildren() {
-        return List.of();
+    public int childCount() {
+        return 0;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        throw new IndexOutOfBoundsException(index);
     }
 
     @Override
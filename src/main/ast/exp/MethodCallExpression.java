@@ -36,12 +36,15 @@ public class MethodCallExpression extends Expression {
     public List<Expression> getArguments() { return arguments; }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> children = new java.util.ArrayList<>();
-        children.add(value);
-        children.add(methodName);
-        children.addAll(arguments);
-        return children;
+    public int childCount() {
+        return 2 + arguments.size();
+    }
+
+    @Override
+    public Node childAt(int index) {
+        if (index == 0) return value;
+        if (index == 1) return methodName;
+        return arguments.get(index - 2);
     }
 
     @Override
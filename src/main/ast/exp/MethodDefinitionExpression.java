@@ -7,6 +7,7 @@ import main.util.Comment;
 import main.util.Span;
 
 import java.util.List;
+import java.util.Objects;
 
 public class MethodDefinitionExpression extends Expression {
     private final Expression value;
@@ -31,11 +32,14 @@ public class MethodDefinitionExpression extends Expression {
     public Expression getMethodName() { return methodName; }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> children = new java.util.ArrayList<>();
-        children.add(value);
-        children.add(methodName);
-        return children;
+    public int childCount() {
+        return 2;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        Objects.checkIndex(index, 2);
+        return index == 0 ? value : methodName;
     }
 
     @Override
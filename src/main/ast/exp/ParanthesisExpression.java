@@ -7,6 +7,7 @@ import main.util.Comment;
 import main.util.Span;
 
 import java.util.List;
+import java.util.Objects;
 
 public final class ParanthesisExpression extends Expression {
 
@@ -30,8 +31,14 @@ public final class ParanthesisExpression extends Expression {
     }
 
     @Override
-    public List<Node> getChildren() {
-        return List.of(innerExpr);
+    public int childCount() {
+        return 1;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        Objects.checkIndex(index, 1);
+        return innerExpr;
     }
 
     @Override
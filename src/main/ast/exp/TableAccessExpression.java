@@ -6,8 +6,8 @@ import main.visit.NodeVisitor;
 import main.util.Comment;
 import main.util.Span;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public final class TableAccessExpression extends Expression {
 
@@ -58,13 +58,14 @@ public final class TableAccessExpression extends Expression {
     }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> children = new ArrayList<>();
-        if (name != null) {
-            children.add(name);
-        }
-        children.add(index);
-        return children;
+    public int childCount() {
+        return name != null ? 2 : 1;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        Objects.checkIndex(index, childCount());
+        return name != null && index == 0 ? name : this.index;
     }
 
     @Override
@@ -35,8 +35,13 @@ public final class TableConstructorExpression extends Expression {
     }
 
     @Override
-    public List<Node> getChildren() {
-        return List.of();
+    public int childCount() {
+        return fields.size();
+    }
+
+    @Override
+    public Node childAt(int index) {
+        return fields.get(index);
     }
 
     @Override
@@ -6,8 +6,8 @@ import main.visit.NodeVisitor;
 import main.util.Comment;
 import main.util.Span;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public final class TableFieldExpression extends Expression {
 
@@ -40,13 +40,14 @@ public final class TableFieldExpression extends Expression {
     }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> children = new ArrayList<>();
-        if (key != null) {
-            children.add(key);
-        }
-        children.add(value);
-        return children;
+    public int childCount() {
+        return key != null ? 2 : 1;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        Objects.checkIndex(index, childCount());
+        return key != null && index == 0 ? key : value;
     }
 
     @Override
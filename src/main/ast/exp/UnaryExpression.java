@@ -7,6 +7,7 @@ import main.util.Span;
 import main.visit.NodeVisitor;
 
 import java.util.List;
+import java.util.Objects;
 
 public final class UnaryExpression extends Expression {
 
@@ -39,8 +40,14 @@ public final class UnaryExpression extends Expression {
     }
 
     @Override
-    public List<Node> getChildren() {
-        return List.of(expr);
+    public int childCount() {
+        return 1;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        Objects.checkIndex(index, 1);
+        return expr;
     }
 
     @Override
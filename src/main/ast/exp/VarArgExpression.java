@@ -22,8 +22,13 @@ public final class VarArgExpression extends Expression {
     }
 
     @Override
-    public List<Node> getChildren() {
-        return List.of();
+    public int childCount() {
+        return 0;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        throw new IndexOutOfBoundsException(index);
     }
 
     @Override
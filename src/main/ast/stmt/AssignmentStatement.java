@@ -7,7 +7,6 @@ import main.ast.exp.Expression;
 import main.util.Comment;
 import main.util.Span;
 
-import java.util.ArrayList;
 import java.util.List;
 /**
  * <pre>{@code
@@ -46,11 +45,14 @@ public final class AssignmentStatement extends Statement {
     }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> out = new ArrayList<>();
-        out.addAll(variables);
-        out.addAll(values);
-        return out;
+    public int childCount() {
+        return variables.size() + values.size();
+    }
+
+    @Override
+    public Node childAt(int index) {
+        int v = variables.size();
+        return index < v ? variables.get(index) : values.get(index - v);
     }
 
     @Override
@@ -6,7 +6,6 @@ import main.visit.NodeVisitor;
 import main.util.Comment;
 import main.util.Span;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -34,8 +33,13 @@ public final class Block extends Statement {
     }
 
     @Override
-    public List<Node> getChildren() {
-        return new ArrayList<>(statements);
+    public int childCount() {
+        return statements.size();
+    }
+
+    @Override
+    public Node childAt(int index) {
+        return statements.get(index);
     }
 
     @Override
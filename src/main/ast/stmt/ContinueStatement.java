@@ -30,8 +30,13 @@ public class ContinueStatement extends Statement {
 
 
     @Override
-    public List<Node> getChildren() {
-        return List.of();
+    public int childCount() {
+        return 0;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        throw new IndexOutOfBoundsException(index);
     }
 
     @Override
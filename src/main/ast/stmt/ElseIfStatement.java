@@ -7,8 +7,8 @@ import main.ast.exp.Expression;
 import main.util.Comment;
 import main.util.Span;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * <pre>{@code
@@ -48,11 +48,24 @@ public class ElseIfStatement extends Statement {
     }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> out = new ArrayList<>();
-        out.add(expression);
-        out.addAll(body.getStatements());
-        return out;
+    public int childCount() {
+        return 1 + body.getStatements().size();
+    }
+
+    @Override
+    public Node childAt(int index) {
+        return index == 0 ? expression : body.getStatements().get(index - 1);
+    }
+
+    @Override
+    public int syntaxChildCount() {
+        return 2;
+    }
+
+    @Override
+    public Node syntaxChildAt(int index) {
+        Objects.checkIndex(index, 2);
+        return index == 0 ? expression : body;
     }
 
     @Override
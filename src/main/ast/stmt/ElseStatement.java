@@ -6,8 +6,8 @@ import main.visit.NodeVisitor;
 import main.util.Comment;
 import main.util.Span;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * <pre>{@code
@@ -38,10 +38,24 @@ public class ElseStatement extends Statement {
     }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> out = new ArrayList<>();
-        out.addAll(body.getStatements());
-        return out;
+    public int childCount() {
+        return body.getStatements().size();
+    }
+
+    @Override
+    public Node childAt(int index) {
+        return body.getStatements().get(index);
+    }
+
+    @Override
+    public int syntaxChildCount() {
+        return 1;
+    }
+
+    @Override
+    public Node syntaxChildAt(int index) {
+        Objects.checkIndex(index, 1);
+        return body;
     }
 
     @Override
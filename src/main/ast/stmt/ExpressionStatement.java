@@ -7,6 +7,7 @@ import main.util.Span;
 import main.visit.NodeVisitor;
 
 import java.util.List;
+import java.util.Objects;
 
 public final class ExpressionStatement extends Statement {
 
@@ -30,8 +31,14 @@ public final class ExpressionStatement extends Statement {
     }
 
     @Override
-    public List<Node> getChildren() {
-        return List.of(expr);
+    public int childCount() {
+        return 1;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        Objects.checkIndex(index, 1);
+        return expr;
     }
 
     @Override
@@ -10,6 +10,7 @@ import main.util.Span;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * <pre>{@code
@@ -57,12 +58,28 @@ public class ForGenericStatement extends Statement {
     }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> out = new ArrayList<>();
-        out.addAll(body.getStatements());
-        out.add(expression);
-        out.addAll(names);
-        return out;
+    public int childCount() {
+        return body.getStatements().size() + 1 + names.size();
+    }
+
+    @Override
+    public Node childAt(int index) {
+        int s = body.getStatements().size();
+        if (index < s) return body.getStatements().get(index);
+        if (index == s) return expression;
+        return names.get(index - s - 1);
+    }
+
+    @Override
+    public int syntaxChildCount() {
+        return names.size() + 2;
+    }
+
+    @Override
+    public Node syntaxChildAt(int index) {
+        Objects.checkIndex(index, syntaxChildCount());
+        if (index < names.size()) return names.get(index);
+        return index == names.size() ? expression : body;
     }
 
     @Override
@@ -8,8 +8,8 @@ import main.ast.exp.IdentifierExpression;
 import main.util.Comment;
 import main.util.Span;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * <pre>{@code
@@ -33,29 +33,29 @@ public class ForNumericStatement extends Statement {
                                List<Comment> lead,
                                List<Comment> trail) {
         super(NodeKind.FOR_NUMERIC_STATEMENT, span, lead, trail);
-        this.variable = variable;
-        this.start = start;
-        this.end = end;
-        this.step = step;
+        this.variable = adoptChild(variable);
+        this.start = adoptChild(start);
+        this.end = adoptChild(end);
+        this.step = adoptChild(step);
         this.body = adoptChild(body);
     }
 
     public ForNumericStatement(IdentifierExpression variable, Expression start, Expression end, Expression step,
                                Block body) {
         super(NodeKind.FOR_NUMERIC_STATEMENT);
-        this.variable = variable;
-        this.start = start;
-        this.end = end;
-        this.step = step;
+        this.variable = adoptChild(variable);
+        this.start = adoptChild(start);
+        this.end = adoptChild(end);
+        this.step = adoptChild(step);
         this.body = adoptChild(body);
     }
 
     public ForNumericStatement(IdentifierExpression variable, Expression start, Expression end,
                                Block body) {
         super(NodeKind.FOR_NUMERIC_STATEMENT);
-        this.variable = variable;
-        this.start = start;
-        this.end = end;
+        this.variable = adoptChild(variable);
+        this.start = adoptChild(start);
+        this.end = adoptChild(end);
         this.step = null;
         this.body = adoptChild(body);
     }
@@ -81,16 +81,35 @@ public class ForNumericStatement extends Statement {
     }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> out = new ArrayList<>();
-        out.add(body);
-        out.add(start);
-        out.add(end);
-        if (step != null) {
-            out.add(step);
-        }
-        out.add(variable);
-        return out;
+    public int childCount() {
+        return step != null ? 5 : 4;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        return switch (Objects.checkIndex(index, childCount())) {
+            case 0 -> body;
+            case 1 -> start;
+            case 2 -> end;
+            case 3 -> step != null ? step : variable;
+            default -> variable;
+        };
+    }
+
+    // for <variable> = <start>, <end>[, <step>] do <body> end
+    @Override
+    public int syntaxChildCount() {
+        return childCount();
+    }
+
+    @Override
+    public Node syntaxChildAt(int index) {
+        int count = childCount();
+        Objects.checkIndex(index, count);
+        if (index == 0) return variable;
+        if (index == 1) return start;
+        if (index == 2) return end;
+        return index == count - 1 ? body : step;
     }
 
     @Override
@@ -9,6 +9,7 @@ import main.util.Span;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * <pre>{@code
@@ -72,17 +73,32 @@ public class IfStatement extends Statement {
     }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> out = new ArrayList<>();
-        out.add(expression);
-        for (ElseIfStatement elseif : elseIfs) {
-            out.add(elseif);
-        }
-        if (elseStmt != null) {
-            out.add(elseStmt);
-        }
-        out.add(body);
-        return out;
+    public int childCount() {
+        return elseIfs.size() + (elseStmt != null ? 3 : 2);
+    }
+
+    @Override
+    public Node childAt(int index) {
+        Objects.checkIndex(index, childCount());
+        if (index == 0) return expression;
+        if (index <= elseIfs.size()) return elseIfs.get(index - 1);
+        if (elseStmt != null && index == elseIfs.size() + 1) return elseStmt;
+        return body;
+    }
+
+    // childAt lists the body last; syntactic children follow the source
+    @Override
+    public int syntaxChildCount() {
+        return childCount();
+    }
+
+    @Override
+    public Node syntaxChildAt(int index) {
+        Objects.checkIndex(index, childCount());
+        if (index == 0) return expression;
+        if (index == 1) return body;
+        if (index <= elseIfs.size() + 1) return elseIfs.get(index - 2);
+        return elseStmt;
     }
 
     @Override
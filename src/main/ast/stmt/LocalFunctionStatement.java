@@ -10,6 +10,7 @@ import main.util.Span;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * <pre>{@code
@@ -31,18 +32,18 @@ public final class LocalFunctionStatement extends Statement {
                                   List<Comment> lead,
                                   List<Comment> trail) {
         super(NodeKind.LOCAL_FUNCTION_STATEMENT, span, lead, trail);
-        this.name  = name;
-        this.parameters.addAll(parameters);
-        this.chunk = chunk;
+        this.name  = adoptChild(name);
+        this.parameters.addAll(adoptAll(parameters));
+        this.chunk = adoptChild(chunk);
     }
 
     public LocalFunctionStatement(Expression name,
                                   List<Expression> parameters,
                                   Chunk chunk) {
         super(NodeKind.LOCAL_FUNCTION_STATEMENT);
-        this.name  = name;
-        this.parameters.addAll(parameters);
-        this.chunk = chunk;
+        this.name  = adoptChild(name);
+        this.parameters.addAll(adoptAll(parameters));
+        this.chunk = adoptChild(chunk);
     }
 
     public Expression getName() {
@@ -58,12 +59,16 @@ public final class LocalFunctionStatement extends Statement {
     }
 
     @Override
-    public List<Node> getChildren() {
-        List<Node> children = new ArrayList<>();
-        children.add(name);
-        children.addAll(parameters);
-        children.add(chunk);
-        return children;
+    public int childCount() {
+        return parameters.size() + 2;
+    }
+
+    @Override
+    public Node childAt(int index) {
+        Objects.checkIndex(index, childCount());
+        if (index == 0) return name;
+        if (index <= parameters.size()) return parameters.get(index - 1);
+        return chunk;
     }
 
     @Override
@@ -8,7 +8,6 @@ import main.util.Comment;
 import main.util.Span;
 import main.visit.NodeVisitor;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -27,14 +26,14 @@ public final class LocalStatement extends Statement {
                           List<Comment> lead,
                           List<Comment> trail) {
         super(NodeKind.LOCAL_STATEMENT, span, lead, trail);
-        this.variables  = List.copyOf(names);
+        this.variables  = adoptAll(names);
         this.values = adoptAll(values);
     }
 
     public LocalStatement(List<IdentifierExpression> names,
                           List<Expression> values) {
         super(NodeKind.LOCAL_STATEMENT);
-        this.variables  = List.copyOf(names);
+        this.variables  = adoptAll(names);
         this.values = adoptAll(values);
     }
 
@@ -47,8 +46,24 @@ public final class LocalStatement extends Statement {
     }
 
     @Override
-    public List<Node> getChildren() {
-        return new ArrayList<>(values);
+    public int childCount() {
+        return values.size();
+    }
+
+    @Override
+    public Node childAt(int index) {
+        return values.get(index);
+    }
+
+    @Override
+    public int syntaxChildCount() {
+        return variables.size() + values.size();
+    }
+
+    @Override
+    public Node syntaxChildAt(int index) {
+        int v = variables.size();
+        return index < v ? variables.get(index) : values.get(index - v);
     }
 
     @Override
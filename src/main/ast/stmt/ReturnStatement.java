@@ -6,7 +6,6 @@ import main.util.Comment;
 import main.util.Span;
 import main.visit.NodeVisitor;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -36,8 +35,13 @@ public final class ReturnStatement extends Statement {
     }
 
     @Override
-    public List<Node> getChildren() {
-        return new ArrayList<>(values);
+    public int childCount() {
+        return values.size();
+    }
+
+    @Override
+    public Node childAt(int index) {
+        return values.get(index);
     }
 
     @Override
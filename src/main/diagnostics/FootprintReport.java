@@ -0,0 +1,332 @@
+package main.diagnostics;
+
+import main.ast.Chunk;
+import main.ast.Node;
+import main.ast.NodeKind;
+import main.lexer.Token;
+import main.util.Position;
+import main.util.Span;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Collections;
+
+/**
+ * Estimated heap retained by a tree, per {@link NodeKind} and per kind of object:
+ * the node objects themselves, their {@link Span}s and {@link Position}s, child and
+ * comment lists, strings, and {@link Token}s.
+ * <p>Sizes follow HotSpot's layout the way JOL computes it: object header (compact,
+ * compressed or full class pointers, read from the running VM), field sizes, 8-byte
+ * alignment, and compressed or full references. Every object is counted once even if
+ * several nodes share it, and enum constants are free. The internals of JDK lists
+ * cannot be read reflectively, so an {@code ArrayList}'s backing array is assumed
+ * to be exactly full; real trees may use slightly more.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * FootprintReport report = FootprintReport.of(chunk);
+ * System.out.println(report.getTotalBytes() / chunk.getNodeCount() + " bytes per node");
+ * System.out.println(report);
+ * }</pre>
+ */
+public final class FootprintReport {
+
+    public enum Category { NODE, SPAN, LIST, STRING, TOKEN, OTHER }
+
+    /**
+     * Bytes attributed to the nodes of one kind, per {@link Category}.
+     */
+    public record KindFootprint(NodeKind kind, long count, long nodeBytes, long spanBytes, long listBytes,
+                                long stringBytes, long tokenBytes, long otherBytes) {
+        public long totalBytes() {
+            return nodeBytes + spanBytes + listBytes + stringBytes + tokenBytes + otherBytes;
+        }
+
+        public double averageBytes() {
+            return count == 0 ? 0 : (double) totalBytes() / count;
+        }
+    }
+
+    /**
+     * A single node and the bytes it holds besides its children.
+     */
+    public record Offender(Node node, long bytes) {}
+
+    private static final int TOP_OFFENDERS = 10;
+
+    private final long nodeCount;
+    private final Map<NodeKind, KindFootprint> kinds;
+    private final List<Offender> offenders;
+
+    private FootprintReport(long nodeCount, Map<NodeKind, KindFootprint> kinds, List<Offender> offenders) {
+        this.nodeCount = nodeCount;
+        this.kinds = kinds;
+        this.offenders = offenders;
+    }
+
+    public static FootprintReport of(Chunk chunk) {
+        return new Walker().walk(chunk);
+    }
+
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    public long getTotalBytes() {
+        long total = 0;
+        for (KindFootprint k : kinds.values()) total += k.totalBytes();
+        return total;
+    }
+
+    public long getBytes(Category category) {
+        long total = 0;
+        for (KindFootprint k : kinds.values()) {
+            total += switch (category) {
+                case NODE -> k.nodeBytes();
+                case SPAN -> k.spanBytes();
+                case LIST -> k.listBytes();
+                case STRING -> k.stringBytes();
+                case TOKEN -> k.tokenBytes();
+                case OTHER -> k.otherBytes();
+            };
+        }
+        return total;
+    }
+
+    /**
+     * Footprint of {@code kind}, or null if the tree has no such nodes.
+     */
+    public KindFootprint get(NodeKind kind) {
+        return kinds.get(kind);
+    }
+
+    /**
+     * Every kind present, largest total first.
+     */
+    public List<KindFootprint> getKinds() {
+        List<KindFootprint> list = new ArrayList<>(kinds.values());
+        list.sort(Comparator.comparingLong(KindFootprint::totalBytes).reversed());
+        return list;
+    }
+
+    /**
+     * The individual nodes holding the most bytes, largest first.
+     */
+    public List<Offender> getTopOffenders() {
+        return offenders;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-26s %8s %10s %10s %10s %10s %10s %10s %11s %8s%n",
+                "Kind", "Count", "Node", "Span", "List", "String", "Token", "Other", "Total", "Avg"));
+        for (KindFootprint k : getKinds()) {
+            out.append(String.format("%-26s %8d %10d %10d %10d %10d %10d %10d %11d %8.1f%n",
+                    k.kind(), k.count(), k.nodeBytes(), k.spanBytes(), k.listBytes(), k.stringBytes(),
+                    k.tokenBytes(), k.otherBytes(), k.totalBytes(), k.averageBytes()));
+        }
+        out.append(String.format("%-26s %8d %10d %10d %10d %10d %10d %10d %11d %8.1f%n",
+                "TOTAL", nodeCount, getBytes(Category.NODE), getBytes(Category.SPAN), getBytes(Category.LIST),
+                getBytes(Category.STRING), getBytes(Category.TOKEN), getBytes(Category.OTHER), getTotalBytes(),
+                nodeCount == 0 ? 0 : (double) getTotalBytes() / nodeCount));
+        out.append(String.format("%nTop offenders:%n"));
+        for (Offender o : offenders) {
+            out.append(String.format("%10d  %-26s line %d%n", o.bytes(), o.node().getKind(),
+                    o.node().getSpan().getStart().getLine()));
+        }
+        return out.toString();
+    }
+
+    // ----------------------------------------------------------------------
+    // Layout
+    // ----------------------------------------------------------------------
+
+    private static final boolean COMPRESSED_OOPS = vmFlag("UseCompressedOops", true);
+    private static final boolean COMPACT_HEADERS = vmFlag("UseCompactObjectHeaders", false);
+    private static final boolean COMPRESSED_CLASS_POINTERS = vmFlag("UseCompressedClassPointers", true);
+    private static final int REFERENCE = COMPRESSED_OOPS ? 4 : 8;
+    private static final int HEADER = COMPACT_HEADERS ? 8 : COMPRESSED_CLASS_POINTERS ? 12 : 16;
+    private static final int ARRAY_HEADER = align(HEADER + 4);
+
+    private static boolean vmFlag(String name, boolean fallback) {
+        try {
+            HotSpotDiagnosticMXBean vm = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return Boolean.parseBoolean(vm.getVMOption(name).getValue());
+        } catch (RuntimeException e) {
+            return fallback;     // not HotSpot, or a flag this VM does not have
+        }
+    }
+
+    private static int align(long size) {
+        return (int) ((size + 7) & ~7L);
+    }
+
+    private static int sizeOf(Class<?> type) {
+        if (!type.isPrimitive()) return REFERENCE;
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        return 1;
+    }
+
+    private static final ClassValue<Field[]> INSTANCE_FIELDS = new ClassValue<>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field f : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(f.getModifiers())) fields.add(f);
+                }
+            }
+            return fields.toArray(new Field[0]);
+        }
+    };
+
+    private static final ClassValue<Integer> SHALLOW_SIZE = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            long size = HEADER;
+            for (Field f : INSTANCE_FIELDS.get(type)) size += sizeOf(f.getType());
+            return align(size);
+        }
+    };
+
+    private static long arraySize(Class<?> component, int length) {
+        return align(ARRAY_HEADER + (long) sizeOf(component) * length);
+    }
+
+    // ----------------------------------------------------------------------
+    // Walk
+    // ----------------------------------------------------------------------
+
+    private static final class Walker {
+        private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Map<NodeKind, long[]> bytes = new EnumMap<>(NodeKind.class);
+        private final PriorityQueue<Offender> top = new PriorityQueue<>(Comparator.comparingLong(Offender::bytes));
+        private long[] current;
+        private long nodes;
+
+        FootprintReport walk(Chunk chunk) {
+            chunk.descendantsAndSelf().forEach(this::node);
+
+            Map<NodeKind, KindFootprint> kinds = new EnumMap<>(NodeKind.class);
+            bytes.forEach((kind, b) -> kinds.put(kind, new KindFootprint(kind, b[Category.values().length],
+                    b[0], b[1], b[2], b[3], b[4], b[5])));
+            List<Offender> offenders = new ArrayList<>(top);
+            offenders.sort(Comparator.comparingLong(Offender::bytes).reversed());
+            return new FootprintReport(nodes, kinds, List.copyOf(offenders));
+        }
+
+        private void node(Node n) {
+            if (!seen.add(n)) return;      // shared subtree reached twice
+            nodes++;
+            current = bytes.computeIfAbsent(n.getKind(), k -> new long[Category.values().length + 1]);
+            current[Category.values().length]++;
+
+            long before = sum(current);
+            current[Category.NODE.ordinal()] += SHALLOW_SIZE.get(n.getClass());
+            for (Field f : INSTANCE_FIELDS.get(n.getClass())) {
+                if (!f.getType().isPrimitive()) field(read(f, n));
+            }
+            long own = sum(current) - before;
+
+            top.add(new Offender(n, own));
+            if (top.size() > TOP_OFFENDERS) top.poll();
+        }
+
+        private static long sum(long[] b) {
+            long s = 0;
+            for (int i = 0; i < Category.values().length; i++) s += b[i];
+            return s;
+        }
+
+        // Objects reachable from a node's fields, stopping at child nodes, which are counted on their own.
+        private void field(Object value) {
+            if (value == null || value instanceof Node || value instanceof Enum<?>) return;
+            if (!seen.add(value)) return;
+            switch (value) {
+                case Span s -> {
+                    add(Category.SPAN, SHALLOW_SIZE.get(Span.class));
+                    position(s.getStart());
+                    position(s.getEnd());
+                }
+                case Token t -> {
+                    add(Category.TOKEN, SHALLOW_SIZE.get(Token.class));
+                    field(t.lexeme());
+                    field(t.span());
+                }
+                case String s -> add(Category.STRING, stringSize(s));
+                case Collection<?> c -> {
+                    add(Category.LIST, collectionSize(c));
+                    for (Object e : c) field(e);
+                }
+                case Object[] array -> {
+                    add(Category.OTHER, arraySize(Object.class, array.length));
+                    for (Object e : array) field(e);
+                }
+                default -> other(value);
+            }
+        }
+
+        private void position(Position p) {
+            if (p != null && seen.add(p)) add(Category.SPAN, SHALLOW_SIZE.get(Position.class));
+        }
+
+        private void other(Object value) {
+            Class<?> type = value.getClass();
+            if (type.isArray()) {
+                add(Category.OTHER, arraySize(type.getComponentType(), Array.getLength(value)));
+                return;
+            }
+            add(Category.OTHER, SHALLOW_SIZE.get(type));
+            if (type.getModule() != FootprintReport.class.getModule()) return;   // JDK internals are opaque
+            for (Field f : INSTANCE_FIELDS.get(type)) {
+                if (!f.getType().isPrimitive()) field(read(f, value));
+            }
+        }
+
+        private void add(Category category, long size) {
+            current[category.ordinal()] += size;
+        }
+
+        private static long stringSize(String s) {
+            boolean latin1 = true;
+            for (int i = 0; i < s.length() && latin1; i++) {
+                latin1 = s.charAt(i) < 256;
+            }
+            return SHALLOW_SIZE.get(String.class) + arraySize(byte.class, latin1 ? s.length() : s.length() * 2);
+        }
+
+        // Shapes of the JDK lists the AST uses; anything else counts as a bare array-backed list.
+        private static long collectionSize(Collection<?> c) {
+            int n = c.size();
+            String name = c.getClass().getName();
+            if (n == 0 && name.startsWith("java.util.ImmutableCollections")) return 0;   // shared List.of()
+            long header = SHALLOW_SIZE.get(c.getClass());
+            if (name.equals("java.util.ImmutableCollections$List12")) return header;
+            return header + arraySize(Object.class, n);
+        }
+
+        private static Object read(Field f, Object target) {
+            try {
+                f.setAccessible(true);
+                return f.get(target);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+}
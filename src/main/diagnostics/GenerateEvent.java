@@ -0,0 +1,31 @@
+package main.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one tree rendered by {@link main.util.ASTStringGenerator}
+ * or {@link main.util.ASTPrettyPrinter}.
+ */
+@Name("lua.Generate")
+@Label("Lua Generate")
+@Category({ "Lua", "Generation" })
+@Description("Rendering one tree as text")
+public final class GenerateEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Generator")
+    public String generator;
+
+    @Label("Output Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Nodes")
+    public long nodeCount;
+}
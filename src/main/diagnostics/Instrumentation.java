@@ -0,0 +1,123 @@
+package main.diagnostics;
+
+import main.ast.Node;
+
+import java.util.function.Supplier;
+
+/**
+ * Reports lexing, parsing, rewriting and generation to Flight Recorder and, when
+ * installed, to a {@link PhaseMetrics}.
+ * <p>The lexer, parser, {@link main.visit.BaseRewriter} and generators call the hooks
+ * below themselves. Each phase emits its {@code jdk.jfr.Event}, which costs next to
+ * nothing unless a recording enables it:
+ * <pre>{@code
+ * java -XX:StartFlightRecording:filename=run.jfr,settings=profile ...
+ * jfr print --events lua.RewritePass run.jfr
+ * }</pre>
+ * Events and metrics carry the file being processed on the current thread, as set by
+ * {@link #inFile(String, Supplier)}; {@link main.parser.ProjectParser} does this per file.</p>
+ */
+public final class Instrumentation {
+
+    private static volatile PhaseMetrics metrics;
+    private static final ThreadLocal<String> FILE = new ThreadLocal<>();
+
+    private Instrumentation() {}
+
+    /**
+     * Installs {@code metrics} as the process-wide sink; null turns metrics off.
+     */
+    public static void setMetrics(PhaseMetrics metrics) {
+        Instrumentation.metrics = metrics;
+    }
+
+    public static PhaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Runs {@code work} with {@code file} as the current thread's file name.
+     */
+    public static <T> T inFile(String file, Supplier<T> work) {
+        String previous = FILE.get();
+        FILE.set(file);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) FILE.remove(); else FILE.set(previous);
+        }
+    }
+
+    /**
+     * The current thread's file name, or null.
+     */
+    public static String currentFile() {
+        return FILE.get();
+    }
+
+    // ----------------------------------------------------------------------
+    // Hooks; callers begin() the event and take start() before the work
+    // ----------------------------------------------------------------------
+
+    /**
+     * Start time for the metrics, or 0 when none are installed.
+     */
+    public static long start() {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+
+    public static void lexed(LexEvent event, long start, long bytes, long tokens) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = FILE.get();
+            event.bytes = bytes;
+            event.tokenCount = tokens;
+            event.commit();
+        }
+        PhaseMetrics m = metrics;
+        if (m != null) m.record(Phase.LEX, null, bytes, tokens, System.nanoTime() - start);
+    }
+
+    public static void parsed(ParseEvent event, long start, long bytes, long tokens, Node chunk) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = FILE.get();
+            event.bytes = bytes;
+            event.tokenCount = tokens;
+            event.nodeCount = nodeCount(chunk);
+            event.commit();
+        }
+        PhaseMetrics m = metrics;
+        if (m != null) m.record(Phase.PARSE, null, bytes, nodeCount(chunk), System.nanoTime() - start);
+    }
+
+    public static void rewritten(RewritePassEvent event, long start, Class<?> rewriter, Node input, Node output) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = FILE.get();
+            event.rewriter = rewriter.getName();
+            event.nodeCount = nodeCount(input);
+            event.changed = output != input;
+            event.commit();
+        }
+        PhaseMetrics m = metrics;
+        if (m != null) m.record(Phase.REWRITE, rewriter.getName(), 0, nodeCount(input), System.nanoTime() - start);
+    }
+
+    public static void generated(GenerateEvent event, long start, Class<?> generator, Node root, long chars) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = FILE.get();
+            event.generator = generator.getSimpleName();
+            event.bytes = chars;
+            event.nodeCount = nodeCount(root);
+            event.commit();
+        }
+        PhaseMetrics m = metrics;
+        if (m != null) m.record(Phase.GENERATE, generator.getSimpleName(), chars, nodeCount(root), System.nanoTime() - start);
+    }
+
+    private static long nodeCount(Node root) {
+        return root.getSubtreeSize();
+    }
+}
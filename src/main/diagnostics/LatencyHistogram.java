@@ -0,0 +1,80 @@
+package main.diagnostics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds with four buckets per power of two,
+ * so any reported percentile is within 25% of the true value.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(65 * SUB_BUCKETS);
+
+    public void record(long nanos) {
+        buckets.incrementAndGet(indexOf(Math.max(0, nanos)));
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            total += buckets.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Upper bound of the bucket holding the {@code p}-th percentile ({@code 0 < p <= 100}),
+     * or 0 when nothing was recorded.
+     */
+    public long percentile(double p) {
+        if (p <= 0 || p > 100) throw new IllegalArgumentException("percentile must be in (0, 100]: " + p);
+        long[] snapshot = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * p / 100);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return upperBound(i);
+        }
+        return upperBound(snapshot.length - 1);
+    }
+
+    public long max() {
+        for (int i = buckets.length() - 1; i >= 0; i--) {
+            if (buckets.get(i) != 0) return upperBound(i);
+        }
+        return 0;
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    // bucket = (bit length << SUB_BITS) | the SUB_BITS bits below the leading one
+    private static int indexOf(long value) {
+        int bits = 64 - Long.numberOfLeadingZeros(value);
+        if (bits <= SUB_BITS) return (int) value;
+        int sub = (int) (value >>> (bits - 1 - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (bits << SUB_BITS) | sub;
+    }
+
+    private static long upperBound(int index) {
+        int bits = index >>> SUB_BITS;
+        if (bits <= SUB_BITS) return index;
+        int sub = index & (SUB_BUCKETS - 1);
+        long base = 1L << (bits - 1);
+        long step = base >>> SUB_BITS;
+        long bound = base + (sub + 1) * step - 1;
+        return bound < 0 ? Long.MAX_VALUE : bound;
+    }
+}
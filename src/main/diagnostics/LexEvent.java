@@ -0,0 +1,27 @@
+package main.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one {@link main.lexer.Lexer#tokenize()} call.
+ */
+@Name("lua.Lex")
+@Label("Lua Lex")
+@Category({ "Lua", "Parsing" })
+@Description("Tokenizing one source")
+public final class LexEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Source Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Tokens")
+    public long tokenCount;
+}
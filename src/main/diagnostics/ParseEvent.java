@@ -0,0 +1,32 @@
+package main.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one {@link main.parser.Parser#parseChunk()} call.
+ * Includes lexing when the parser lexes lazily, and cache lookups.
+ */
+@Name("lua.Parse")
+@Label("Lua Parse")
+@Category({ "Lua", "Parsing" })
+@Description("Parsing one chunk")
+public final class ParseEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Source Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Tokens")
+    @Description("0 when the tree came from a ParseCache")
+    public long tokenCount;
+
+    @Label("Nodes")
+    public long nodeCount;
+}
@@ -0,0 +1,11 @@
+package main.diagnostics;
+
+/**
+ * The stages of turning Lua source into a tree and back, as reported by {@link Instrumentation}.
+ */
+public enum Phase {
+    LEX,
+    PARSE,
+    REWRITE,
+    GENERATE
+}
@@ -0,0 +1,78 @@
+package main.diagnostics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process counters and latency histograms per {@link Phase}, and per rewriter or
+ * generator class within a phase. Install with {@link Instrumentation#setMetrics(PhaseMetrics)}
+ * and poll {@link #snapshot()} from any thread.
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * PhaseMetrics metrics = new PhaseMetrics();
+ * Instrumentation.setMetrics(metrics);
+ * ...
+ * for (PhaseMetrics.Stats s : metrics.snapshot()) {
+ *     System.out.println(s);
+ * }
+ * }</pre>
+ */
+public final class PhaseMetrics {
+
+    /**
+     * Totals for one phase and detail.
+     *
+     * @param detail rewriter or generator class name, empty for lexing and parsing
+     * @param bytes  source bytes for lex and parse, output bytes for generate, 0 for rewrite
+     * @param items  tokens for lex, nodes for parse, rewrite and generate
+     */
+    public record Stats(Phase phase, String detail, long calls, long bytes, long items, long totalNanos,
+                        long p50Nanos, long p99Nanos, long maxNanos) {
+        @Override
+        public String toString() {
+            return String.format("%-8s %-28s %8d calls %12d bytes %10d items  total %9.1f ms  p50 %8.3f ms  p99 %8.3f ms  max %8.3f ms",
+                    phase, detail, calls, bytes, items, totalNanos / 1e6, p50Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6);
+        }
+    }
+
+    private record Key(Phase phase, String detail) {}
+
+    private static final class Entry {
+        final LongAdder calls = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder items = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    public void record(Phase phase, String detail, long bytes, long items, long nanos) {
+        Entry e = entries.computeIfAbsent(new Key(phase, detail != null ? detail : ""), k -> new Entry());
+        e.calls.increment();
+        e.bytes.add(bytes);
+        e.items.add(items);
+        e.nanos.add(nanos);
+        e.latency.record(nanos);
+    }
+
+    /**
+     * Current totals, ordered by phase and then detail. Counters keep running while
+     * this is taken, so a row's fields may straddle a concurrent update.
+     */
+    public List<Stats> snapshot() {
+        List<Stats> stats = new ArrayList<>(entries.size());
+        entries.forEach((key, e) -> stats.add(new Stats(key.phase(), key.detail(),
+                e.calls.sum(), e.bytes.sum(), e.items.sum(), e.nanos.sum(),
+                e.latency.percentile(50), e.latency.percentile(99), e.latency.max())));
+        stats.sort(Comparator.comparing(Stats::phase).thenComparing(Stats::detail));
+        return stats;
+    }
+
+    public void reset() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,29 @@
+package main.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one {@link main.visit.BaseRewriter} pass over a chunk.
+ */
+@Name("lua.RewritePass")
+@Label("Lua Rewrite Pass")
+@Category({ "Lua", "Rewriting" })
+@Description("One rewriter applied to one chunk")
+public final class RewritePassEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Rewriter")
+    public String rewriter;
+
+    @Label("Nodes")
+    @Description("Size of the input tree")
+    public long nodeCount;
+
+    @Label("Changed")
+    public boolean changed;
+}
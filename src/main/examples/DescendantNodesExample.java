@@ -37,6 +37,16 @@ public class DescendantNodesExample {
             IO.println(n);
         }
 
+        IO.println("\n---------------\n");
+
+        // Or lazily, without building a list of the whole tree
+        ast.descendants()
+                .filter(n -> n instanceof LiteralExpression)
+                .forEach(IO::println);
+
+        // Stops walking at the first match
+        IO.println(ast.findFirstDescendant(n -> n instanceof LiteralExpression));
+
 
     }
 
@@ -1,12 +1,14 @@
 package main.examples.rewriters;
 
 import main.ast.Node;
+import main.ast.NodeKind;
 import main.ast.exp.BinaryExpression;
 import main.ast.exp.IdentifierExpression;
 import main.ast.exp.LiteralExpression;
 import main.ast.stmt.*;
 import main.lexer.TokenType;
 import main.visit.BaseRewriter;
+import main.visit.NodePattern;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -18,23 +20,24 @@ public class FlattenerRewriter extends BaseRewriter {
 
     private boolean shouldObfuscateNextBlock = false;
 
+    // if <anything> == "flatten me" then ... end
+    private static final NodePattern TARGET = NodePattern.of(NodeKind.IF_STATEMENT)
+            .child(0, NodePattern.of(NodeKind.BINARY).child(1, NodePattern.literal("flatten me")));
+
     @Override
     public Node visitIf(IfStatement n) {
         // 1. Check if the condition is: test == "flatten me"
-        if (n.getExpression() instanceof BinaryExpression bin) {
-            if (bin.getRight() instanceof LiteralExpression lit &&
-                    lit.getValue().equals("flatten me")) {
+        if (TARGET.matches(n)) {
 
-                // 2. Directly flatten ONLY this specific body
-                // We call flatten() here instead of relying on a flag
-                Block obfuscatedBody = flatten(n.getBody());
+            // 2. Directly flatten ONLY this specific body
+            // We call flatten() here instead of relying on a flag
+            Block obfuscatedBody = flatten(n.getBody());
 
-                // Visit other branches normally
-                List<ElseIfStatement> elseIfs = acceptList(n.getElseIfs());
-                ElseStatement elseStmt = n.getElseStmt() != null ? (ElseStatement) n.getElseStmt().accept(this) : null;
+            // Visit other branches normally
+            List<ElseIfStatement> elseIfs = acceptList(n.getElseIfs());
+            ElseStatement elseStmt = n.getElseStmt() != null ? (ElseStatement) n.getElseStmt().accept(this) : null;
 
-                return new IfStatement(n.getExpression(), obfuscatedBody, elseIfs, elseStmt, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
-            }
+            return new IfStatement(n.getExpression(), obfuscatedBody, elseIfs, elseStmt, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
         }
 
         // If its not our target, use the standard BaseRewriter logic
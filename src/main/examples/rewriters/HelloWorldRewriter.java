@@ -1,6 +1,7 @@
 package main.examples.rewriters;
 
 import main.ast.Node;
+import main.ast.NodeKind;
 import main.ast.exp.LiteralExpression;
 import main.lexer.TokenType;
 import main.visit.BaseRewriter;
@@ -10,6 +11,23 @@ import main.visit.BaseRewriter;
  */
 public class HelloWorldRewriter extends BaseRewriter {
 
+    // Only literals change, so subtrees without one are skipped
+    @Override
+    protected long rewrittenKinds() {
+        return NodeKind.LITERAL.mask();
+    }
+
+    // Only looks at the literal itself, so it can share a pass with other rewriters
+    @Override
+    protected boolean isLocal() {
+        return true;
+    }
+
+    @Override
+    protected boolean isStateless() {
+        return true;
+    }
+
     @Override
     public Node visitLiteral(LiteralExpression n) {
         Object value = n.getValue();
@@ -14,6 +14,12 @@ import java.util.List;
  */
 public class IfWrapperRewriter extends BaseRewriter {
 
+    // Keeps no state between nodes, so parts of a tree can be wrapped on different threads
+    @Override
+    protected boolean isStateless() {
+        return true;
+    }
+
     private Statement wrapInIfTrue(Statement stmt) {
         // 'true' condition
         LiteralExpression trueCond = new LiteralExpression(true, TokenType.TRUE);
@@ -44,7 +50,7 @@ public class IfWrapperRewriter extends BaseRewriter {
     private List<Statement> transformAll(List<Statement> original) {
         List<Statement> rewritten = new ArrayList<>();
         for (Statement s : original) {
-            Statement innerProcessed = (Statement) s.accept(this);
+            Statement innerProcessed = (Statement) rewrite(s);
 
             rewritten.add(wrapInIfTrue(innerProcessed));
         }
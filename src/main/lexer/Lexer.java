@@ -1,5 +1,7 @@
 package main.lexer;
 
+import main.diagnostics.Instrumentation;
+import main.diagnostics.LexEvent;
 import main.util.Position;
 import main.util.Span;
 
@@ -18,12 +20,18 @@ public final class Lexer {
     }
 
     public List<Token> tokenize() {
+        LexEvent event = new LexEvent();
+        event.begin();
+        long start = Instrumentation.start();
+
         List<Token> tokens = new ArrayList<>();
         Token t;
         do {
             t = nextToken();
             tokens.add(t);
         } while (t.type() != TokenType.EOF);
+
+        Instrumentation.lexed(event, start, input.length, tokens.size());
         return tokens;
     }
 
@@ -0,0 +1,367 @@
+package main.parser;
+
+import main.ast.Chunk;
+import main.ast.Node;
+import main.ast.exp.IdentifierExpression;
+import main.ast.exp.LiteralExpression;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Concurrent in-memory cache from (path, content hash) to parsed {@link Chunk}.
+ * <p>The cache is split into up to 16 lock-striped segments, each running W-TinyLFU
+ * over its share of the weight budget: new entries land in a small LRU window, and when the
+ * window overflows its oldest entry only displaces the main area's next victim if a
+ * {@link FrequencySketch} says it has been requested more often. Main is a segmented
+ * LRU whose protected part holds entries hit at least twice. Entries are weighed by
+ * {@link #estimateWeight(Chunk)}. Concurrent misses for one key are single-flighted:
+ * one thread parses, the others wait for its result.</p>
+ * <p>Cached trees are shared between threads as they are, without copying. Nodes do
+ * not change once built apart from their cached structural hash, and positions and ids
+ * come from {@link main.ast.RedNode}, which every caller builds for itself, so queries
+ * and rewrites (which produce a new tree) are safe. A chunk's lazily built indexes are
+ * immutable once published; {@link Chunk#buildKindIndex()} and
+ * {@link Chunk#invalidateKindIndex()} replace the index for every thread sharing the
+ * chunk, so leave them to whoever owns the cache.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * ChunkCache cache = new ChunkCache(512L << 20);
+ * Chunk chunk = cache.get(path, Files.readString(path));
+ * }</pre>
+ */
+public final class ChunkCache {
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final long MIN_SEGMENT_WEIGHT = 4L << 20;     // keeps large trees admissible
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private record Key(Path path, long hash) {}
+
+    private final Segment[] segments;
+    private final ConcurrentHashMap<Key, CompletableFuture<Chunk>> loading = new ConcurrentHashMap<>();
+    private final Function<String, Chunk> parser;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public ChunkCache(long maxWeight) {
+        this(maxWeight, source -> new Parser(source).parseChunk());
+    }
+
+    /**
+     * @param parser builds the tree on a miss, e.g. a {@link Parser} backed by a {@link ParseCache}
+     */
+    public ChunkCache(long maxWeight, Function<String, Chunk> parser) {
+        if (maxWeight <= 0) throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        this.parser = parser;
+        int count = 1;
+        while (count < MAX_SEGMENTS && maxWeight / (count * 2L) >= MIN_SEGMENT_WEIGHT) {
+            count *= 2;
+        }
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxWeight / count);
+        }
+    }
+
+    /**
+     * The tree for {@code source} read from {@code path}, parsed on a miss.
+     * Parse errors propagate to every thread waiting for the same key and are not cached.
+     */
+    public Chunk get(Path path, String source) {
+        Key key = new Key(path, ParseCache.contentHash(source));
+        Segment segment = segmentFor(key);
+        Chunk cached = segment.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        CompletableFuture<Chunk> mine = new CompletableFuture<>();
+        CompletableFuture<Chunk> theirs = loading.putIfAbsent(key, mine);
+        if (theirs != null) {
+            return await(theirs);
+        }
+        try {
+            Chunk chunk = segment.peek(key);    // a load may have finished between get and putIfAbsent
+            if (chunk == null) {
+                chunk = parser.apply(source);
+                loads.increment();
+                segment.put(key, chunk, estimateWeight(chunk));
+            }
+            mine.complete(chunk);
+            return chunk;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    /**
+     * The cached tree, or null; never parses and does not count towards statistics.
+     */
+    public Chunk getIfPresent(Path path, String source) {
+        Key key = new Key(path, ParseCache.contentHash(source));
+        return segmentFor(key).peek(key);
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private static Chunk await(CompletableFuture<Chunk> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    private static long sketchHash(Key key) {
+        return key.hash() * 31 + key.path().hashCode();
+    }
+
+    /**
+     * Rough retained size of {@code chunk} in bytes: a per-node allowance for the
+     * node, its span and token, plus the characters of names and literal values.
+     */
+    public static long estimateWeight(Chunk chunk) {
+        // every syntactic child, so the blocks and names childAt leaves out are counted
+        long weight = 0;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(chunk);
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            weight += weightOf(n);
+            for (int i = n.syntaxChildCount() - 1; i >= 0; i--) {
+                Node child = n.syntaxChildAt(i);
+                if (child != null) stack.push(child);
+            }
+        }
+        return weight;
+    }
+
+    private static long weightOf(Node n) {
+        long w = 160 + 16L * n.syntaxChildCount();
+        if (n instanceof IdentifierExpression id) {
+            w += 40 + id.getName().length();
+        } else if (n instanceof LiteralExpression lit && lit.getValue() instanceof String s) {
+            w += 40 + s.length();
+        }
+        return w;
+    }
+
+    // ----------------------------------------------------------------------
+    // Statistics
+    // ----------------------------------------------------------------------
+
+    public long getHits()       { return hits.sum(); }
+    public long getMisses()     { return misses.sum(); }
+    public long getLoads()      { return loads.sum(); }
+    public long getEvictions()  { return evictions.sum(); }
+
+    /**
+     * Loaded entries the admission policy turned away in favour of more popular ones.
+     */
+    public long getRejections() { return rejections.sum(); }
+
+    public long getWeight() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.weight();
+        }
+        return total;
+    }
+
+    public int size() {
+        int total = 0;
+        for (Segment segment : segments) {
+            total += segment.size();
+        }
+        return total;
+    }
+
+    // ----------------------------------------------------------------------
+    // W-TinyLFU segment
+    // ----------------------------------------------------------------------
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final class Entry {
+        final Key key;
+        final Chunk value;
+        final long weight;
+        int queue;
+        Entry prev, next;
+
+        Entry(Key key, Chunk value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /** Sentinel-headed circular list, least recently used first. */
+    private static final class Queue {
+        final Entry head = new Entry(null, null, 0);
+        long weight;
+
+        Queue() {
+            head.prev = head.next = head;
+        }
+
+        boolean isEmpty()   { return head.next == head; }
+        Entry first()       { return head.next; }
+
+        void addLast(Entry e) {
+            e.prev = head.prev;
+            e.next = head;
+            head.prev.next = e;
+            head.prev = e;
+            weight += e.weight;
+        }
+
+        void remove(Entry e) {
+            e.prev.next = e.next;
+            e.next.prev = e.prev;
+            e.prev = e.next = null;
+            weight -= e.weight;
+        }
+    }
+
+    private final class Segment {
+        private final long maxWeight;
+        private final long windowMax;
+        private final long protectedMax;
+        private final Map<Key, Entry> map = new HashMap<>();
+        private final Queue[] queues = { new Queue(), new Queue(), new Queue() };
+        private final FrequencySketch sketch = new FrequencySketch(64);
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+            this.windowMax = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+            this.protectedMax = (maxWeight - windowMax) * PROTECTED_PERCENT / 100;
+        }
+
+        synchronized Chunk get(Key key) {
+            sketch.increment(sketchHash(key));
+            Entry e = map.get(key);
+            if (e == null) return null;
+            touch(e);
+            return e.value;
+        }
+
+        synchronized Chunk peek(Key key) {
+            Entry e = map.get(key);
+            return e != null ? e.value : null;
+        }
+
+        synchronized void put(Key key, Chunk value, long weight) {
+            if (weight > maxWeight) {
+                rejections.increment();     // would flush the whole segment
+                return;
+            }
+            Entry old = map.remove(key);
+            if (old != null) {
+                queues[old.queue].remove(old);
+            }
+            Entry e = new Entry(key, value, weight);
+            map.put(key, e);
+            e.queue = WINDOW;
+            queues[WINDOW].addLast(e);
+            sketch.ensureCapacity(map.size());
+            evict();
+        }
+
+        private void touch(Entry e) {
+            Queue from = queues[e.queue];
+            from.remove(e);
+            if (e.queue == PROBATION) {
+                e.queue = PROTECTED;
+                queues[PROTECTED].addLast(e);
+                // demote the protected area's oldest entries back to probation
+                while (queues[PROTECTED].weight > protectedMax && queues[PROTECTED].first() != e) {
+                    Entry demoted = queues[PROTECTED].first();
+                    queues[PROTECTED].remove(demoted);
+                    demoted.queue = PROBATION;
+                    queues[PROBATION].addLast(demoted);
+                }
+            } else {
+                from.addLast(e);
+            }
+        }
+
+        private void evict() {
+            // window overflow moves candidates into probation
+            while (queues[WINDOW].weight > windowMax && queues[WINDOW].first() != queues[WINDOW].head.prev) {
+                Entry candidate = queues[WINDOW].first();
+                queues[WINDOW].remove(candidate);
+                candidate.queue = PROBATION;
+                queues[PROBATION].addLast(candidate);
+            }
+            // then, while over budget, duel the newest probation candidate against the oldest victim
+            while (weight() > maxWeight) {
+                Queue probation = queues[PROBATION];
+                Entry victim = !probation.isEmpty() ? probation.first()
+                        : !queues[PROTECTED].isEmpty() ? queues[PROTECTED].first()
+                        : queues[WINDOW].first();
+                Entry candidate = probation.head.prev;
+                if (candidate != victim && candidate.queue == PROBATION
+                        && sketch.frequency(sketchHash(victim.key)) >= sketch.frequency(sketchHash(candidate.key))) {
+                    remove(candidate);
+                    rejections.increment();
+                } else {
+                    remove(victim);
+                    evictions.increment();
+                }
+            }
+        }
+
+        private void remove(Entry e) {
+            queues[e.queue].remove(e);
+            map.remove(e.key);
+        }
+
+        synchronized long weight() {
+            return queues[WINDOW].weight + queues[PROBATION].weight + queues[PROTECTED].weight;
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+        synchronized void clear() {
+            for (Entry e : map.values().toArray(new Entry[0])) {
+                remove(e);
+            }
+        }
+    }
+}
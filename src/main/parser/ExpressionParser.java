@@ -25,12 +25,13 @@ public final class ExpressionParser {
     // =======================================================
 
     public List<Expression> parseExpressionList() {
+        int mark = p.enter("parseExpressionList");
         List<Expression> list = new ArrayList<>();
         list.add(parseExpression());
         while (p.match(TokenType.COMMA)) {
             list.add(parseExpression());
         }
-        return list;
+        return p.exit(mark, list);
     }
 
     // =======================================================
@@ -44,28 +45,31 @@ public final class ExpressionParser {
 
     // 2. Logical OR (Lowest)
     private Expression parseOr() {
+        int mark = p.enter("parseOr");
         Expression expr = parseAnd();
         while (p.match(TokenType.LOGICAL_OR)) {
             Token op = p.previous();
             Expression right = parseAnd();
             expr = makeBinary(expr, op, right);
         }
-        return expr;
+        return p.exit(mark, expr);
     }
 
     // 3. Logical AND
     private Expression parseAnd() {
+        int mark = p.enter("parseAnd");
         Expression expr = parseCompare();
         while (p.match(TokenType.LOGICAL_AND)) {
             Token op = p.previous();
             Expression right = parseCompare();
             expr = makeBinary(expr, op, right);
         }
-        return expr;
+        return p.exit(mark, expr);
     }
 
     // 4. Comparison
     private Expression parseCompare() {
+        int mark = p.enter("parseCompare");
         Expression expr = parseBitwiseOr();
         while (p.match(TokenType.EQUAL, TokenType.NOT_EQUAL, TokenType.LESS,
                 TokenType.LESS_EQUAL, TokenType.GREATER, TokenType.GREATER_EQUAL)) {
@@ -73,87 +77,95 @@ public final class ExpressionParser {
             Expression right = parseBitwiseOr();
             expr = makeBinary(expr, op, right);
         }
-        return expr;
+        return p.exit(mark, expr);
     }
 
     // 5. Bitwise OR (|)
     private Expression parseBitwiseOr() {
+        int mark = p.enter("parseBitwiseOr");
         Expression expr = parseBitwiseXor();
         while (p.match(TokenType.BITWISE_OR)) {
             Token op = p.previous();
             Expression right = parseBitwiseXor();
             expr = makeBinary(expr, op, right);
         }
-        return expr;
+        return p.exit(mark, expr);
     }
 
     // 6. Bitwise XOR (~)
     private Expression parseBitwiseXor() {
+        int mark = p.enter("parseBitwiseXor");
         Expression expr = parseBitwiseAnd();
         while (p.match(TokenType.BITWISE_XOR)) {
             Token op = p.previous();
             Expression right = parseBitwiseAnd();
             expr = makeBinary(expr, op, right);
         }
-        return expr;
+        return p.exit(mark, expr);
     }
 
     // 7. Bitwise AND (&)
     private Expression parseBitwiseAnd() {
+        int mark = p.enter("parseBitwiseAnd");
         Expression expr = parseBitwiseShift();
         while (p.match(TokenType.BITWISE_AND)) {
             Token op = p.previous();
             Expression right = parseBitwiseShift();
             expr = makeBinary(expr, op, right);
         }
-        return expr;
+        return p.exit(mark, expr);
     }
 
     // 8. Bitwise Shift (<<, >>)
     private Expression parseBitwiseShift() {
+        int mark = p.enter("parseBitwiseShift");
         Expression expr = parseConcat();
         while (p.match(TokenType.BITWISE_SHL, TokenType.BITWISE_SHR)) {
             Token op = p.previous();
             Expression right = parseConcat();
             expr = makeBinary(expr, op, right);
         }
-        return expr;
+        return p.exit(mark, expr);
     }
 
     // 9. Concatenation (..) - Right-associative in Lua
     private Expression parseConcat() {
+        int mark = p.enter("parseConcat");
         Expression expr = parseAdd();
         if (p.match(TokenType.DOT_DOT)) {
             Token op = p.previous();
             Expression right = parseConcat(); // Recursive call for right-associativity
             expr = makeBinary(expr, op, right);
         }
-        return expr;
+        return p.exit(mark, expr);
     }
 
     // 10. Addition and Subtraction
     private Expression parseAdd() {
+        int mark = p.enter("parseAdd");
         Expression expr = parseMul();
         while (p.match(TokenType.PLUS, TokenType.MINUS)) {
             Token op = p.previous();
             Expression right = parseMul();
             expr = makeBinary(expr, op, right);
         }
-        return expr;
+        return p.exit(mark, expr);
     }
 
     // 11. Multiplication, Division, Floor Div, Mod
     private Expression parseMul() {
+        int mark = p.enter("parseMul");
         Expression expr = parseUnary();
         while (p.match(TokenType.STAR, TokenType.SLASH, TokenType.PERCENT, TokenType.FLOOR_DIV)) {
             Token op = p.previous();
             Expression right = parseUnary();
             expr = makeBinary(expr, op, right);
         }
-        return expr;
+        return p.exit(mark, expr);
     }
 
     private Expression parseUnary() {
+        int mark = p.enter("parseUnary");
         // 1. Check for unary operators (#, -, not)
         if (p.match(TokenType.NOT, TokenType.MINUS, TokenType.HASH)) {
             Token op = p.previous();
@@ -166,13 +178,14 @@ public final class ExpressionParser {
                     op.span().getStart(),
                     right.getSpan().getEnd()
             );
-            return new UnaryExpression(op.type(), right, span, List.of(), List.of());
+            return p.exit(mark, new UnaryExpression(op.type(), right, span, List.of(), List.of()));
         }
         // 2. If no unary operator, move to Power
-        return parsePower();
+        return p.exit(mark, parsePower());
     }
 
     private Expression parsePower() {
+        int mark = p.enter("parsePower");
         // Left side is a primary expression (like '1')
         Expression expr = parsePrefixExpression();
 
@@ -187,7 +200,7 @@ public final class ExpressionParser {
             expr = makeBinary(expr, op, right);
         }
 
-        return expr;
+        return p.exit(mark, expr);
     }
 
     // =======================================================
@@ -195,20 +208,21 @@ public final class ExpressionParser {
     // =======================================================
 
     private Expression parsePrimary() {
+        int mark = p.enter("parsePrimary");
 
         if (p.match(TokenType.FUNCTION)) {
-            return parseAnonymousFunction();
+            return p.exit(mark, parseAnonymousFunction());
         }
 
         if (p.match(TokenType.NUMBER)) {
             Token t = p.previous();
-            return new LiteralExpression(t.lexeme(), t.type(), t.span(), List.of(), List.of());
+            return p.exit(mark, new LiteralExpression(t.lexeme(), t.type(), t.span(), List.of(), List.of()));
         }
 
         if (p.match(TokenType.STRING)) {
             Token t = p.previous();
             String lexeme = t.lexeme().substring(1, t.lexeme().length() - 1); // remove quotes
-            return new LiteralExpression(lexeme, t.type(), t.span(), List.of(), List.of());
+            return p.exit(mark, new LiteralExpression(lexeme, t.type(), t.span(), List.of(), List.of()));
         }
 
         if (p.match(TokenType.MULTILINE_STRING)) { // weird syntax rule by lua
@@ -225,44 +239,44 @@ public final class ExpressionParser {
             int end = raw.length() - (1 + equalsCount + 1);
 
             String value = raw.substring(start, end);
-            return new LiteralExpression(value, t, t.type(), t.span(), List.of(), List.of());
+            return p.exit(mark, new LiteralExpression(value, t, t.type(), t.span(), List.of(), List.of()));
         }
 
         if (p.match(TokenType.NIL)) {
             Token t = p.previous();
-            return new LiteralExpression("nil", t.type(), t.span(), List.of(), List.of());
+            return p.exit(mark, new LiteralExpression("nil", t.type(), t.span(), List.of(), List.of()));
         }
 
         if (p.match(TokenType.TRUE)) {
             Token t = p.previous();
-            return new LiteralExpression("true", t.type(), t.span(), List.of(), List.of());
+            return p.exit(mark, new LiteralExpression("true", t.type(), t.span(), List.of(), List.of()));
         }
 
         if (p.match(TokenType.FALSE)) {
             Token t = p.previous();
-            return new LiteralExpression("false", t.type(), t.span(), List.of(), List.of());
+            return p.exit(mark, new LiteralExpression("false", t.type(), t.span(), List.of(), List.of()));
         }
 
         if (p.match(TokenType.IDENTIFIER)) {
             Token id = p.previous();
-            return new IdentifierExpression(id.lexeme(), id.span(), List.of(), List.of());
+            return p.exit(mark, new IdentifierExpression(id.lexeme(), id.span(), List.of(), List.of()));
         }
 
         if (p.match(TokenType.VARARG)) {
             Token t = p.previous();
-            return new VarArgExpression(t.span(), List.of(), List.of());
+            return p.exit(mark, new VarArgExpression(t.span(), List.of(), List.of()));
         }
 
         // handle '{'
         if (p.match(TokenType.LBRACE)) {
-            return parseTableConstructor();
+            return p.exit(mark, parseTableConstructor());
         }
 
         if (p.match(TokenType.LPAREN)) {
             Token t = p.previous();
             Expression e = parseExpression();
             p.consume(TokenType.RPAREN, "expected ')'");
-            return new ParanthesisExpression(e, t.span(), List.of(), List.of());
+            return p.exit(mark, new ParanthesisExpression(e, t.span(), List.of(), List.of()));
         }
 
 
@@ -270,6 +284,7 @@ public final class ExpressionParser {
     }
 
     public Expression parsePrefixExpression() {
+        int mark = p.enter("parsePrefixExpression");
         Expression expr = parsePrimary();
 
         while (true) {
@@ -353,10 +368,11 @@ public final class ExpressionParser {
             }
         }
 
-        return expr;
+        return p.exit(mark, expr);
     }
 
     private Expression parseTableConstructor() {
+        int mark = p.enter("parseTableConstructor");
         Token openBrace = p.previous(); // The '{'
         List<TableFieldExpression> fields = new ArrayList<>();
 
@@ -376,10 +392,11 @@ public final class ExpressionParser {
         Token closeBrace = p.consume(TokenType.RBRACE, "expected '}' after table constructor");
         Span span = p.combine(openBrace, closeBrace);
 
-        return new TableConstructorExpression(fields, span, List.of(), List.of());
+        return p.exit(mark, new TableConstructorExpression(fields, span, List.of(), List.of()));
     }
 
     private TableFieldExpression parseTableField() {
+        int mark = p.enter("parseTableField");
         Expression key = null;
         Expression value;
         Token startTok = p.peek();
@@ -406,10 +423,11 @@ public final class ExpressionParser {
         }
 
         Span span = p.combine(startTok, p.previous());
-        return new TableFieldExpression(key, value, span, List.of(), List.of());
+        return p.exit(mark, new TableFieldExpression(key, value, span, List.of(), List.of()));
     }
 
     private Expression parseAnonymousFunction() {
+        int mark = p.enter("parseAnonymousFunction");
         Token funcToken = p.previous();
 
         p.consume(TokenType.LPAREN, "expected '(' after 'function'");
@@ -430,7 +448,7 @@ public final class ExpressionParser {
 
         p.consume(TokenType.RPAREN, "expected ')' after parameters");
 
-        List<Statement> body = p.parseChunk().getBlock().getStatements();
+        List<Statement> body = p.parseStatements();
 
         Token endToken = p.consume(TokenType.END, "expected 'end' to close function");
 
@@ -446,9 +464,7 @@ public final class ExpressionParser {
 
         var anonFunc = new AnonymousFunctionExpression(parameters, new Chunk(newBlock, span, List.of(), List.of()), span, List.of(), List.of());
 
-        for (var expr : parameters) expr.setParent(anonFunc);
-
-        return anonFunc;
+        return p.exit(mark, anonFunc);
     }
 
     // =======================================================
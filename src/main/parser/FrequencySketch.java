@@ -0,0 +1,89 @@
+package main.parser;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often a key was seen recently,
+ * used by {@link ChunkCache} to decide whether a new entry is worth admitting.
+ * <p>A key has one counter in each of four rows; every row picks a long of the
+ * table and one of the four nibbles that row owns inside it. Once the number of
+ * increments reaches ten times the table size all counters are halved, so old
+ * popularity fades. Not thread-safe; callers hold their segment lock.</p>
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private long[] table;
+    private int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        resize(expectedEntries);
+    }
+
+    /**
+     * Grows the table when the cache holds more entries than it was sized for.
+     * Counts are dropped, which only makes admission briefly less selective.
+     */
+    void ensureCapacity(int entries) {
+        if (entries > table.length) {
+            resize(entries);
+        }
+    }
+
+    private void resize(int entries) {
+        int length = Integer.highestOneBit(Math.max(16, entries) - 1) << 1;
+        table = new long[length];
+        sampleSize = 10 * length;
+        additions = 0;
+    }
+
+    int frequency(long hash) {
+        int min = 15;
+        for (int i = 0; i < 4; i++) {
+            min = Math.min(min, counter(hash, i));
+        }
+        return min;
+    }
+
+    void increment(long hash) {
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int shift = offsetOf(hash, i) << 2;
+            long mask = 0xFL << shift;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int counter(long hash, int i) {
+        int shift = offsetOf(hash, i) << 2;
+        return (int) ((table[indexOf(hash, i)] >>> shift) & 0xF);
+    }
+
+    private int indexOf(long hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h ^= h >>> 32;
+        return (int) h & (table.length - 1);
+    }
+
+    // counter within the long: row i uses nibbles [4i, 4i + 4)
+    private static int offsetOf(long hash, int i) {
+        return (i << 2) + (int) ((hash >>> (i << 3)) & 3);
+    }
+}
@@ -0,0 +1,252 @@
+package main.parser;
+
+import main.ast.Chunk;
+import main.util.ASTBinaryReader;
+import main.util.ASTBinaryWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Content-addressed on-disk cache of parsed trees, shared between runs.
+ * <p>Entries are keyed by a 64-bit hash of the source text and {@link Parser#VERSION}
+ * and hold the {@link ASTBinaryWriter} encoding of the tree, prefixed with a second,
+ * independent hash and the source length so a hash collision reads as a miss.
+ * Files are written to a temporary name and moved into place, so readers never see
+ * a partial entry. When the directory grows past its byte budget the least recently
+ * used entries are deleted; recency survives restarts through file modification times.</p>
+ * <p>The cache is best effort: unreadable or corrupt entries count as misses and are
+ * removed, and failed writes are dropped. It is safe to use from several threads.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * ParseCache cache = ParseCache.open(Path.of(".luacache"), 256L << 20);
+ * Chunk chunk = new Parser(source, cache).parseChunk();
+ * System.out.println(cache.getHits() + " hits, " + cache.getMisses() + " misses");
+ * }</pre>
+ */
+public final class ParseCache {
+
+    private static final String SUFFIX = ".ast";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int ENTRY_HEADER = Long.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);   // file name -> size, LRU first
+    private long totalBytes = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private ParseCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Opens (creating if needed) the cache in {@code directory}, keeping at most
+     * {@code maxBytes} of entries. Leftover temporary files are removed.
+     */
+    public static ParseCache open(Path directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        Files.createDirectories(directory);
+        ParseCache cache = new ParseCache(directory, maxBytes);
+
+        record Existing(String name, long size, FileTime used) {}
+        List<Existing> existing = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(SUFFIX)) {
+                    existing.add(new Existing(name, Files.size(file), Files.getLastModifiedTime(file)));
+                }
+            }
+        }
+        existing.sort(Comparator.comparing(Existing::used));
+        synchronized (cache) {
+            for (Existing e : existing) {
+                cache.entries.put(e.name(), e.size());
+                cache.totalBytes += e.size();
+            }
+            cache.evict();
+        }
+        return cache;
+    }
+
+    /**
+     * The cached tree for {@code source}, or null on a miss.
+     */
+    public Chunk get(String source) {
+        String name = fileName(source);
+        synchronized (this) {
+            if (entries.get(name) == null) {
+                misses.increment();
+                return null;
+            }
+        }
+        Path file = directory.resolve(name);
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (bytes.getLong() != secondaryHash(source) || bytes.getInt() != source.length()) {
+                misses.increment();    // 64-bit collision; leave the other source's entry alone
+                return null;
+            }
+            Chunk chunk = ASTBinaryReader.read(bytes);
+            touch(file);
+            hits.increment();
+            return chunk;
+        } catch (IOException | RuntimeException e) {
+            // gone, truncated or written by another format version
+            remove(name, file);
+            misses.increment();
+            return null;
+        }
+    }
+
+    // Persists recency for the next open(); failing to do so only makes eviction less precise.
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Stores the tree parsed from {@code source}, then evicts entries if over budget.
+     */
+    public void put(String source, Chunk chunk) {
+        byte[] tree = ASTBinaryWriter.toByteArray(chunk);
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER + tree.length)
+                .putLong(secondaryHash(source))
+                .putInt(source.length())
+                .put(tree);
+
+        String name = fileName(source);
+        Path file = directory.resolve(name);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, name, TEMP_SUFFIX);
+            Files.write(temp, entry.array());
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            deleteQuietly(temp);
+            return;
+        }
+
+        writes.increment();
+        synchronized (this) {
+            Long previous = entries.put(name, (long) entry.capacity());
+            totalBytes += entry.capacity() - (previous != null ? previous : 0);
+            evict();
+        }
+    }
+
+    // Drops least recently used entries until under budget; the newest entry always stays.
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && entries.size() > 1 && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.getValue();
+            deleteQuietly(directory.resolve(eldest.getKey()));
+            evictions.increment();
+        }
+    }
+
+    private void remove(String name, Path file) {
+        synchronized (this) {
+            Long size = entries.remove(name);
+            if (size != null) totalBytes -= size;
+        }
+        deleteQuietly(file);
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // a stale file only costs disk space until the next eviction pass
+        }
+    }
+
+    private static String fileName(String source) {
+        return String.format("%016x-v%d%s", contentHash(source), Parser.VERSION, SUFFIX);
+    }
+
+    // ----------------------------------------------------------------------
+    // Hashing
+    // ----------------------------------------------------------------------
+
+    /**
+     * Fast 64-bit hash of {@code source}'s characters.
+     */
+    public static long contentHash(String source) {
+        long h = 0x27D4EB2F165667C5L ^ source.length();
+        for (int i = 0, n = source.length(); i < n; i++) {
+            h = (h ^ source.charAt(i)) * 0x100000001B3L;
+        }
+        return fmix(h);
+    }
+
+    // Independent of contentHash, so two sources colliding in both is practically impossible.
+    private static long secondaryHash(String source) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0, n = source.length(); i < n; i++) {
+            h = 31 * h + source.charAt(i);
+        }
+        return fmix(h);
+    }
+
+    // murmur3 fmix64
+    private static long fmix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // ----------------------------------------------------------------------
+    // Counters
+    // ----------------------------------------------------------------------
+
+    public long getHits()      { return hits.sum(); }
+    public long getMisses()    { return misses.sum(); }
+    public long getWrites()    { return writes.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,292 @@
+package main.parser;
+
+import main.ast.Node;
+import main.ast.NodeKind;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per grammar rule counts, consumed tokens, self time and self allocation, collected
+ * while a {@link Parser} runs with {@link Parser#setProfiler(ParseProfiler)}.
+ * <p>Each rule method of {@link ExpressionParser} and {@link StatementParser} is a
+ * frame. Self figures exclude callees; a rule's total time and tokens only count its
+ * outermost activation, so recursive rules are not counted twice. Every node a rule
+ * builds (as opposed to passes up from a callee) is also attributed to its
+ * {@link NodeKind}. The call tree can be written as collapsed stacks for flame graph
+ * tools. Timing includes some profiler overhead, which inflates the deep precedence
+ * chain, so compare rules against each other rather than against unprofiled runs.</p>
+ * <p>Not thread-safe. One profiler may be shared by parsers that run one after another.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * ParseProfiler profiler = new ParseProfiler();
+ * for (String source : corpus) {
+ *     Parser parser = new Parser(source);
+ *     parser.setProfiler(profiler);
+ *     parser.parseChunk();
+ * }
+ * System.out.println(profiler.report());
+ * try (Writer out = Files.newBufferedWriter(Path.of("parse.collapsed"))) {
+ *     profiler.writeCollapsed(out, false);    // flamegraph.pl parse.collapsed > parse.svg
+ * }
+ * }</pre>
+ */
+public final class ParseProfiler {
+
+    /**
+     * Totals for one grammar rule.
+     *
+     * @param totalNanos time from entry to exit of outermost activations
+     * @param tokens     tokens consumed by outermost activations, callees included
+     * @param selfTokens tokens consumed by the rule itself
+     */
+    public record Rule(String name, long calls, long selfNanos, long totalNanos,
+                       long tokens, long selfTokens, long selfBytes) {}
+
+    /**
+     * Nodes of one kind built by the parser, with the self cost of the rules that built them.
+     */
+    public record Kind(NodeKind kind, long count, long selfNanos, long selfTokens, long selfBytes) {}
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final class RuleStats {
+        final String name;
+        long calls, selfNanos, totalNanos, tokens, selfTokens, selfBytes;
+        int active;
+
+        RuleStats(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class KindStats {
+        long count, selfNanos, selfTokens, selfBytes;
+    }
+
+    private static final class CallNode {
+        final String name;
+        final Map<String, CallNode> children = new HashMap<>();
+        long selfNanos, selfBytes;
+
+        CallNode(String name) {
+            this.name = name;
+        }
+
+        CallNode child(String rule) {
+            CallNode c = children.get(rule);
+            if (c == null) {
+                c = new CallNode(rule);
+                children.put(rule, c);
+            }
+            return c;
+        }
+    }
+
+    private final Map<String, RuleStats> rules = new HashMap<>();
+    private final Map<NodeKind, KindStats> kinds = new EnumMap<>(NodeKind.class);
+    private final CallNode root = new CallNode("parse");
+
+    // frame stack, one slot per active rule
+    private int depth = 0;
+    private RuleStats[] frameRule = new RuleStats[64];
+    private CallNode[] frameCall = new CallNode[64];
+    private long[] startNanos = new long[64];
+    private long[] startBytes = new long[64];
+    private int[] startToken = new int[64];
+    private long[] childNanos = new long[64];
+    private long[] childBytes = new long[64];
+    private int[] childTokens = new int[64];
+    private Object[] lastChildResult = new Object[64];
+
+    /**
+     * Drops frames left open by a parse that failed with an exception.
+     */
+    void beginParse() {
+        for (int d = 0; d < depth; d++) {
+            frameRule[d].active--;
+            lastChildResult[d] = null;
+        }
+        depth = 0;
+    }
+
+    /**
+     * Opens a frame for {@code rule} at token index {@code token}.
+     *
+     * @return the mark to pass to {@link #exit(int, int, Object)}
+     */
+    int enter(String rule, int token) {
+        if (depth == frameRule.length) grow();
+        RuleStats stats = rules.get(rule);
+        if (stats == null) {
+            stats = new RuleStats(rule);
+            rules.put(rule, stats);
+        }
+        stats.calls++;
+        stats.active++;
+
+        int d = depth;
+        frameRule[d] = stats;
+        frameCall[d] = (d == 0 ? root : frameCall[d - 1]).child(rule);
+        startToken[d] = token;
+        childNanos[d] = 0;
+        childBytes[d] = 0;
+        childTokens[d] = 0;
+        lastChildResult[d] = null;
+        startBytes[d] = THREADS.getCurrentThreadAllocatedBytes();
+        startNanos[d] = System.nanoTime();     // last, so bookkeeping above is not charged to the rule
+        depth++;
+        return d;
+    }
+
+    /**
+     * Closes the frame opened with {@code mark}; {@code result} is what the rule returned.
+     */
+    void exit(int mark, int token, Object result) {
+        long now = System.nanoTime();
+        long bytes = THREADS.getCurrentThreadAllocatedBytes();
+        if (mark >= depth) return;      // frame already dropped by beginParse()
+        depth = mark;
+
+        long total = now - startNanos[mark];
+        long allocated = bytes - startBytes[mark];
+        int tokens = token - startToken[mark];
+        long selfNanos = total - childNanos[mark];
+        long selfBytes = allocated - childBytes[mark];
+        int selfTokens = tokens - childTokens[mark];
+
+        RuleStats stats = frameRule[mark];
+        stats.selfNanos += selfNanos;
+        stats.selfBytes += selfBytes;
+        stats.selfTokens += selfTokens;
+        if (--stats.active == 0) {
+            stats.totalNanos += total;
+            stats.tokens += tokens;
+        }
+        CallNode call = frameCall[mark];
+        call.selfNanos += selfNanos;
+        call.selfBytes += selfBytes;
+
+        if (result instanceof Node node && result != lastChildResult[mark]) {
+            KindStats k = kinds.computeIfAbsent(node.getKind(), x -> new KindStats());
+            k.count++;
+            k.selfNanos += selfNanos;
+            k.selfTokens += selfTokens;
+            k.selfBytes += selfBytes;
+        }
+        lastChildResult[mark] = null;
+
+        if (mark > 0) {
+            childNanos[mark - 1] += total;
+            childBytes[mark - 1] += allocated;
+            childTokens[mark - 1] += tokens;
+            lastChildResult[mark - 1] = result;
+        }
+    }
+
+    private void grow() {
+        int n = frameRule.length * 2;
+        frameRule = Arrays.copyOf(frameRule, n);
+        frameCall = Arrays.copyOf(frameCall, n);
+        startNanos = Arrays.copyOf(startNanos, n);
+        startBytes = Arrays.copyOf(startBytes, n);
+        startToken = Arrays.copyOf(startToken, n);
+        childNanos = Arrays.copyOf(childNanos, n);
+        childBytes = Arrays.copyOf(childBytes, n);
+        childTokens = Arrays.copyOf(childTokens, n);
+        lastChildResult = Arrays.copyOf(lastChildResult, n);
+    }
+
+    // ----------------------------------------------------------------------
+    // Results
+    // ----------------------------------------------------------------------
+
+    /**
+     * All rules, by descending self time.
+     */
+    public List<Rule> getRules() {
+        List<Rule> list = new ArrayList<>(rules.size());
+        for (RuleStats s : rules.values()) {
+            list.add(new Rule(s.name, s.calls, s.selfNanos, s.totalNanos, s.tokens, s.selfTokens, s.selfBytes));
+        }
+        list.sort(Comparator.comparingLong(Rule::selfNanos).reversed());
+        return list;
+    }
+
+    /**
+     * All node kinds built, by descending self time.
+     */
+    public List<Kind> getKinds() {
+        List<Kind> list = new ArrayList<>(kinds.size());
+        kinds.forEach((kind, s) -> list.add(new Kind(kind, s.count, s.selfNanos, s.selfTokens, s.selfBytes)));
+        list.sort(Comparator.comparingLong(Kind::selfNanos).reversed());
+        return list;
+    }
+
+    /**
+     * Human-readable tables of {@link #getRules()} and {@link #getKinds()}.
+     */
+    public String report() {
+        long totalSelf = 0;
+        for (RuleStats s : rules.values()) totalSelf += s.selfNanos;
+        double scale = totalSelf > 0 ? 100.0 / totalSelf : 0;
+
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-32s %10s %10s %7s %10s %10s %10s %12s%n",
+                "Rule", "Calls", "Self ms", "Self %", "Total ms", "Tokens", "Self tok", "Self bytes"));
+        for (Rule r : getRules()) {
+            out.append(String.format("%-32s %10d %10.2f %6.1f%% %10.2f %10d %10d %12d%n",
+                    r.name(), r.calls(), r.selfNanos() / 1e6, r.selfNanos() * scale, r.totalNanos() / 1e6,
+                    r.tokens(), r.selfTokens(), r.selfBytes()));
+        }
+        out.append(String.format("%n%-32s %10s %10s %7s %10s %12s%n",
+                "Kind", "Nodes", "Self ms", "Self %", "Self tok", "Self bytes"));
+        for (Kind k : getKinds()) {
+            out.append(String.format("%-32s %10d %10.2f %6.1f%% %10d %12d%n",
+                    k.kind(), k.count(), k.selfNanos() / 1e6, k.selfNanos() * scale, k.selfTokens(), k.selfBytes()));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes one {@code rule;rule;...;rule value} line per call path, the collapsed-stack
+     * format read by flamegraph.pl, speedscope and async-profiler's converters. The value
+     * is self nanoseconds, or self allocated bytes when {@code allocations} is set.
+     */
+    public void writeCollapsed(Appendable out, boolean allocations) throws IOException {
+        StringBuilder path = new StringBuilder();
+        for (CallNode child : root.children.values()) {
+            writeCollapsed(out, child, path, allocations);
+        }
+    }
+
+    private static void writeCollapsed(Appendable out, CallNode node, StringBuilder path,
+                                       boolean allocations) throws IOException {
+        int length = path.length();
+        if (length > 0) path.append(';');
+        path.append(node.name);
+        long value = allocations ? node.selfBytes : node.selfNanos;
+        if (value > 0) {
+            out.append(path).append(' ').append(Long.toString(value)).append('\n');
+        }
+        for (CallNode child : node.children.values()) {
+            writeCollapsed(out, child, path, allocations);
+        }
+        path.setLength(length);
+    }
+
+    public void reset() {
+        rules.clear();
+        kinds.clear();
+        root.children.clear();
+        beginParse();
+    }
+}
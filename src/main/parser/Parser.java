@@ -3,37 +3,170 @@ package main.parser;
 import main.ast.*;
 import main.ast.exp.Expression;
 import main.ast.stmt.*;
+import main.diagnostics.Instrumentation;
+import main.diagnostics.ParseEvent;
 import main.lexer.Lexer;
 import main.lexer.Token;
 import main.lexer.TokenType;
 import main.parser.exceptions.LuaRuleException;
 import main.parser.exceptions.ParseException;
 import main.util.Span;
+import main.visit.HashConsingRewriter;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public final class Parser {
 
-    public final List<Token> tokens;
+    /**
+     * Bumped whenever the trees produced for the same source change, so
+     * {@link ParseCache} entries written by older parsers are never reused.
+     */
+    public static final int VERSION = 1;
+
+    private final String source;         // null when constructed from tokens
+    private final ParseCache cache;
+    private List<Token> tokens;          // with a cache, lexed on first use: a hit needs no tokens
     public int current = 0;
 
     public final ExpressionParser expr;
     public final StatementParser stmt;
 
+    private boolean kindIndexing = false;
+    private boolean hashConsing = false;
+    private ParseProfiler profiler;      // null unless profiling
+
     public Parser(List<Token> tokens) {
+        this.source = null;
+        this.cache = null;
         this.tokens = tokens;
         this.expr = new ExpressionParser(this);
         this.stmt = new StatementParser(this);
     }
 
     public Parser(String source) {
-        this.tokens = new Lexer(source).tokenize();
+        this(source, null);
+    }
+
+    /**
+     * Parser whose {@link #parseChunk()} first looks {@code source} up in {@code cache}
+     * and only lexes and parses it on a miss, storing the result for next time.
+     */
+    public Parser(String source, ParseCache cache) {
+        this.source = source;
+        this.cache = cache;
+        this.tokens = cache == null ? new Lexer(source).tokenize() : null;
         this.expr = new ExpressionParser(this);
         this.stmt = new StatementParser(this);
     }
 
+    /**
+     * The tokens being parsed, read-only. With a cache they are lexed on first use,
+     * which this triggers.
+     */
+    public List<Token> getTokens() {
+        return Collections.unmodifiableList(lexed());
+    }
+
+    private List<Token> lexed() {
+        List<Token> t = tokens;
+        if (t == null) {
+            tokens = t = new Lexer(source).tokenize();
+        }
+        return t;
+    }
+
+    /**
+     * When enabled, the outermost {@link Chunk} returned by {@link #parseChunk()}
+     * carries a {@link KindIndex} of all its descendants.
+     */
+    public void setKindIndexing(boolean kindIndexing) {
+        this.kindIndexing = kindIndexing;
+    }
+
+    /**
+     * When enabled, structurally equal subtrees of the outermost {@link Chunk} share
+     * one instance, parsed ones included. See {@link HashConsingRewriter#setMergeParsed(boolean)}
+     * for what sharing gives up.
+     */
+    public void setHashConsing(boolean hashConsing) {
+        this.hashConsing = hashConsing;
+    }
+
+    /**
+     * Collect per grammar rule statistics into {@code profiler} while parsing;
+     * null, the default, turns profiling off.
+     */
+    public void setProfiler(ParseProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Opens a profiling frame for a grammar rule; a no-op unless a profiler is set.
+     */
+    int enter(String rule) {
+        return profiler != null ? profiler.enter(rule, current) : 0;
+    }
+
+    /**
+     * Closes the frame opened by {@link #enter(String)} and passes the rule's result through.
+     */
+    <T> T exit(int mark, T result) {
+        if (profiler != null) profiler.exit(mark, current, result);
+        return result;
+    }
+
     public Chunk parseChunk() {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        long start = Instrumentation.start();
+
+        Chunk chunk = cache != null && current == 0 ? cache.get(source) : null;
+        if (chunk == null) {
+            if (profiler != null) profiler.beginParse();
+            Block block = parseBlock();
+            chunk = new Chunk(block, block.getSpan(), List.of(), List.of());
+            if (cache != null) {
+                cache.put(source, chunk);
+            }
+        }
+        if (hashConsing) {
+            HashConsingRewriter interner = new HashConsingRewriter();
+            interner.setMergeParsed(true);
+            chunk = (Chunk) chunk.accept(interner);
+        }
+        if (kindIndexing) {
+            chunk.buildKindIndex();
+        }
+
+        long bytes = source != null ? source.length() : tokens.getLast().span().getEndOffset();
+        Instrumentation.parsed(event, start, bytes, tokens != null ? tokens.size() : 0, chunk);
+        return chunk;
+    }
+
+    /**
+     * Parses statements up to the end of the current block. Nested bodies use this
+     * directly so their {@link Block} is adopted by the statement that owns it.
+     */
+    public Block parseBlock() {
+        List<Statement> statements = parseStatements();
+
+        Token first = lexed().getFirst();
+        Token last  = previous();
+
+        Span span = new Span(
+                first.span().getStartOffset(),
+                last.span().getEndOffset(),
+                first.span().getStart(),
+                last.span().getEnd()
+        );
+
+        return new Block(statements, span, List.of(), List.of());
+    }
+
+    public List<Statement> parseStatements() {
+        int mark = enter("parseStatements");
         List<Statement> statements = new ArrayList<>();
 
         while (!isBlockEnd(peek())) {
@@ -56,18 +189,7 @@ public final class Parser {
             }
 
         }
-
-        Token first = tokens.getFirst();
-        Token last  = previous();
-
-        Span span = new Span(
-                first.span().getStartOffset(),
-                last.span().getEndOffset(),
-                first.span().getStart(),
-                last.span().getEnd()
-        );
-
-        return new Chunk(new Block(statements, span, List.of(), List.of()), span, List.of(), List.of());
+        return exit(mark, statements);
     }
 
     public boolean match(TokenType... types) {
@@ -124,16 +246,17 @@ public final class Parser {
     }
 
     public Token peek() {
-        return tokens.get(current);
+        return lexed().get(current);
     }
 
     public Token peekNext() {
-        if (current + 1 >= tokens.size()) return tokens.get(tokens.size() - 1);
-        return tokens.get(current + 1);
+        List<Token> t = lexed();
+        if (current + 1 >= t.size()) return t.get(t.size() - 1);
+        return t.get(current + 1);
     }
 
     public Token previous() {
-        return tokens.get(current - 1);
+        return lexed().get(current - 1);
     }
 
     public ParseException error(Token tok, String msg) {
@@ -0,0 +1,268 @@
+package main.parser;
+
+import main.ast.Chunk;
+import main.diagnostics.Instrumentation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Parses many {@code .lua} files concurrently.
+ * <p>Every file gets a virtual thread that reads it and waits for its result, while
+ * lexing and parsing run on a fixed pool of platform threads sized to the cores.
+ * A global budget caps the source bytes of files that have been read but whose
+ * results the caller has not yet received, so neither a burst of huge files nor a
+ * slow consumer exhausts the heap; a single file larger than the whole budget is
+ * parsed alone. Results are delivered in completion order, one per file, with the
+ * failure in place of the tree when reading or parsing fails.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * try (ProjectParser parser = new ProjectParser()) {
+ *     parser.parse(Path.of("game/scripts"), file -> {
+ *         if (file.isOk()) index(file.chunk());
+ *         else System.err.println(file.path() + ": " + file.error().getMessage());
+ *     });
+ * }
+ * }</pre>
+ */
+public final class ProjectParser implements AutoCloseable {
+
+    /**
+     * Outcome for one file: either {@code chunk} or {@code error} is set.
+     *
+     * @param bytes      size of the file on disk
+     * @param parseNanos time spent lexing and parsing, excluding I/O and waiting
+     */
+    public record ParsedFile(Path path, Chunk chunk, Throwable error, long bytes, long parseNanos) {
+        public boolean isOk() {
+            return error == null;
+        }
+    }
+
+    private static final long DEFAULT_BUDGET = 64L << 20;
+
+    private final ExecutorService cpu;
+    private final ByteBudget budget;
+    private ParseCache cache;
+
+    public ProjectParser() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param parallelism      number of threads lexing and parsing at once
+     * @param maxBytesInFlight source bytes that may be held from reading until the result is delivered
+     */
+    public ProjectParser(int parallelism, long maxBytesInFlight) {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        if (maxBytesInFlight <= 0) throw new IllegalArgumentException("maxBytesInFlight must be positive: " + maxBytesInFlight);
+        AtomicInteger ids = new AtomicInteger();
+        this.cpu = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "lua-parse-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.budget = new ByteBudget(maxBytesInFlight);
+    }
+
+    /**
+     * Consult {@code cache} before parsing each file; null disables caching.
+     */
+    public void setParseCache(ParseCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * All {@code .lua} files under {@code root}, in a stable order.
+     */
+    public static List<Path> findLuaFiles(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(p -> p.getFileName().toString().endsWith(".lua") && Files.isRegularFile(p))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    public void parse(Path root, Consumer<ParsedFile> onResult) throws IOException {
+        parse(findLuaFiles(root), onResult);
+    }
+
+    /**
+     * Parses {@code files}, calling {@code onResult} on this thread as each one
+     * finishes. Returns once every file has been reported.
+     */
+    public void parse(Collection<Path> files, Consumer<ParsedFile> onResult) {
+        Run run = start(files);
+        try {
+            while (run.hasNext()) {
+                onResult.accept(run.take());
+            }
+        } finally {
+            run.abandon();
+        }
+    }
+
+    /**
+     * Starts parsing {@code files} and returns their results lazily, in completion order.
+     * Close the stream if it is not consumed to the end, so the results nobody takes
+     * give their bytes back to the budget.
+     */
+    public Stream<ParsedFile> stream(Collection<Path> files) {
+        Run run = start(files);
+        return Stream.generate(run::take).limit(files.size()).onClose(run::abandon);
+    }
+
+    private Run start(Collection<Path> files) {
+        List<Path> snapshot = new ArrayList<>(files);
+        Run run = new Run(snapshot.size());
+        for (Path file : snapshot) {
+            Thread.ofVirtual().name("lua-read-", 0).start(() -> run.done.add(load(file)));
+        }
+        return run;
+    }
+
+    /** A finished file and the share of the budget it holds until the caller takes it. */
+    private record Delivery(ParsedFile file, long held) {}
+
+    /** Results of one call, handed over one at a time. */
+    private final class Run {
+        final BlockingQueue<Delivery> done = new LinkedBlockingQueue<>();
+        private int remaining;
+
+        Run(int files) {
+            this.remaining = files;
+        }
+
+        boolean hasNext() {
+            return remaining > 0;
+        }
+
+        ParsedFile take() {
+            try {
+                Delivery d = done.take();
+                remaining--;
+                budget.release(d.held());
+                return d.file();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for parse results");
+            }
+        }
+
+        /** Releases the budget of results nobody will take, as they arrive. */
+        void abandon() {
+            int left = remaining;
+            remaining = 0;
+            if (left == 0) return;
+            Thread.ofVirtual().name("lua-discard").start(() -> {
+                for (int i = 0; i < left; i++) {
+                    try {
+                        budget.release(done.take().held());
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+        }
+    }
+
+    // Runs on a virtual thread: blocking on the budget, the disk and the parse future is cheap here.
+    // The budget stays held until the caller takes the result.
+    private Delivery load(Path file) {
+        long bytes = 0;
+        long held = 0;
+        try {
+            long size = bytes = Files.size(file);
+            held = budget.acquire(size);
+            String source = Files.readString(file);
+            Future<ParsedFile> parsed = cpu.submit(() -> parse(file, source, size));
+            return new Delivery(parsed.get(), held);
+        } catch (ExecutionException e) {
+            return new Delivery(new ParsedFile(file, null, e.getCause(), bytes, 0), held);
+        } catch (Exception e) {
+            return new Delivery(new ParsedFile(file, null, e, bytes, 0), held);
+        }
+    }
+
+    private ParsedFile parse(Path file, String source, long bytes) {
+        long start = System.nanoTime();
+        try {
+            Chunk chunk = Instrumentation.inFile(file.toString(), () -> new Parser(source, cache).parseChunk());
+            return new ParsedFile(file, chunk, null, bytes, System.nanoTime() - start);
+        } catch (RuntimeException | StackOverflowError e) {
+            return new ParsedFile(file, null, e, bytes, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Stops the parsing threads. Files not parsed yet are still reported, failed with a
+     * {@link CancellationException} or, if they had not been submitted, a
+     * {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    @Override
+    public void close() {
+        for (Runnable queued : cpu.shutdownNow()) {
+            // drained tasks never run; cancel them so their readers stop waiting
+            if (queued instanceof Future<?> f) f.cancel(false);
+        }
+    }
+
+    /** Counting semaphore over a long number of bytes. */
+    private static final class ByteBudget {
+        private final long capacity;
+        private final ReentrantLock lock = new ReentrantLock();   // not synchronized: virtual threads would pin
+        private final Condition released = lock.newCondition();
+        private long available;
+
+        ByteBudget(long capacity) {
+            this.capacity = capacity;
+            this.available = capacity;
+        }
+
+        /**
+         * Blocks until {@code bytes} (at most the whole budget) are free and takes them.
+         *
+         * @return the amount taken, to pass back to {@link #release(long)}
+         */
+        long acquire(long bytes) throws InterruptedException {
+            long wanted = Math.min(Math.max(bytes, 1), capacity);
+            lock.lock();
+            try {
+                while (available < wanted) {
+                    released.await();
+                }
+                available -= wanted;
+                return wanted;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release(long bytes) {
+            if (bytes == 0) return;
+            lock.lock();
+            try {
+                available += bytes;
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -19,56 +19,58 @@ public final class StatementParser {
     }
 
     public Statement parseStatement() {
+        int mark = p.enter("parseStatement");
         if (p.match(TokenType.LOCAL)) {
-            return parseLocalStatement();
+            return p.exit(mark, parseLocalStatement());
         }
 
         if (p.match(TokenType.FUNCTION)) {
-            return parseFunctionStatement();
+            return p.exit(mark, parseFunctionStatement());
         }
 
         if (p.match(TokenType.RETURN)) {
-            return parseReturnStatement();
+            return p.exit(mark, parseReturnStatement());
         }
 
         if (p.match(TokenType.BREAK)) {
-            return parseBreakStatement();
+            return p.exit(mark, parseBreakStatement());
         }
 
         if (p.match(TokenType.CONTINUE)) {
-            return parseContinueStatement();
+            return p.exit(mark, parseContinueStatement());
         }
 
         if (p.match(TokenType.DO)) {
-            return parseDoStatement();
+            return p.exit(mark, parseDoStatement());
         }
 
         if (p.match(TokenType.IF)) {
-            return parseIfStatement();
+            return p.exit(mark, parseIfStatement());
         }
 
         if (p.match(TokenType.WHILE)) {
-            return parseWhileStatement();
+            return p.exit(mark, parseWhileStatement());
         }
 
         if (p.match(TokenType.REPEAT)) {
-            return parseRepeatStatement();
+            return p.exit(mark, parseRepeatStatement());
         }
 
         if (p.match(TokenType.FOR)) {
-            return parseForStatement();
+            return p.exit(mark, parseForStatement());
         }
 
         // for now: everything else starts with an expression
         // (assignment or function call)
-        return parsePrefixStatement();
+        return p.exit(mark, parsePrefixStatement());
     }
 
     private Statement parseLocalStatement() {
+        int mark = p.enter("parseLocalStatement");
         Token localTok = p.previous();
 
         if (p.match(TokenType.FUNCTION)) {
-            return parseLocalFunctionStatement();
+            return p.exit(mark, parseLocalFunctionStatement());
         }
 
         List<String> names = new ArrayList<>();
@@ -93,11 +95,8 @@ public final class StatementParser {
         }
 
         var localStatement = new LocalStatement(identifiers, values, span, List.of(), List.of());
-        for (var idExpr : identifiers) {
-            idExpr.setParent(localStatement);
-        }
 
-        return localStatement;
+        return p.exit(mark, localStatement);
     }
 
     // =======================================================
@@ -105,6 +104,7 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parseLocalFunctionStatement() {
+        int mark = p.enter("parseLocalFunctionStatement");
         Token localTok = p.previous();
         Token nameTok = p.consume(TokenType.IDENTIFIER, "expected function name after 'local function'");
         String name = nameTok.lexeme();
@@ -121,7 +121,7 @@ public final class StatementParser {
 
         p.consume(TokenType.RPAREN, "expected ')' after parameter list");
 
-        Block body = p.parseChunk().getBlock();
+        Block body = p.parseBlock();
 
         Token endTok = p.consume(TokenType.END, "expected 'end' after function body");
         Span span = p.combine(localTok, endTok);
@@ -130,12 +130,7 @@ public final class StatementParser {
         var chunk = new Chunk(body, span, List.of(), List.of());
         var localFuncStmt = new LocalFunctionStatement(nameIdentifier, parameters, chunk, span, List.of(), List.of());
 
-        nameIdentifier.setParent(localFuncStmt);
-        for (var paramExpr : parameters) {
-            paramExpr.setParent(localFuncStmt);
-        }
-
-        return localFuncStmt;
+        return p.exit(mark, localFuncStmt);
     }
 
     // =======================================================
@@ -143,6 +138,7 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parseFunctionStatement() {
+        int mark = p.enter("parseFunctionStatement");
         Token funcTok = p.previous();
 
         Expression nameExpr = new IdentifierExpression(
@@ -180,7 +176,7 @@ public final class StatementParser {
 
         p.consume(TokenType.RPAREN, "expected ')' after parameter list");
 
-        Block body = p.parseChunk().getBlock();
+        Block body = p.parseBlock();
 
         Token endTok = p.consume(TokenType.END, "expected 'end' after function body");
         Span span = p.combine(funcTok, endTok);
@@ -188,12 +184,8 @@ public final class StatementParser {
         var chunk = new Chunk(body, span, List.of(), List.of());
         var funcStmt = new FunctionStatement(nameExpr, parameters, chunk, span, List.of(), List.of());
 
-        nameExpr.setParent(funcStmt);
-        for (var paramExpr : parameters) {
-            paramExpr.setParent(funcStmt);
-        }
 
-        return funcStmt;
+        return p.exit(mark, funcStmt);
     }
 
     // =======================================================
@@ -201,6 +193,7 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parseReturnStatement() {
+        int mark = p.enter("parseReturnStatement");
         Token retTok = p.previous();
 
         List<Expression> values = List.of();
@@ -213,7 +206,7 @@ public final class StatementParser {
         Token last = p.previous();
         Span span = p.combine(retTok, last);
 
-        return new ReturnStatement(values, span, List.of(), List.of());
+        return p.exit(mark, new ReturnStatement(values, span, List.of(), List.of()));
     }
 
     // =======================================================
@@ -221,10 +214,11 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parseBreakStatement() {
+        int mark = p.enter("parseBreakStatement");
         Token breakTok = p.previous();
         Span span = breakTok.span();
 
-        return new BreakStatement(span, List.of(), List.of());
+        return p.exit(mark, new BreakStatement(span, List.of(), List.of()));
     }
 
     // =======================================================
@@ -232,10 +226,11 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parseContinueStatement() {
+        int mark = p.enter("parseContinueStatement");
         Token continueTok = p.previous();
         Span span = continueTok.span();
 
-        return new ContinueStatement(span, List.of(), List.of());
+        return p.exit(mark, new ContinueStatement(span, List.of(), List.of()));
     }
 
     // =======================================================
@@ -243,12 +238,13 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parseDoStatement() {
+        int mark = p.enter("parseDoStatement");
         Token doTok = p.previous();
-        Block body = p.parseChunk().getBlock();
+        Block body = p.parseBlock();
         Token endTok = p.consume(TokenType.END, "expected 'end' after do body");
         Span span = p.combine(doTok, endTok);
 
-        return new DoStatement(body, span, List.of(), List.of());
+        return p.exit(mark, new DoStatement(body, span, List.of(), List.of()));
     }
 
     // =======================================================
@@ -256,17 +252,18 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parseIfStatement() {
+        int mark = p.enter("parseIfStatement");
         Token ifTok = p.previous();
         Expression condition = p.expr.parseExpression();
         p.consume(TokenType.THEN, "expected 'then' after if condition");
-        Block body = p.parseChunk().getBlock();
+        Block body = p.parseBlock();
 
         List<ElseIfStatement> elseIfs = new ArrayList<>();
         while (p.match(TokenType.ELSEIF)) {
             Token elseifTok = p.previous();
             Expression elseifCondition = p.expr.parseExpression();
             p.consume(TokenType.THEN, "expected 'then' after elseif condition");
-            Block elseifBody = p.parseChunk().getBlock();
+            Block elseifBody = p.parseBlock();
             Span elseifSpan = p.combine(elseifTok, p.previous());
             ElseIfStatement elseIfStmt = new ElseIfStatement(elseifCondition, elseifBody, elseifSpan, List.of(), List.of());
             elseIfs.add(elseIfStmt);
@@ -275,7 +272,7 @@ public final class StatementParser {
         ElseStatement elseStmt = null;
         if (p.match(TokenType.ELSE)) {
             Token elseTok = p.previous();
-            Block elseBody = p.parseChunk().getBlock();
+            Block elseBody = p.parseBlock();
             Span elseSpan = p.combine(elseTok, p.previous());
             elseStmt = new ElseStatement(elseBody, elseSpan, List.of(), List.of());
         }
@@ -283,7 +280,7 @@ public final class StatementParser {
         Token endTok = p.consume(TokenType.END, "expected 'end' after if statement");
         Span span = p.combine(ifTok, endTok);
 
-        return new IfStatement(condition, body, elseIfs, elseStmt, span, List.of(), List.of());
+        return p.exit(mark, new IfStatement(condition, body, elseIfs, elseStmt, span, List.of(), List.of()));
     }
 
     // =======================================================
@@ -291,14 +288,15 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parseWhileStatement() {
+        int mark = p.enter("parseWhileStatement");
         Token whileTok = p.previous();
         Expression condition = p.expr.parseExpression();
         p.consume(TokenType.DO, "expected 'do' after while condition");
-        Block body = p.parseChunk().getBlock();
+        Block body = p.parseBlock();
         Token endTok = p.consume(TokenType.END, "expected 'end' after while body");
         Span span = p.combine(whileTok, endTok);
 
-        return new WhileStatement(condition, body, span, List.of(), List.of());
+        return p.exit(mark, new WhileStatement(condition, body, span, List.of(), List.of()));
     }
 
     // =======================================================
@@ -306,14 +304,15 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parseRepeatStatement() {
+        int mark = p.enter("parseRepeatStatement");
         Token repeatTok = p.previous();
-        Block body = p.parseChunk().getBlock();
+        Block body = p.parseBlock();
         p.consume(TokenType.UNTIL, "expected 'until' after repeat body");
         Expression condition = p.expr.parseExpression();
         Token lastTok = p.previous();
         Span span = p.combine(repeatTok, lastTok);
 
-        return new RepeatStatement(condition, body, span, List.of(), List.of());
+        return p.exit(mark, new RepeatStatement(condition, body, span, List.of(), List.of()));
     }
 
     // =======================================================
@@ -321,15 +320,16 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parseForStatement() {
+        int mark = p.enter("parseForStatement");
         // Determine if it's a numeric for or generic for
         var currentToken = p.peek();
-        var nextToken = p.tokens.get(p.current+1);
+        var nextToken = p.peekNext();
 
         if (nextToken != null && nextToken.type() == TokenType.ASSIGN) {
             // Numeric for
-            return parseNumericForStatement();
+            return p.exit(mark, parseNumericForStatement());
         } else {
-            return parseGenericForStatement();
+            return p.exit(mark, parseGenericForStatement());
         }
     }
 
@@ -338,6 +338,7 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parseNumericForStatement() {
+        int mark = p.enter("parseNumericForStatement");
         Token forTok = p.previous();
         var varName = p.consume(TokenType.IDENTIFIER, "expected identifier after 'for'").lexeme();
         p.consume(TokenType.ASSIGN, "expected '=' after for variable");
@@ -349,14 +350,13 @@ public final class StatementParser {
             step = p.expr.parseExpression();
         }
         p.consume(TokenType.DO, "expected 'do' after for clauses");
-        Block body = p.parseChunk().getBlock();
+        Block body = p.parseBlock();
 
         Token endTok = p.consume(TokenType.END, "expected 'end' after for body");
         Span span = p.combine(forTok, endTok);
         var varNameIdentifier = new IdentifierExpression(varName, p.combine(forTok, forTok), List.of(), List.of());
         var forNumericStat = new ForNumericStatement(varNameIdentifier, start, end, step, body,  span, List.of(), List.of());
-        varNameIdentifier.setParent(forNumericStat);
-        return forNumericStat;
+        return p.exit(mark, forNumericStat);
     }
 
     // =======================================================
@@ -364,6 +364,7 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parseGenericForStatement() {
+        int mark = p.enter("parseGenericForStatement");
         var forTok = p.previous();
         List<IdentifierExpression> varNames = new ArrayList<>();
         var firstVarName = p.consume(TokenType.IDENTIFIER, "expected identifier after 'for'");
@@ -376,17 +377,13 @@ public final class StatementParser {
         p.consume(TokenType.IN, "expected 'in' after for variable list");
         Expression iterator = p.expr.parseExpression();
         p.consume(TokenType.DO, "expected 'do' after for clauses");
-        Block body = p.parseChunk().getBlock();
+        Block body = p.parseBlock();
         Token endTok = p.consume(TokenType.END, "expected 'end' after for body");
         Span span = p.combine(forTok, endTok);
 
         var forGenericStat = new ForGenericStatement(varNames, iterator, body, span, List.of(), List.of());
 
-        for (var nameExpr : varNames) {
-            nameExpr.setParent(forGenericStat);
-        }
-
-        return forGenericStat;
+        return p.exit(mark, forGenericStat);
 
     }
 
@@ -397,6 +394,7 @@ public final class StatementParser {
     // =======================================================
 
     private Statement parsePrefixStatement() {
+        int mark = p.enter("parsePrefixStatement");
         List<Expression> vars = new ArrayList<>();
         vars.add(p.expr.parsePrefixExpression());
 
@@ -408,13 +406,13 @@ public final class StatementParser {
             List<Expression> values = p.expr.parseExpressionList();
 
             Span span = p.combine(vars.get(0), values.get(values.size() - 1));
-            return new AssignmentStatement(vars, values, span, List.of(), List.of());
+            return p.exit(mark, new AssignmentStatement(vars, values, span, List.of(), List.of()));
         }
 
         if (vars.size() == 1) {
             Expression first = vars.get(0);
             if (first instanceof FunctionCallExpression || first instanceof MethodCallExpression) {
-                return new ExpressionStatement(first, first.getSpan(), List.of(), List.of());
+                return p.exit(mark, new ExpressionStatement(first, first.getSpan(), List.of(), List.of()));
             }
         }
 
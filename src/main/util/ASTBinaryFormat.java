@@ -0,0 +1,66 @@
+package main.util;
+
+import main.ast.NodeKind;
+
+/**
+ * Layout shared by {@link ASTBinaryWriter} and {@link ASTBinaryReader}.
+ * <p>A file is {@code MAGIC, VERSION} followed by the root {@code Chunk} as a
+ * preorder node stream. Each node starts with a tag byte: {@code NodeKind.ordinal() + 1},
+ * {@link #TAG_TABLE_ACCESS} for table accesses (which share a kind with table fields),
+ * or {@link #TAG_NULL} for an absent optional child. {@link #HAS_COMMENTS} is or-ed
+ * into the tag when comment lists follow. Then come the span, the node's own data
+ * and its children. Integers are LEB128 varints, signed ones zigzag encoded, and
+ * span offsets and lines are deltas against the previously written span.
+ * Strings are interned on first use: index 0 introduces a new UTF-8 string, any
+ * other value {@code i} refers back to string {@code i - 1}.</p>
+ * <p>Bump {@link #VERSION} whenever this layout, {@code NodeKind} or {@code TokenType}
+ * order changes.</p>
+ */
+final class ASTBinaryFormat {
+
+    static final int MAGIC = 0x4C415354;    // "LAST"
+    static final short VERSION = 1;
+
+    static final int TAG_NULL = 0;
+    static final int TAG_TABLE_ACCESS = 0x7F;
+    static final int HAS_COMMENTS = 0x80;
+
+    // literal values
+    static final int VALUE_NULL = 0;
+    static final int VALUE_STRING = 1;
+    static final int VALUE_DECIMAL = 2;     // a String holding a plain non-negative decimal
+    static final int VALUE_LONG = 3;
+    static final int VALUE_INTEGER = 4;
+    static final int VALUE_DOUBLE = 5;
+    static final int VALUE_FALSE = 6;
+    static final int VALUE_TRUE = 7;
+
+    // literal tokens
+    static final int TOKEN_NONE = 0;        // the synthesized UNKNOWN token
+    static final int TOKEN_SAME_SPAN = 1;
+    static final int TOKEN_OWN_SPAN = 2;
+
+    static final int TABLE_ACCESS_DOT = 1;
+    static final int TABLE_ACCESS_BRACKET = 2;
+
+    private ASTBinaryFormat() {
+    }
+
+    static int tagOf(NodeKind kind) {
+        return kind.ordinal() + 1;
+    }
+
+    /**
+     * True for strings written as {@link #VALUE_DECIMAL}: digits only, no leading
+     * zero, small enough for a long, so they print back identically.
+     */
+    static boolean isPlainDecimal(String s) {
+        int n = s.length();
+        if (n == 0 || n > 18 || (n > 1 && s.charAt(0) == '0')) return false;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+}
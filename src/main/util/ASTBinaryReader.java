@@ -0,0 +1,359 @@
+package main.util;
+
+import main.ast.Chunk;
+import main.ast.Node;
+import main.ast.NodeKind;
+import main.ast.exp.*;
+import main.ast.stmt.*;
+import main.lexer.Token;
+import main.lexer.TokenType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static main.util.ASTBinaryFormat.*;
+
+/**
+ * Decodes the binary form written by {@link ASTBinaryWriter} back into a {@link Chunk}.
+ * <p>Nodes are built directly from the buffer in a single pass, with no lexing,
+ * token lists or lookahead, so loading a cached tree costs little more than
+ * allocating its nodes.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * Chunk chunk = ASTBinaryReader.read(Files.readAllBytes(cached));
+ * }</pre>
+ */
+public final class ASTBinaryReader {
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final Comment.CommentKind[] COMMENT_KINDS = Comment.CommentKind.values();
+
+    private final ByteBuffer in;
+    private final List<String> strings = new ArrayList<>();
+    private int lastOffset = 0;
+    private int lastLine = 0;
+    private Position lastFrom;
+    private Position lastTo;
+
+    private ASTBinaryReader(ByteBuffer in) {
+        this.in = in;
+    }
+
+    public static Chunk read(byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads one tree starting at the buffer's position, leaving the position just past it.
+     *
+     * @throws IllegalArgumentException if the header is missing or has another version
+     */
+    public static Chunk read(ByteBuffer in) {
+        if (in.remaining() < 6 || in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a binary AST");
+        }
+        short version = in.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary AST version " + version + ", expected " + VERSION);
+        }
+        Node root = new ASTBinaryReader(in).readTree();
+        if (!(root instanceof Chunk chunk)) {
+            throw new IllegalArgumentException("Binary AST root is not a chunk");
+        }
+        return chunk;
+    }
+
+    // What each kind reads after its header, in stream order: N a node (or null), L a
+    // list of nodes, V a varint. Indexed by tag; 0 is TAG_NULL.
+    private static final String[] PARTS = new String[KINDS.length + 1];
+
+    static {
+        for (NodeKind kind : KINDS) {
+            PARTS[tagOf(kind)] = switch (kind) {
+                case CHUNK, EXPRESSION_STATEMENT, DO_STATEMENT, ELSE_STATEMENT, PARENTHESIS_EXPRESSION -> "N";
+                case BLOCK, RETURN_STATEMENT, TABLE_CONSTRUCTOR -> "L";
+                case ASSIGNMENT_STATEMENT, LOCAL_STATEMENT -> "LL";
+                case WHILE_STATEMENT, REPEAT_STATEMENT, ELSEIF_STATEMENT, TABLE_FIELD, METHOD_DEFINITION -> "NN";
+                case IF_STATEMENT -> "NNLN";
+                case FOR_NUMERIC_STATEMENT -> "NNNNN";
+                case FOR_GENERIC_STATEMENT -> "LNN";
+                case LOCAL_FUNCTION_STATEMENT, FUNCTION_STATEMENT -> "NLN";
+                case BINARY -> "NVN";
+                case UNARY -> "VN";
+                case FUNCTION_CALL -> "NL";
+                case ANONYMOUS_FUNCTION -> "LN";
+                case METHOD_CALL -> "NNL";
+                case BREAK_STATEMENT, CONTINUE_STATEMENT, IDENTIFIER, LITERAL, VARARG -> "";
+            };
+        }
+    }
+
+    /**
+     * A node whose header is read and whose parts are being read.
+     */
+    private static final class Frame {
+        final int tag;
+        final Span span;
+        final List<Comment> lead;
+        final List<Comment> trail;
+        final int flags;            // table access style, 0 for other nodes
+        final String layout;
+        final Object[] parts;
+        int next;                   // index into layout of the part being read
+        Node[] list;                // elements of a list part, while it is read
+        int filled;
+
+        Frame(int tag, Span span, List<Comment> lead, List<Comment> trail, int flags, String layout) {
+            this.tag = tag;
+            this.span = span;
+            this.lead = lead;
+            this.trail = trail;
+            this.flags = flags;
+            this.layout = layout;
+            this.parts = new Object[layout.length()];
+        }
+
+        void add(Node node) {
+            if (list == null) {
+                parts[next++] = node;
+                return;
+            }
+            list[filled++] = node;
+            if (filled == list.length) {
+                parts[next++] = List.of(list);   // immutable, so the adopting constructor keeps it
+                list = null;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> T part(int index) {
+            return (T) parts[index];
+        }
+    }
+
+    // Reads nodes with an explicit stack of partly read ones, so nesting depth is
+    // limited by the heap rather than the thread's stack. A node is built as soon as
+    // its last part is read, bottom-up, in the same stream order the writer used.
+    private Node readTree() {
+        Frame root = begin();
+        if (root == null) return null;
+        Deque<Frame> open = new ArrayDeque<>();
+        open.push(root);
+        while (true) {
+            Frame f = open.peek();
+            if (needsNode(f)) {
+                Frame child = begin();
+                if (child == null) {
+                    f.add(null);
+                } else {
+                    open.push(child);
+                }
+                continue;
+            }
+            open.pop();
+            Node n = build(f);
+            if (open.isEmpty()) return n;
+            open.peek().add(n);
+        }
+    }
+
+    // Reads a node's header, or returns null for TAG_NULL.
+    private Frame begin() {
+        int tag = in.get() & 0xFF;
+        if (tag == TAG_NULL) return null;
+
+        Span span = readSpan();
+        List<Comment> lead = List.of();
+        List<Comment> trail = List.of();
+        if ((tag & HAS_COMMENTS) != 0) {
+            lead = readComments();
+            trail = readComments();
+            tag &= ~HAS_COMMENTS;
+        }
+        if (tag == TAG_TABLE_ACCESS) {
+            int flags = in.get();
+            return new Frame(tag, span, lead, trail, flags, "NN");
+        }
+        if (tag > KINDS.length) {
+            throw new IllegalArgumentException("Bad node tag " + tag + " at " + (in.position() - 1));
+        }
+        return new Frame(tag, span, lead, trail, 0, PARTS[tag]);
+    }
+
+    // Reads the varints and list sizes up to the next node part; false once all parts are in.
+    private boolean needsNode(Frame f) {
+        while (f.next < f.layout.length()) {
+            if (f.list != null) return true;
+            switch (f.layout.charAt(f.next)) {
+                case 'N' -> {
+                    return true;
+                }
+                case 'V' -> f.parts[f.next++] = readVarint();
+                default -> {
+                    int size = readVarint();
+                    if (size == 0) {
+                        f.parts[f.next++] = List.of();
+                    } else {
+                        f.list = new Node[size];
+                        f.filled = 0;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Builds a node from its parts; leaves read their payload here, right after the header.
+    private Node build(Frame f) {
+        Span span = f.span;
+        List<Comment> lead = f.lead;
+        List<Comment> trail = f.trail;
+        if (f.tag == TAG_TABLE_ACCESS) {
+            return new TableAccessExpression(f.part(0), f.part(1),
+                    (f.flags & TABLE_ACCESS_DOT) != 0, (f.flags & TABLE_ACCESS_BRACKET) != 0, span, lead, trail);
+        }
+        return switch (KINDS[f.tag - 1]) {
+            case CHUNK -> new Chunk(f.part(0), span, lead, trail);
+            case BLOCK -> new Block(f.part(0), span, lead, trail);
+            case ASSIGNMENT_STATEMENT -> new AssignmentStatement(f.part(0), f.part(1), span, lead, trail);
+            case LOCAL_STATEMENT -> new LocalStatement(f.part(0), f.part(1), span, lead, trail);
+            case RETURN_STATEMENT -> new ReturnStatement(f.part(0), span, lead, trail);
+            case BREAK_STATEMENT -> new BreakStatement(span, lead, trail);
+            case CONTINUE_STATEMENT -> new ContinueStatement(span, lead, trail);
+            case EXPRESSION_STATEMENT -> new ExpressionStatement(f.part(0), span, lead, trail);
+            case DO_STATEMENT -> new DoStatement(f.part(0), span, lead, trail);
+            case WHILE_STATEMENT -> new WhileStatement(f.part(0), f.part(1), span, lead, trail);
+            case REPEAT_STATEMENT -> new RepeatStatement(f.part(1), f.part(0), span, lead, trail);
+            case IF_STATEMENT -> new IfStatement(f.part(0), f.part(1), f.part(2), f.part(3), span, lead, trail);
+            case ELSEIF_STATEMENT -> new ElseIfStatement(f.part(0), f.part(1), span, lead, trail);
+            case ELSE_STATEMENT -> new ElseStatement(f.part(0), span, lead, trail);
+            case FOR_NUMERIC_STATEMENT -> new ForNumericStatement(f.part(0), f.part(1), f.part(2), f.part(3),
+                    f.part(4), span, lead, trail);
+            case FOR_GENERIC_STATEMENT -> new ForGenericStatement(f.part(0), f.part(1), f.part(2), span, lead, trail);
+            case LOCAL_FUNCTION_STATEMENT -> new LocalFunctionStatement(f.part(0), f.part(1), f.part(2), span, lead, trail);
+            case FUNCTION_STATEMENT -> new FunctionStatement(f.part(0), f.part(1), f.part(2), span, lead, trail);
+            case BINARY -> new BinaryExpression(f.part(0), TOKEN_TYPES[f.<Integer>part(1)], f.part(2), span, lead, trail);
+            case UNARY -> new UnaryExpression(TOKEN_TYPES[f.<Integer>part(0)], f.part(1), span, lead, trail);
+            case FUNCTION_CALL -> new FunctionCallExpression(f.part(0), f.part(1), span, lead, trail);
+            case TABLE_CONSTRUCTOR -> new TableConstructorExpression(f.part(0), span, lead, trail);
+            case TABLE_FIELD -> new TableFieldExpression(f.part(0), f.part(1), span, lead, trail);
+            case ANONYMOUS_FUNCTION -> new AnonymousFunctionExpression(f.part(0), f.part(1), span, lead, trail);
+            case PARENTHESIS_EXPRESSION -> new ParanthesisExpression(f.part(0), span, lead, trail);
+            case METHOD_CALL -> new MethodCallExpression(f.part(0), f.part(1), f.part(2), span, lead, trail);
+            case METHOD_DEFINITION -> new MethodDefinitionExpression(f.part(0), f.part(1), span, lead, trail);
+            case IDENTIFIER -> new IdentifierExpression(readString(), span, lead, trail);
+            case LITERAL -> readLiteral(span, lead, trail);
+            case VARARG -> new VarArgExpression(span, lead, trail);
+        };
+    }
+
+    private LiteralExpression readLiteral(Span span, List<Comment> lead, List<Comment> trail) {
+        TokenType type = TOKEN_TYPES[readVarint()];
+        Object value = readValue();
+        int tokenKind = in.get();
+        if (tokenKind == TOKEN_NONE) {
+            return new LiteralExpression(value, type, span, lead, trail);
+        }
+        TokenType tokenType = TOKEN_TYPES[readVarint()];
+        String lexeme = readString();
+        Span tokenSpan = tokenKind == TOKEN_SAME_SPAN ? span : readSpan();
+        return new LiteralExpression(value, new Token(tokenType, lexeme, tokenSpan), type, span, lead, trail);
+    }
+
+    private Object readValue() {
+        int kind = in.get();
+        return switch (kind) {
+            case VALUE_NULL -> null;
+            case VALUE_STRING -> readString();
+            case VALUE_DECIMAL -> Long.toString(readVarlong());
+            case VALUE_LONG -> unzigzag(readVarlong());
+            case VALUE_INTEGER -> (int) unzigzag(readVarlong());
+            case VALUE_DOUBLE -> in.getDouble();
+            case VALUE_FALSE -> Boolean.FALSE;
+            case VALUE_TRUE -> Boolean.TRUE;
+            default -> throw new IllegalArgumentException("Bad literal value tag " + kind);
+        };
+    }
+
+    private List<Comment> readComments() {
+        int size = readVarint();
+        if (size == 0) return List.of();
+        List<Comment> comments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Comment.CommentKind kind = COMMENT_KINDS[in.get()];
+            String text = readString();
+            comments.add(new Comment(kind, text, readSpan()));
+        }
+        return comments;
+    }
+
+    private Span readSpan() {
+        int start = lastOffset + (int) unzigzag(readVarlong());
+        int end = start + (int) unzigzag(readVarlong());
+        int line = lastLine + (int) unzigzag(readVarlong());
+        int column = readVarint();
+        int endLine = line + (int) unzigzag(readVarlong());
+        int endColumn = readVarint();
+        lastOffset = start;
+        lastLine = line;
+        Position from = position(line, column);
+        Position to = position(endLine, endColumn);
+        return new Span(start, end, from, to);
+    }
+
+    // Neighbouring spans often start or end at the same place; reuse those positions.
+    private Position position(int line, int column) {
+        Position p = lastFrom;
+        if (p != null && p.getLine() == line && p.getColumn() == column) return p;
+        p = lastTo;
+        if (p != null && p.getLine() == line && p.getColumn() == column) return p;
+        p = new Position(line, column);
+        lastTo = lastFrom;
+        lastFrom = p;
+        return p;
+    }
+
+    private String readString() {
+        int index = readVarint();
+        if (index != 0) {
+            return strings.get(index - 1);
+        }
+        int length = readVarint();
+        String s;
+        if (in.hasArray()) {
+            s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] utf8 = new byte[length];
+            in.get(utf8);
+            s = new String(utf8, StandardCharsets.UTF_8);
+        }
+        strings.add(s);
+        return s;
+    }
+
+    private int readVarint() {
+        return (int) readVarlong();
+    }
+
+    private long readVarlong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
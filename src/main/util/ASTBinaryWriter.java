@@ -0,0 +1,255 @@
+package main.util;
+
+import main.ast.Chunk;
+import main.ast.Node;
+import main.ast.exp.*;
+import main.ast.stmt.*;
+import main.lexer.Token;
+import main.lexer.TokenType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static main.util.ASTBinaryFormat.*;
+
+/**
+ * Encodes a {@link Chunk} into the compact binary form read back by {@link ASTBinaryReader}.
+ * <p>Nodes are streamed straight to the {@link DataOutput} in preorder, so nothing
+ * but the string table and a stack of pending nodes is held in memory. Spans,
+ * comments and literal tokens are kept, so decoding yields a tree equal to the parsed
+ * one in every observable field. Subtrees shared by hash-consing are written once per
+ * occurrence.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * byte[] bytes = ASTBinaryWriter.toByteArray(chunk);
+ * Chunk again = ASTBinaryReader.read(bytes);
+ * }</pre>
+ */
+public final class ASTBinaryWriter {
+
+    private final DataOutput out;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private int lastOffset = 0;
+    private int lastLine = 0;
+
+    private ASTBinaryWriter(DataOutput out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the header and the whole tree of {@code chunk} to {@code out}.
+     */
+    public static void write(Chunk chunk, DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        new ASTBinaryWriter(out).writeTree(chunk);
+    }
+
+    public static byte[] toByteArray(Chunk chunk) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try {
+            write(chunk, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);   // cannot happen for an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    // Stands for a missing node on the work stack, which cannot hold null.
+    private static final Object NO_NODE = new Object();
+
+    // Preorder with an explicit stack, so nesting depth is limited by the heap rather
+    // than the thread's stack. The stack holds nodes still to be written and the list
+    // sizes and operators that go between them.
+    private void writeTree(Node root) throws IOException {
+        Deque<Object> work = new ArrayDeque<>();
+        work.push(root);
+        while (!work.isEmpty()) {
+            Object item = work.pop();
+            if (item == NO_NODE) {
+                out.writeByte(TAG_NULL);
+            } else if (item instanceof Integer value) {
+                writeVarint(value);
+            } else {
+                writeNode((Node) item, work);
+            }
+        }
+    }
+
+    // Writes the node's own fields and schedules its parts.
+    private void writeNode(Node n, Deque<Object> work) throws IOException {
+        boolean comments = !n.getLeadingComments().isEmpty() || !n.getTrailingComments().isEmpty();
+        int tag = n instanceof TableAccessExpression ? TAG_TABLE_ACCESS : tagOf(n.getKind());
+        out.writeByte(comments ? tag | HAS_COMMENTS : tag);
+        writeSpan(n.getSpan());
+        if (comments) {
+            writeComments(n.getLeadingComments());
+            writeComments(n.getTrailingComments());
+        }
+
+        switch (n) {
+            case Chunk c -> then(work, c.getBlock());
+            case Block b -> then(work, b.getStatements());
+            case AssignmentStatement s -> then(work, s.getVariables(), s.getValues());
+            case LocalStatement s -> then(work, s.getVariables(), s.getValues());
+            case ReturnStatement s -> then(work, s.getValues());
+            case ExpressionStatement s -> then(work, s.getExpression());
+            case DoStatement s -> then(work, s.getBody());
+            case WhileStatement s -> then(work, s.getExpression(), s.getBody());
+            case RepeatStatement s -> then(work, s.getBody(), s.getExpression());
+            case IfStatement s -> then(work, s.getExpression(), s.getBody(), s.getElseIfs(), s.getElseStmt());
+            case ElseIfStatement s -> then(work, s.getExpression(), s.getBody());
+            case ElseStatement s -> then(work, s.getBody());
+            case ForNumericStatement s -> then(work, s.getVariable(), s.getStart(), s.getEnd(), s.getStep(), s.getBody());
+            case ForGenericStatement s -> then(work, s.getNames(), s.getExpression(), s.getBody());
+            case LocalFunctionStatement s -> then(work, s.getName(), s.getParameters(), s.getChunk());
+            case FunctionStatement s -> then(work, s.getName(), s.getParameters(), s.getChunk());
+            case BinaryExpression e -> then(work, e.getLeft(), e.getOp().ordinal(), e.getRight());
+            case UnaryExpression e -> then(work, e.getOp().ordinal(), e.getExpr());
+            case FunctionCallExpression e -> then(work, e.getTarget(), e.getArgs());
+            case TableConstructorExpression e -> then(work, e.getFields());
+            case TableFieldExpression e -> then(work, e.getKey(), e.getValue());
+            case TableAccessExpression e -> {
+                out.writeByte((e.isDotAccess() ? TABLE_ACCESS_DOT : 0) | (e.isBracketAccess() ? TABLE_ACCESS_BRACKET : 0));
+                then(work, e.getName(), e.getIndex());
+            }
+            case AnonymousFunctionExpression e -> then(work, e.getParameters(), e.getChunk());
+            case ParanthesisExpression e -> then(work, e.getInnerExpr());
+            case MethodCallExpression e -> then(work, e.getValue(), e.getMethodName(), e.getArguments());
+            case MethodDefinitionExpression e -> then(work, e.getValue(), e.getMethodName());
+            case IdentifierExpression e -> writeString(e.getName());
+            case LiteralExpression e -> writeLiteral(e);
+            case BreakStatement s -> { }
+            case ContinueStatement s -> { }
+            case VarArgExpression e -> { }
+            default -> throw new IllegalArgumentException("Cannot serialize node: " + n.getClass().getSimpleName());
+        }
+    }
+
+    // Schedules parts to be written in the order given: nodes (null allowed), lists
+    // (their size, then each element) and operator ordinals.
+    private static void then(Deque<Object> work, Object... parts) {
+        for (int i = parts.length - 1; i >= 0; i--) {
+            Object part = parts[i];
+            if (part instanceof List<?> list) {
+                for (int j = list.size() - 1; j >= 0; j--) {
+                    work.push(list.get(j));
+                }
+                work.push(list.size());
+            } else {
+                work.push(part != null ? part : NO_NODE);
+            }
+        }
+    }
+
+    private void writeLiteral(LiteralExpression e) throws IOException {
+        writeVarint(e.getType().ordinal());
+        writeValue(e.getValue());
+
+        Token token = e.getToken();
+        if (token == null) {
+            throw new IllegalArgumentException("Literal without token");
+        }
+        boolean synthesized = token.type() == TokenType.UNKNOWN
+                && "UNKNOWN".equals(token.lexeme()) && token.span() == e.getSpan();
+        if (synthesized) {
+            out.writeByte(TOKEN_NONE);
+            return;
+        }
+        boolean sameSpan = token.span() == e.getSpan();
+        out.writeByte(sameSpan ? TOKEN_SAME_SPAN : TOKEN_OWN_SPAN);
+        writeVarint(token.type().ordinal());
+        writeString(token.lexeme());
+        if (!sameSpan) {
+            writeSpan(token.span());
+        }
+    }
+
+    private void writeValue(Object value) throws IOException {
+        switch (value) {
+            case null -> out.writeByte(VALUE_NULL);
+            case String s when isPlainDecimal(s) -> {
+                out.writeByte(VALUE_DECIMAL);
+                writeVarlong(Long.parseLong(s));
+            }
+            case String s -> {
+                out.writeByte(VALUE_STRING);
+                writeString(s);
+            }
+            case Long l -> {
+                out.writeByte(VALUE_LONG);
+                writeVarlong(zigzag(l));
+            }
+            case Integer i -> {
+                out.writeByte(VALUE_INTEGER);
+                writeVarlong(zigzag(i));
+            }
+            case Double d -> {
+                out.writeByte(VALUE_DOUBLE);
+                out.writeDouble(d);
+            }
+            case Boolean b -> out.writeByte(b ? VALUE_TRUE : VALUE_FALSE);
+            default -> throw new IllegalArgumentException("Cannot serialize literal value of type " + value.getClass().getName());
+        }
+    }
+
+    private void writeComments(List<Comment> comments) throws IOException {
+        writeVarint(comments.size());
+        for (Comment c : comments) {
+            out.writeByte(c.getKind().ordinal());
+            writeString(c.getText());
+            writeSpan(c.getSpan());
+        }
+    }
+
+    private void writeSpan(Span span) throws IOException {
+        int start = span.getStartOffset();
+        int line = span.getStart().getLine();
+        writeVarlong(zigzag(start - lastOffset));
+        writeVarlong(zigzag(span.getEndOffset() - start));
+        writeVarlong(zigzag(line - lastLine));
+        writeVarint(span.getStart().getColumn());
+        writeVarlong(zigzag(span.getEnd().getLine() - line));
+        writeVarint(span.getEnd().getColumn());
+        lastOffset = start;
+        lastLine = line;
+    }
+
+    private void writeString(String s) throws IOException {
+        Integer index = strings.get(s);
+        if (index != null) {
+            writeVarint(index + 1);
+            return;
+        }
+        strings.put(s, strings.size());
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(0);
+        writeVarint(utf8.length);
+        out.write(utf8);
+    }
+
+    private void writeVarint(int value) throws IOException {
+        writeVarlong(value & 0xFFFFFFFFL);
+    }
+
+    private void writeVarlong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -4,7 +4,10 @@ import main.ast.*;
 import main.ast.stmt.*;
 import main.ast.exp.*;
 import main.ast.stmt.FunctionStatement;
+import main.diagnostics.GenerateEvent;
+import main.diagnostics.Instrumentation;
 import main.visit.NodeVisitor;
+import main.visit.Traversal;
 
 import java.util.List;
 
@@ -13,6 +16,8 @@ import java.util.List;
  * a human-readable, tree-like string representation of the Abstract Syntax Tree.
  * <p>Visualizes nesting levels, making it easier to debug parser precedence and
  * statement scoping.</p>
+ * <p>Children are scheduled on a {@link Traversal} rather than visited recursively,
+ * so the depth of the tree is not limited by the call stack.</p>
  * * <h3>Usage Example:</h3>
  * <pre>{@code
  * String tree = ASTPrettyPrinter.generate(root);
@@ -20,9 +25,16 @@ import java.util.List;
  * }</pre>
 
  */
-public final class ASTPrettyPrinter implements NodeVisitor<Void> {
+public final class ASTPrettyPrinter implements NodeVisitor<Void>, Traversal.Script {
+
+    // Steps scheduled on the traversal; see step()
+    private static final int PRINT = 0;
+    private static final int PRINTLN = 1;
+    private static final int INDENT = 2;
+    private static final int DEDENT = 3;
 
     private final StringBuilder out = new StringBuilder();
+    private final Traversal walk = new Traversal();
     private int indent = 0;
 
     /**
@@ -34,79 +46,111 @@ public final class ASTPrettyPrinter implements NodeVisitor<Void> {
      * @return A {@code String} containing the visual representation of the tree structure.
      */
     public static String generate(Node root) {
+        GenerateEvent event = new GenerateEvent();
+        event.begin();
+        long start = Instrumentation.start();
+
         ASTPrettyPrinter pp = new ASTPrettyPrinter();
-        root.accept(pp);
-        return pp.out.toString();
+        pp.walk.run(root, pp);
+        String text = pp.out.toString();
+
+        Instrumentation.generated(event, start, ASTPrettyPrinter.class, root, text.length());
+        return text;
     }
 
-    private void print(String text) {
-        for (int i = 0; i < indent; i++) {
-            out.append("|  "); // 2 spaces per level
+    @Override
+    public void enter(Node node) {
+        node.accept(this);
+    }
+
+    @Override
+    public void step(int op, Object arg) {
+        switch (op) {
+            case PRINT -> {
+                for (int i = 0; i < indent; i++) {
+                    out.append("|  "); // 2 spaces per level
+                }
+                out.append((String) arg);
+            }
+            case PRINTLN -> {
+                if (indent > 0) {
+                    for (int i = 0; i < indent - 1; i++) {
+                        out.append("│ ");
+                    }
+                    out.append("├──");
+                }
+                out.append((String) arg).append('\n');
+            }
+            case INDENT -> indent++;
+            case DEDENT -> indent--;
+            default -> throw new IllegalStateException("Unknown step " + op);
         }
-        out.append(text);
+    }
+
+    // The helpers below schedule; nothing is printed until the traversal gets there.
+
+    private void visit(Node node) {
+        walk.visit(node);
+    }
+
+    private void print(String text) {
+        walk.step(PRINT, text);
     }
 
     // New helper to handle the tree-style prefixing
     private void println(String text) {
-        if (indent > 0) {
-            for (int i = 0; i < indent - 1; i++) {
-                out.append("│ ");
-            }
-            out.append("├──");
-        }
-        out.append(text).append('\n');
+        walk.step(PRINTLN, text);
     }
 
-    private void withIndent(Runnable r) {
-        indent++;
-        try {
-            r.run();
-        } finally {
-            indent--;
-        }
+    private void indent() {
+        walk.step(INDENT);
+    }
+
+    private void dedent() {
+        walk.step(DEDENT);
     }
 
     @Override
     public Void visitChunk(Chunk n) {
         println("Chunk");
-        withIndent(() -> {
-            n.getBlock().accept(this);
-        });
+        indent();
+        visit(n.getBlock());
+        dedent();
         return null;
     }
 
     @Override
     public Void visitBlock(Block n) {
         println("Block");
-        withIndent(() -> {
-            for (Statement s : n.getStatements()) {
-                s.accept(this);
-            }
-        });
+        indent();
+        for (Statement s : n.getStatements()) {
+            visit(s);
+        }
+        dedent();
         return null;
     }
 
     @Override
     public Void visitAssignment(AssignmentStatement n) {
         println("AssignmentStatement");
-        withIndent(() -> {
-            List<Expression> vars = n.getVariables();
-            List<Expression> vals = n.getValues();
-
-            println("Left:");
-            withIndent(() -> {
-                for (Expression e : vars) {
-                    e.accept(this);
-                }
-            });
+        indent();
+        List<Expression> vars = n.getVariables();
+        List<Expression> vals = n.getValues();
+
+        println("Left:");
+        indent();
+        for (Expression e : vars) {
+            visit(e);
+        }
+        dedent();
 
-            println("Right:");
-            withIndent(() -> {
-                for (Expression e : vals) {
-                    e.accept(this);
-                }
-            });
-        });
+        println("Right:");
+        indent();
+        for (Expression e : vals) {
+            visit(e);
+        }
+        dedent();
+        dedent();
         return null;
     }
 
@@ -115,29 +159,29 @@ public final class ASTPrettyPrinter implements NodeVisitor<Void> {
         println("LocalStatement");
         print("Names: ");
         for (var names : n.getVariables()) {
-           names.accept(this);
+           visit(names);
         }
-        withIndent(() -> {
-            if (!n.getValues().isEmpty()) {
-                println("Values:");
-                withIndent(() -> {
-                    for (Expression e : n.getValues()) {
-                        e.accept(this);
-                    }
-                });
+        indent();
+        if (!n.getValues().isEmpty()) {
+            println("Values:");
+            indent();
+            for (Expression e : n.getValues()) {
+                visit(e);
             }
-        });
+            dedent();
+        }
+        dedent();
         return null;
     }
 
     @Override
     public Void visitReturn(ReturnStatement n) {
         println("ReturnStatement");
-        withIndent(() -> {
-            for (Expression e : n.getValues()) {
-                e.accept(this);
-            }
-        });
+        indent();
+        for (Expression e : n.getValues()) {
+            visit(e);
+        }
+        dedent();
         return null;
     }
 
@@ -156,56 +200,64 @@ public final class ASTPrettyPrinter implements NodeVisitor<Void> {
     @Override
     public Void visitExpressionStatement(ExpressionStatement n) {
         println("ExpressionStatement");
-        withIndent(() -> n.getExpression().accept(this));
+        indent();
+        visit(n.getExpression());
+        dedent();
         return null;
     }
 
     @Override
     public Void visitDo(DoStatement n) {
         println("DoStatement");
-        withIndent(() -> {
-            n.getBody().accept(this);
-        });
+        indent();
+        visit(n.getBody());
+        dedent();
         return null;
     }
 
     @Override
     public Void visitIf(IfStatement n) {
         println("IfStatement");
-        withIndent(() -> {
-            println("Condition:");
-            withIndent(() -> n.getExpression().accept(this));
-            println("Body:");
-            withIndent(() -> {
-                n.getBody().accept(this);
-                if (!n.getElseIfs().isEmpty()) {
-                    println("ElseIfs:");
-                    withIndent(() -> {
-                        for (ElseIfStatement elseif : n.getElseIfs()) {
-                            elseif.accept(this);
-                        }
-                    });
-                }
-                if (n.getElseStmt() != null) {
-                    println("Else:");
-                    withIndent(() -> n.getElseStmt().accept(this));
-                }
-            });
-        });
+        indent();
+        println("Condition:");
+        indent();
+        visit(n.getExpression());
+        dedent();
+        println("Body:");
+        indent();
+        visit(n.getBody());
+        if (!n.getElseIfs().isEmpty()) {
+            println("ElseIfs:");
+            indent();
+            for (ElseIfStatement elseif : n.getElseIfs()) {
+                visit(elseif);
+            }
+            dedent();
+        }
+        if (n.getElseStmt() != null) {
+            println("Else:");
+            indent();
+            visit(n.getElseStmt());
+            dedent();
+        }
+        dedent();
+        dedent();
         return null;
     }
 
     @Override
     public Void visitElseIf(ElseIfStatement n) {
         println("ElseIfStatement");
-        withIndent(() -> {
-            println("Condition:");
-            withIndent(() -> n.getExpression().accept(this));
-            println("Body:");
-            withIndent(() -> {
-                n.getBody().accept(this);
-            });
-        });
+        indent();
+        println("Condition:");
+        indent();
+        visit(n.getExpression());
+        dedent();
+        println("Body:");
+        indent();
+        visit(n.getBody());
+        dedent();
+        dedent();
         return null;
     }
 
@@ -213,63 +265,73 @@ public final class ASTPrettyPrinter implements NodeVisitor<Void> {
     public Void visitElse(ElseStatement n) {
         println("ElseStatement");
         println("Body:");
-        withIndent(() -> {
-            n.getBody().accept(this);
-        });
+        indent();
+        visit(n.getBody());
+        dedent();
         return null;
     }
 
     @Override
     public Void visitWhile(WhileStatement n) {
         println("WhileStatement");
-        withIndent(() -> {
-            println("Condition:");
-            withIndent(() -> n.getExpression().accept(this));
-            println("Body:");
-            withIndent(() -> {
-                n.getBody().accept(this);
-            });
-        });
+        indent();
+        println("Condition:");
+        indent();
+        visit(n.getExpression());
+        dedent();
+        println("Body:");
+        indent();
+        visit(n.getBody());
+        dedent();
+        dedent();
         return null;
     }
 
     @Override
     public Void visitRepeat(RepeatStatement n) {
         println("RepeatStatement");
-        withIndent(() -> {
-            println("Body:");
-            withIndent(() -> {
-                n.getBody().accept(this);
-            });
-            println("Condition:");
-            withIndent(() -> n.getExpression().accept(this));
-        });
+        indent();
+        println("Body:");
+        indent();
+        visit(n.getBody());
+        dedent();
+        println("Condition:");
+        indent();
+        visit(n.getExpression());
+        dedent();
+        dedent();
         return null;
     }
 
     @Override
     public Void visitForNumeric(ForNumericStatement n) {
         println("ForNumericStatement");
-        n.getVariable().accept(this);
-        withIndent(() -> {
-            println("Start:");
-            withIndent(() -> n.getStart().accept(this));
-
-            println("End:");
-            withIndent(() -> n.getEnd().accept(this));
-
-            if (n.getStep() != null) {
-                println("Step:");
-                withIndent(() -> n.getStep().accept(this));
-            }
+        visit(n.getVariable());
+        indent();
+        println("Start:");
+        indent();
+        visit(n.getStart());
+        dedent();
+
+        println("End:");
+        indent();
+        visit(n.getEnd());
+        dedent();
+
+        if (n.getStep() != null) {
+            println("Step:");
+            indent();
+            visit(n.getStep());
+            dedent();
+        }
 
-            println("Body:");
-            withIndent(() -> {
-                for (Statement s : n.getBody().getStatements()) {
-                    s.accept(this);
-                }
-            });
-        });
+        println("Body:");
+        indent();
+        for (Statement s : n.getBody().getStatements()) {
+            visit(s);
+        }
+        dedent();
+        dedent();
         return null;
     }
 
@@ -278,49 +340,55 @@ public final class ASTPrettyPrinter implements NodeVisitor<Void> {
 
         println("ForGenericStatement");
         for (var names : n.getNames()) {
-            names.accept(this);
+            visit(names);
         }
-        withIndent(() -> {
-            println("Expression:");
-            withIndent(() -> n.getExpression().accept(this));
-
-            println("Body:");
-            withIndent(() -> {
-                n.getBody().accept(this);
-            });
-        });
+        indent();
+        println("Expression:");
+        indent();
+        visit(n.getExpression());
+        dedent();
+
+        println("Body:");
+        indent();
+        visit(n.getBody());
+        dedent();
+        dedent();
         return null;
     }
 
     @Override
     public Void visitLocalFunction(LocalFunctionStatement n) {
         print("LocalFunctionStatement");
-        n.getName().accept(this);
+        visit(n.getName());
         // parameters
         println("Parameters: ");
         for (var param : n.getParameters()) {
-            param.accept(this);
+            visit(param);
         }
-        withIndent(() -> {
-            println("Chunk:");
-            withIndent(() -> n.getChunk().accept(this));
-        });
+        indent();
+        println("Chunk:");
+        indent();
+        visit(n.getChunk());
+        dedent();
+        dedent();
         return null;
     }
 
     @Override
     public Void visitFunction(FunctionStatement n) {
         println("FunctionStatement");
-        n.getName().accept(this);
+        visit(n.getName());
         // parameters
         println("Parameters: ");
         for (var param : n.getParameters()) {
-            param.accept(this);
+            visit(param);
         }
-        withIndent(() -> {
-            println("Chunk:");
-            withIndent(() -> n.getChunk().accept(this));
-        });
+        indent();
+        println("Chunk:");
+        indent();
+        visit(n.getChunk());
+        dedent();
+        dedent();
         return null;
     }
 
@@ -344,39 +412,47 @@ public final class ASTPrettyPrinter implements NodeVisitor<Void> {
     @Override
     public Void visitBinary(BinaryExpression n) {
         println("BinaryExpression op: " + n.getOp());
-        withIndent(() -> {
-            println("Left:");
-            withIndent(() -> n.getLeft().accept(this));
-
-            println("Right:");
-            withIndent(() -> n.getRight().accept(this));
-        });
+        indent();
+        println("Left:");
+        indent();
+        visit(n.getLeft());
+        dedent();
+
+        println("Right:");
+        indent();
+        visit(n.getRight());
+        dedent();
+        dedent();
         return null;
     }
 
     @Override
     public Void visitUnary(UnaryExpression n) {
         println("UnaryExpression op: " + n.getOp());
-        withIndent(() -> n.getExpr().accept(this));
+        indent();
+        visit(n.getExpr());
+        dedent();
         return null;
     }
 
     @Override
     public Void visitFunctionCall(FunctionCallExpression n) {
         println("FunctionCall");
-        withIndent(() -> {
-            println("Target:");
-            withIndent(() -> n.getTarget().accept(this));
-
-            if (!n.getArgs().isEmpty()) {
-                println("Args:");
-                withIndent(() -> {
-                    for (Expression e : n.getArgs()) {
-                        e.accept(this);
-                    }
-                });
+        indent();
+        println("Target:");
+        indent();
+        visit(n.getTarget());
+        dedent();
+
+        if (!n.getArgs().isEmpty()) {
+            println("Args:");
+            indent();
+            for (Expression e : n.getArgs()) {
+                visit(e);
             }
-        });
+            dedent();
+        }
+        dedent();
         return null;
     }
 
@@ -389,37 +465,45 @@ public final class ASTPrettyPrinter implements NodeVisitor<Void> {
     @Override
     public Void visitTableConstructor(TableConstructorExpression n) {
         println("TableConstructorExpression");
-        withIndent(() -> {
-            for (TableFieldExpression field : n.getFields()) {
-                field.accept(this);
-            }
-        });
+        indent();
+        for (TableFieldExpression field : n.getFields()) {
+            visit(field);
+        }
+        dedent();
         return null;
     }
 
     @Override
     public Void visitTableField(TableFieldExpression n) {
         println("TableFieldExpression");
-        withIndent(() -> {
-            if (n.getKey() != null) {
-                println("Key:");
-                withIndent(() -> n.getKey().accept(this));
-            }
-            println("Value:");
-            withIndent(() -> n.getValue().accept(this));
-        });
+        indent();
+        if (n.getKey() != null) {
+            println("Key:");
+            indent();
+            visit(n.getKey());
+            dedent();
+        }
+        println("Value:");
+        indent();
+        visit(n.getValue());
+        dedent();
+        dedent();
         return null;
     }
 
     @Override
     public Void visitTableAccess(TableAccessExpression n) {
         println("TableAccessExpression");
-        withIndent(() -> {
-            println("Name:");
-            withIndent(() -> n.getName().accept(this));
-            println("Index:");
-            withIndent(() -> n.getIndex().accept(this));
-        });
+        indent();
+        println("Name:");
+        indent();
+        visit(n.getName());
+        dedent();
+        println("Index:");
+        indent();
+        visit(n.getIndex());
+        dedent();
+        dedent();
         return null;
     }
 
@@ -428,47 +512,55 @@ public final class ASTPrettyPrinter implements NodeVisitor<Void> {
         println("AnonymousFunctionExpression");
         println("Parameters: ");
         for (var param : n.getParameters()) {
-            param.accept(this);
+            visit(param);
         }
-        withIndent(() -> {
-            println("Chunk:");
-            withIndent(() -> n.getChunk().accept(this));
-        });
+        indent();
+        println("Chunk:");
+        indent();
+        visit(n.getChunk());
+        dedent();
+        dedent();
         return null;
     }
 
     @Override
     public Void visitParanthesis(ParanthesisExpression n) {
         println("ParanthesisExpression");
-        withIndent(() -> n.getInnerExpr().accept(this));
+        indent();
+        visit(n.getInnerExpr());
+        dedent();
         return null;
     }
 
     @Override
     public Void visitMethodCall(MethodCallExpression n) {
         println("MethodCallExpression method: " + n.getValue());
-        withIndent(() -> {
-            println("Target:");
-            withIndent(() -> n.getMethodName().accept(this));
-            if (!n.getArguments().isEmpty()) {
-                println("Args:");
-                withIndent(() -> {
-                    for (Expression e : n.getArguments()) {
-                        e.accept(this);
-                    }
-                });
+        indent();
+        println("Target:");
+        indent();
+        visit(n.getMethodName());
+        dedent();
+        if (!n.getArguments().isEmpty()) {
+            println("Args:");
+            indent();
+            for (Expression e : n.getArguments()) {
+                visit(e);
             }
-        });
+            dedent();
+        }
+        dedent();
         return null;
     }
 
     @Override
     public Void visitMethodDefinition(MethodDefinitionExpression n) {
         println("MethodDefinitionExpression method: " + n.getMethodName());
-        withIndent(() -> {
-            println("Value:");
-            withIndent(() -> n.getValue().accept(this));
-        });
+        indent();
+        println("Value:");
+        indent();
+        visit(n.getValue());
+        dedent();
+        dedent();
         return null;
     }
 
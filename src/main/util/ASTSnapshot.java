@@ -0,0 +1,434 @@
+package main.util;
+
+import main.ast.Chunk;
+import main.ast.Node;
+import main.ast.NodeKind;
+import main.ast.exp.*;
+import main.ast.stmt.*;
+import main.lexer.Token;
+import main.lexer.TokenType;
+import main.visit.NodeVisitor;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import static main.util.ASTBinaryFormat.*;
+
+/**
+ * Read-only view over a file written by {@link ASTSnapshotWriter}, navigated in place
+ * through a {@link MemorySegment} without building {@link Node} objects.
+ * <p>Nodes are addressed by int ids. Every node is a fixed-width record, and the
+ * children of a node have consecutive ids, so kind, span, parent and child lookups
+ * are a single read each. Opening a snapshot only maps the file; pages are loaded
+ * by the OS as they are touched. Children are the syntactic children in source
+ * order, so unlike {@link Node#getChildren()} they include the block of a chunk and
+ * the names of a local statement. Subtrees that are needed as real nodes, for a
+ * {@link NodeVisitor} for example, are built on demand by {@link #materialize(int)}.</p>
+ * <p>Materialized trees are not the parsed ones in every field. The snapshot stores no
+ * comments, and stores a literal's token type and text but not its span, so a built
+ * literal's token carries the literal's own span. {@link #accept(int, NodeVisitor)}
+ * builds the whole subtree before the visitor starts, since visitors reach children
+ * through the nodes themselves; visit small subtrees, or navigate by id.</p>
+ * <h3>Layout (little-endian):</h3>
+ * <pre>
+ * header   magic, version, nodeCount, rootCount, stringCount, 0,
+ *          rootsOffset, stringOffsetsOffset, stringDataOffset   (padded to 64 bytes)
+ * nodes    nodeCount records of 52 bytes: tag, flags, op, tokenType, 0, parent,
+ *          firstChild, childCount, start/end offset, start/end line and column, name, aux
+ * roots    rootCount pairs of (node, name string)
+ * strings  stringCount + 1 longs (8-byte aligned) of offsets into the UTF-8 string data
+ * </pre>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * try (ASTSnapshot snapshot = ASTSnapshot.open(Path.of("corpus.snap"))) {
+ *     snapshot.forEachOfKind(snapshot.root(0), NodeKind.FUNCTION_CALL, call ->
+ *             System.out.println(snapshot.span(call).getStart().getLine()));
+ * }
+ * }</pre>
+ */
+public final class ASTSnapshot implements AutoCloseable {
+
+    static final int SNAPSHOT_MAGIC = 0x4C534E50;   // "LSNP"
+    static final int SNAPSHOT_VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 52;
+    static final int ROOT_SIZE = 8;
+
+    static final int LITERAL_HAS_TOKEN = 1;
+    static final int LITERAL_VALUE_SHIFT = 1;
+
+    // record field offsets
+    private static final int TAG = 0;
+    private static final int FLAGS = 1;
+    private static final int OP = 2;
+    private static final int TOKEN_TYPE = 4;
+    private static final int PARENT = 8;
+    private static final int FIRST_CHILD = 12;
+    private static final int CHILD_COUNT = 16;
+    private static final int START_OFFSET = 20;
+    private static final int END_OFFSET = 24;
+    private static final int START_LINE = 28;
+    private static final int START_COLUMN = 32;
+    private static final int END_LINE = 36;
+    private static final int END_COLUMN = 40;
+    private static final int NAME = 44;
+    private static final int AUX = 48;
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final Arena arena;          // null when the segment is owned by the caller
+    private final MemorySegment segment;
+    private final int nodeCount;
+    private final int rootCount;
+    private final int stringCount;
+    private final long rootsOffset;
+    private final long stringOffsetsOffset;
+    private final long stringDataOffset;
+    private final String[] decoded;     // strings decoded so far; racing decodes yield equal strings
+
+    private ASTSnapshot(Arena arena, MemorySegment segment) {
+        this.arena = arena;
+        this.segment = segment;
+        if (segment.byteSize() < HEADER_SIZE || segment.get(INT, 0) != SNAPSHOT_MAGIC) {
+            throw new IllegalArgumentException("Not an AST snapshot");
+        }
+        int version = segment.get(INT, 4);
+        if (version != SNAPSHOT_VERSION) {
+            throw new IllegalArgumentException("Unsupported AST snapshot version " + version + ", expected " + SNAPSHOT_VERSION);
+        }
+        this.nodeCount = segment.get(INT, 8);
+        this.rootCount = segment.get(INT, 12);
+        this.stringCount = segment.get(INT, 16);
+        this.rootsOffset = segment.get(LONG, 24);
+        this.stringOffsetsOffset = segment.get(LONG, 32);
+        this.stringDataOffset = segment.get(LONG, 40);
+        this.decoded = new String[stringCount];
+    }
+
+    /**
+     * Maps {@code file} read-only. The mapping is released by {@link #close()}.
+     */
+    public static ASTSnapshot open(Path file) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            return new ASTSnapshot(arena, segment);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a snapshot held in {@code segment}; the caller keeps ownership of its memory.
+     */
+    public static ASTSnapshot of(MemorySegment segment) {
+        return new ASTSnapshot(null, segment);
+    }
+
+    // ----------------------------------------------------------------------
+    // Roots
+    // ----------------------------------------------------------------------
+
+    public int rootCount() {
+        return rootCount;
+    }
+
+    /**
+     * Id of the {@code Chunk} node of root {@code index}.
+     */
+    public int root(int index) {
+        return segment.get(INT, rootsOffset + (long) checkRoot(index) * ROOT_SIZE);
+    }
+
+    public String rootName(int index) {
+        return string(segment.get(INT, rootsOffset + (long) checkRoot(index) * ROOT_SIZE + 4));
+    }
+
+    private int checkRoot(int index) {
+        if (index < 0 || index >= rootCount) throw new IndexOutOfBoundsException(index);
+        return index;
+    }
+
+    // ----------------------------------------------------------------------
+    // Nodes
+    // ----------------------------------------------------------------------
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public NodeKind kind(int node) {
+        int tag = tag(node);
+        return tag == TAG_TABLE_ACCESS ? NodeKind.TABLE_FIELD : KINDS[tag - 1];
+    }
+
+    /**
+     * Parent id, or -1 for a root chunk.
+     */
+    public int parent(int node) {
+        return intAt(node, PARENT);
+    }
+
+    public int childCount(int node) {
+        return intAt(node, CHILD_COUNT);
+    }
+
+    public int child(int node, int index) {
+        if (index < 0 || index >= childCount(node)) throw new IndexOutOfBoundsException(index);
+        return intAt(node, FIRST_CHILD) + index;
+    }
+
+    public int startOffset(int node) {
+        return intAt(node, START_OFFSET);
+    }
+
+    public int endOffset(int node) {
+        return intAt(node, END_OFFSET);
+    }
+
+    public Span span(int node) {
+        long at = record(node);
+        return new Span(segment.get(INT, at + START_OFFSET), segment.get(INT, at + END_OFFSET),
+                new Position(segment.get(INT, at + START_LINE), segment.get(INT, at + START_COLUMN)),
+                new Position(segment.get(INT, at + END_LINE), segment.get(INT, at + END_COLUMN)));
+    }
+
+    /**
+     * Name of an identifier or text of a literal's value; null for other nodes.
+     */
+    public String name(int node) {
+        int index = intAt(node, NAME);
+        return index < 0 ? null : string(index);
+    }
+
+    /**
+     * Calls {@code action} with every node of {@code kind} in the subtree of {@code node}
+     * (itself included), in document order. Nothing is allocated per node.
+     */
+    public void forEachOfKind(int node, NodeKind kind, IntConsumer action) {
+        int[] stack = new int[64];
+        int size = 0;
+        stack[size++] = node;
+        while (size > 0) {
+            int n = stack[--size];
+            if (kind(n) == kind) action.accept(n);
+            int first = intAt(n, FIRST_CHILD);
+            int count = intAt(n, CHILD_COUNT);
+            if (size + count > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + count));
+            }
+            for (int i = first + count - 1; i >= first; i--) {
+                stack[size++] = i;
+            }
+        }
+    }
+
+    private long record(int node) {
+        if (node < 0 || node >= nodeCount) throw new IndexOutOfBoundsException(node);
+        return HEADER_SIZE + (long) node * RECORD_SIZE;
+    }
+
+    private int intAt(int node, int field) {
+        return segment.get(INT, record(node) + field);
+    }
+
+    private int tag(int node) {
+        return segment.get(ValueLayout.JAVA_BYTE, record(node) + TAG) & 0xFF;
+    }
+
+    private String string(int index) {
+        String s = decoded[index];
+        if (s == null) {
+            long from = segment.get(LONG, stringOffsetsOffset + (long) index * Long.BYTES);
+            long to = segment.get(LONG, stringOffsetsOffset + (index + 1L) * Long.BYTES);
+            byte[] utf8 = new byte[(int) (to - from)];
+            MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, stringDataOffset + from, utf8, 0, utf8.length);
+            s = new String(utf8, StandardCharsets.UTF_8);
+            decoded[index] = s;
+        }
+        return s;
+    }
+
+    // ----------------------------------------------------------------------
+    // Materialization
+    // ----------------------------------------------------------------------
+
+    /**
+     * Visits node {@code node} with {@code visitor}, building that node's whole subtree first.
+     */
+    public <R> R accept(int node, NodeVisitor<R> visitor) {
+        return materialize(node).accept(visitor);
+    }
+
+    /**
+     * Builds the subtree rooted at {@code node} as regular AST nodes, all of it at once.
+     * The nodes carry no comments, and a literal's token has the literal's own span;
+     * see the class comment.
+     */
+    public Node materialize(int node) {
+        // Preorder ids with an explicit stack, then built in reverse, so every node's
+        // children are already built and sit on top of the value stack, first child on top.
+        int[] order = new int[64];
+        int size = 0;
+        int[] pending = new int[64];
+        int top = 0;
+        pending[top++] = node;
+        while (top > 0) {
+            int n = pending[--top];
+            if (size == order.length) order = Arrays.copyOf(order, size * 2);
+            order[size++] = n;
+            int first = intAt(n, FIRST_CHILD);
+            int count = intAt(n, CHILD_COUNT);
+            if (top + count > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, top + count));
+            }
+            for (int i = first + count - 1; i >= first; i--) {
+                pending[top++] = i;
+            }
+        }
+
+        Deque<Node> built = new ArrayDeque<>();
+        for (int i = size - 1; i >= 0; i--) {
+            int n = order[i];
+            int count = intAt(n, CHILD_COUNT);
+            Node[] children = new Node[count];
+            for (int c = 0; c < count; c++) {
+                children[c] = built.pop();
+            }
+            built.push(build(n, children));
+        }
+        return built.pop();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Node> T at(Node[] children, int index) {
+        return (T) children[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Node> List<T> range(Node[] children, int from, int count) {
+        if (count == 0) return List.of();
+        return (List<T>) List.of(Arrays.copyOfRange(children, from, from + count));
+    }
+
+    private Node build(int node, Node[] c) {
+        long at = record(node);
+        int tag = segment.get(ValueLayout.JAVA_BYTE, at + TAG) & 0xFF;
+        int count = c.length;
+        Span span = span(node);
+        List<Comment> none = List.of();
+
+        if (tag == TAG_TABLE_ACCESS) {
+            int flags = segment.get(ValueLayout.JAVA_BYTE, at + FLAGS);
+            Expression index = count > 1 ? at(c, 1) : null;
+            return new TableAccessExpression(at(c, 0), index,
+                    (flags & TABLE_ACCESS_DOT) != 0, (flags & TABLE_ACCESS_BRACKET) != 0, span, none, none);
+        }
+
+        return switch (KINDS[tag - 1]) {
+            case CHUNK -> new Chunk(at(c, 0), span, none, none);
+            case BLOCK -> new Block(range(c, 0, count), span, none, none);
+            case ASSIGNMENT_STATEMENT -> {
+                int vars = segment.get(INT, at + AUX);
+                yield new AssignmentStatement(range(c, 0, vars), range(c, vars, count - vars), span, none, none);
+            }
+            case LOCAL_STATEMENT -> {
+                int vars = segment.get(INT, at + AUX);
+                yield new LocalStatement(range(c, 0, vars), range(c, vars, count - vars), span, none, none);
+            }
+            case RETURN_STATEMENT -> new ReturnStatement(range(c, 0, count), span, none, none);
+            case BREAK_STATEMENT -> new BreakStatement(span, none, none);
+            case CONTINUE_STATEMENT -> new ContinueStatement(span, none, none);
+            case EXPRESSION_STATEMENT -> new ExpressionStatement(at(c, 0), span, none, none);
+            case DO_STATEMENT -> new DoStatement(at(c, 0), span, none, none);
+            case WHILE_STATEMENT -> new WhileStatement(at(c, 0), at(c, 1), span, none, none);
+            case REPEAT_STATEMENT -> new RepeatStatement(at(c, 1), at(c, 0), span, none, none);
+            case IF_STATEMENT -> {
+                boolean hasElse = count > 2 && c[count - 1] instanceof ElseStatement;
+                int elseIfs = count - 2 - (hasElse ? 1 : 0);
+                yield new IfStatement(at(c, 0), at(c, 1), range(c, 2, elseIfs),
+                        hasElse ? at(c, count - 1) : null, span, none, none);
+            }
+            case ELSEIF_STATEMENT -> new ElseIfStatement(at(c, 0), at(c, 1), span, none, none);
+            case ELSE_STATEMENT -> new ElseStatement(at(c, 0), span, none, none);
+            case FOR_NUMERIC_STATEMENT -> {
+                Expression step = count == 5 ? at(c, 3) : null;
+                yield new ForNumericStatement(at(c, 0), at(c, 1), at(c, 2), step,
+                        at(c, count - 1), span, none, none);
+            }
+            case FOR_GENERIC_STATEMENT -> new ForGenericStatement(range(c, 0, count - 2),
+                    at(c, count - 2), at(c, count - 1), span, none, none);
+            case LOCAL_FUNCTION_STATEMENT -> new LocalFunctionStatement(at(c, 0),
+                    range(c, 1, count - 2), at(c, count - 1), span, none, none);
+            case FUNCTION_STATEMENT -> new FunctionStatement(at(c, 0),
+                    range(c, 1, count - 2), at(c, count - 1), span, none, none);
+            case BINARY -> new BinaryExpression(at(c, 0), TOKEN_TYPES[segment.get(SHORT, at + OP)],
+                    at(c, 1), span, none, none);
+            case UNARY -> new UnaryExpression(TOKEN_TYPES[segment.get(SHORT, at + OP)], at(c, 0), span, none, none);
+            case FUNCTION_CALL -> new FunctionCallExpression(at(c, 0), range(c, 1, count - 1), span, none, none);
+            case TABLE_CONSTRUCTOR -> new TableConstructorExpression(range(c, 0, count), span, none, none);
+            case TABLE_FIELD -> {
+                Expression key = count == 2 ? at(c, 0) : null;
+                yield new TableFieldExpression(key, at(c, count - 1), span, none, none);
+            }
+            case ANONYMOUS_FUNCTION -> new AnonymousFunctionExpression(range(c, 0, count - 1),
+                    at(c, count - 1), span, none, none);
+            case PARENTHESIS_EXPRESSION -> new ParanthesisExpression(at(c, 0), span, none, none);
+            case METHOD_CALL -> new MethodCallExpression(at(c, 0), at(c, 1),
+                    range(c, 2, count - 2), span, none, none);
+            case METHOD_DEFINITION -> new MethodDefinitionExpression(at(c, 0), at(c, 1), span, none, none);
+            case IDENTIFIER -> new IdentifierExpression(name(node), span, none, none);
+            case LITERAL -> buildLiteral(node, at, span);
+            case VARARG -> new VarArgExpression(span, none, none);
+        };
+    }
+
+    private LiteralExpression buildLiteral(int node, long at, Span span) {
+        int flags = segment.get(ValueLayout.JAVA_BYTE, at + FLAGS);
+        TokenType type = TOKEN_TYPES[segment.get(SHORT, at + OP)];
+        String text = name(node);
+        Object value = switch (flags >>> LITERAL_VALUE_SHIFT) {
+            case VALUE_STRING -> text;
+            case VALUE_LONG -> Long.parseLong(text);
+            case VALUE_INTEGER -> Integer.parseInt(text);
+            case VALUE_DOUBLE -> Double.parseDouble(text);
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            default -> null;
+        };
+        if ((flags & LITERAL_HAS_TOKEN) == 0) {
+            return new LiteralExpression(value, type, span, List.of(), List.of());
+        }
+        Token token = new Token(TOKEN_TYPES[segment.get(SHORT, at + TOKEN_TYPE)],
+                string(segment.get(INT, at + AUX)), span);
+        return new LiteralExpression(value, token, type, span, List.of(), List.of());
+    }
+
+    /**
+     * Unmaps the file. Nodes materialized earlier stay valid.
+     */
+    @Override
+    public void close() {
+        if (arena != null) {
+            arena.close();
+        }
+    }
+}
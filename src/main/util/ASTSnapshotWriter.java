@@ -0,0 +1,343 @@
+package main.util;
+
+import main.ast.Chunk;
+import main.ast.Node;
+import main.ast.exp.*;
+import main.ast.stmt.*;
+import main.lexer.Token;
+import main.lexer.TokenType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static main.util.ASTBinaryFormat.*;
+import static main.util.ASTSnapshot.*;
+
+/**
+ * Writes parsed chunks into the flat, memory-mappable layout read by {@link ASTSnapshot}.
+ * <p>Node records are streamed to the file as each chunk is added; only the string
+ * pool and the root table are kept in memory until {@link #close()}. Comments and
+ * literal tokens with a span of their own are not stored.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * try (ASTSnapshotWriter writer = ASTSnapshotWriter.create(Path.of("corpus.snap"))) {
+ *     for (Path file : files) {
+ *         writer.add(file.toString(), new Parser(Files.readString(file)).parseChunk());
+ *     }
+ * }
+ * }</pre>
+ */
+public final class ASTSnapshotWriter implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> stringList = new ArrayList<>();
+    private final List<int[]> roots = new ArrayList<>();     // {node, name}
+    private int nodeCount = 0;
+    private boolean closed = false;
+
+    private ASTSnapshotWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public static ASTSnapshotWriter create(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        channel.position(HEADER_SIZE);
+        return new ASTSnapshotWriter(channel);
+    }
+
+    /**
+     * Appends {@code chunk} as a new root named {@code name}.
+     *
+     * @return the root's index in the snapshot
+     */
+    public int add(String name, Chunk chunk) throws IOException {
+        if (closed) throw new IllegalStateException("Snapshot writer is closed");
+        roots.add(new int[] { nodeCount, intern(name) });
+
+        // Breadth-first, so the children of every node get consecutive ids.
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        ArrayDeque<Integer> parents = new ArrayDeque<>();
+        List<Node> children = new ArrayList<>();
+        queue.add(chunk);
+        parents.add(-1);
+        int nextId = nodeCount + 1;
+        while (!queue.isEmpty()) {
+            Node n = queue.poll();
+            int parent = parents.poll();
+            int id = nodeCount++;
+
+            children.clear();
+            collectChildren(n, children);
+            writeRecord(n, parent, nextId, children.size());
+            for (Node child : children) {
+                queue.add(child);
+                parents.add(id);
+            }
+            nextId += children.size();
+        }
+        return roots.size() - 1;
+    }
+
+    // Source-order children, skipping absent optional ones; ASTSnapshot.materialize relies on this order.
+    private static void collectChildren(Node n, List<Node> out) {
+        switch (n) {
+            case Chunk c -> out.add(c.getBlock());
+            case Block b -> out.addAll(b.getStatements());
+            case AssignmentStatement s -> {
+                out.addAll(s.getVariables());
+                out.addAll(s.getValues());
+            }
+            case LocalStatement s -> {
+                out.addAll(s.getVariables());
+                out.addAll(s.getValues());
+            }
+            case ReturnStatement s -> out.addAll(s.getValues());
+            case ExpressionStatement s -> out.add(s.getExpression());
+            case DoStatement s -> out.add(s.getBody());
+            case WhileStatement s -> {
+                out.add(s.getExpression());
+                out.add(s.getBody());
+            }
+            case RepeatStatement s -> {
+                out.add(s.getBody());
+                out.add(s.getExpression());
+            }
+            case IfStatement s -> {
+                out.add(s.getExpression());
+                out.add(s.getBody());
+                out.addAll(s.getElseIfs());
+                addIfPresent(out, s.getElseStmt());
+            }
+            case ElseIfStatement s -> {
+                out.add(s.getExpression());
+                out.add(s.getBody());
+            }
+            case ElseStatement s -> out.add(s.getBody());
+            case ForNumericStatement s -> {
+                out.add(s.getVariable());
+                out.add(s.getStart());
+                out.add(s.getEnd());
+                addIfPresent(out, s.getStep());
+                out.add(s.getBody());
+            }
+            case ForGenericStatement s -> {
+                out.addAll(s.getNames());
+                out.add(s.getExpression());
+                out.add(s.getBody());
+            }
+            case LocalFunctionStatement s -> {
+                out.add(s.getName());
+                out.addAll(s.getParameters());
+                out.add(s.getChunk());
+            }
+            case FunctionStatement s -> {
+                out.add(s.getName());
+                out.addAll(s.getParameters());
+                out.add(s.getChunk());
+            }
+            case BinaryExpression e -> {
+                out.add(e.getLeft());
+                out.add(e.getRight());
+            }
+            case UnaryExpression e -> out.add(e.getExpr());
+            case FunctionCallExpression e -> {
+                out.add(e.getTarget());
+                out.addAll(e.getArgs());
+            }
+            case TableConstructorExpression e -> out.addAll(e.getFields());
+            case TableFieldExpression e -> {
+                addIfPresent(out, e.getKey());
+                out.add(e.getValue());
+            }
+            case TableAccessExpression e -> {
+                out.add(e.getName());
+                addIfPresent(out, e.getIndex());
+            }
+            case AnonymousFunctionExpression e -> {
+                out.addAll(e.getParameters());
+                out.add(e.getChunk());
+            }
+            case ParanthesisExpression e -> out.add(e.getInnerExpr());
+            case MethodCallExpression e -> {
+                out.add(e.getValue());
+                out.add(e.getMethodName());
+                out.addAll(e.getArguments());
+            }
+            case MethodDefinitionExpression e -> {
+                out.add(e.getValue());
+                out.add(e.getMethodName());
+            }
+            case IdentifierExpression e -> { }
+            case LiteralExpression e -> { }
+            case BreakStatement s -> { }
+            case ContinueStatement s -> { }
+            case VarArgExpression e -> { }
+            default -> throw new IllegalArgumentException("Cannot snapshot node: " + n.getClass().getSimpleName());
+        }
+    }
+
+    private static void addIfPresent(List<Node> out, Node n) {
+        if (n != null) out.add(n);
+    }
+
+    private void writeRecord(Node n, int parent, int firstChild, int childCount) throws IOException {
+        int flags = 0;
+        int op = 0;
+        int tokenType = 0;
+        int name = -1;
+        int aux = -1;
+        switch (n) {
+            case IdentifierExpression e -> name = intern(e.getName());
+            case BinaryExpression e -> op = e.getOp().ordinal();
+            case UnaryExpression e -> op = e.getOp().ordinal();
+            case TableAccessExpression e ->
+                    flags = (e.isDotAccess() ? TABLE_ACCESS_DOT : 0) | (e.isBracketAccess() ? TABLE_ACCESS_BRACKET : 0);
+            case AssignmentStatement s -> aux = s.getVariables().size();
+            case LocalStatement s -> aux = s.getVariables().size();
+            case LiteralExpression e -> {
+                op = e.getType().ordinal();
+                Object value = e.getValue();
+                int valueKind = switch (value) {
+                    case null -> VALUE_NULL;
+                    case String s -> VALUE_STRING;
+                    case Long l -> VALUE_LONG;
+                    case Integer i -> VALUE_INTEGER;
+                    case Double d -> VALUE_DOUBLE;
+                    case Boolean b -> b ? VALUE_TRUE : VALUE_FALSE;
+                    default -> throw new IllegalArgumentException("Cannot snapshot literal value of type " + value.getClass().getName());
+                };
+                if (value != null) name = intern(String.valueOf(value));
+                flags = valueKind << LITERAL_VALUE_SHIFT;
+
+                Token token = e.getToken();
+                boolean synthesized = token.type() == TokenType.UNKNOWN && "UNKNOWN".equals(token.lexeme());
+                if (!synthesized) {
+                    flags |= LITERAL_HAS_TOKEN;
+                    tokenType = token.type().ordinal();
+                    aux = intern(token.lexeme());
+                }
+            }
+            default -> { }
+        }
+
+        if (buffer.remaining() < RECORD_SIZE) flush();
+        Span span = n.getSpan();
+        int tag = n instanceof TableAccessExpression ? TAG_TABLE_ACCESS : tagOf(n.getKind());
+        buffer.put((byte) tag)
+                .put((byte) flags)
+                .putShort((short) op)
+                .putShort((short) tokenType)
+                .putShort((short) 0)
+                .putInt(parent)
+                .putInt(firstChild)
+                .putInt(childCount)
+                .putInt(span.getStartOffset())
+                .putInt(span.getEndOffset())
+                .putInt(span.getStart().getLine())
+                .putInt(span.getStart().getColumn())
+                .putInt(span.getEnd().getLine())
+                .putInt(span.getEnd().getColumn())
+                .putInt(name)
+                .putInt(aux);
+    }
+
+    private int intern(String s) {
+        Integer index = strings.get(s);
+        if (index == null) {
+            index = stringList.size();
+            strings.put(s, index);
+            stringList.add(s);
+        }
+        return index;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void putLong(long value) throws IOException {
+        if (buffer.remaining() < Long.BYTES) flush();
+        buffer.putLong(value);
+    }
+
+    private void putInt(int value) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) flush();
+        buffer.putInt(value);
+    }
+
+    /**
+     * Writes the root table, string pool and header, then closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            long rootsOffset = HEADER_SIZE + (long) nodeCount * RECORD_SIZE;
+            for (int[] root : roots) {
+                putInt(root[0]);
+                putInt(root[1]);
+            }
+
+            long rootsEnd = rootsOffset + (long) roots.size() * ROOT_SIZE;
+            long stringOffsetsOffset = (rootsEnd + 7) & ~7L;    // longs must be 8-byte aligned in the mapping
+            if (stringOffsetsOffset != rootsEnd) {
+                putInt(0);
+            }
+            List<byte[]> encoded = new ArrayList<>(stringList.size());
+            long position = 0;
+            for (String s : stringList) {
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                encoded.add(utf8);
+                putLong(position);
+                position += utf8.length;
+            }
+            putLong(position);
+
+            long stringDataOffset = stringOffsetsOffset + (stringList.size() + 1L) * Long.BYTES;
+            for (byte[] utf8 : encoded) {
+                int at = 0;
+                while (at < utf8.length) {
+                    if (!buffer.hasRemaining()) flush();
+                    int len = Math.min(buffer.remaining(), utf8.length - at);
+                    buffer.put(utf8, at, len);
+                    at += len;
+                }
+            }
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(SNAPSHOT_MAGIC)
+                    .putInt(SNAPSHOT_VERSION)
+                    .putInt(nodeCount)
+                    .putInt(roots.size())
+                    .putInt(stringList.size())
+                    .putInt(0)
+                    .putLong(rootsOffset)
+                    .putLong(stringOffsetsOffset)
+                    .putLong(stringDataOffset)
+                    .flip();
+            header.limit(HEADER_SIZE);
+            channel.write(header, 0);
+        } finally {
+            channel.close();
+        }
+    }
+}
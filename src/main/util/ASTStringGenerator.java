@@ -2,7 +2,10 @@ package main.util;
 
 import main.ast.Chunk;
 import main.ast.Node;
+import main.diagnostics.GenerateEvent;
+import main.diagnostics.Instrumentation;
 import main.visit.NodeVisitor;
+import main.visit.Traversal;
 import main.ast.exp.*;
 import main.ast.stmt.*;
 import main.lexer.TokenType;
@@ -15,6 +18,8 @@ import java.util.List;
  * <p>This class performs "un-parsing," effectively acting as a formatter. It handles
  * indentation levels using tabs and supports optional semicolon injection for
  * statement termination. Can be used as a beautifier for the given lua source.</p>
+ * <p>Visit methods do not recurse: they schedule text and child visits on a
+ * {@link Traversal}, so arbitrarily deep trees print without a stack overflow.</p>
  * <h3>Usage:</h3>
  * <pre>{@code
  * // Set addSemicolons to true for "return 1;" style output
@@ -22,9 +27,18 @@ import java.util.List;
  * System.out.println(luaCode);
  * }</pre>
  */
-public final class ASTStringGenerator implements NodeVisitor<Void> {
+public final class ASTStringGenerator implements NodeVisitor<Void>, Traversal.Script {
+
+    // Steps scheduled on the traversal; see step()
+    private static final int TEXT = 0;           // append as is
+    private static final int INDENTED = 1;       // indent, then append
+    private static final int LINE = 2;           // append and end the line
+    private static final int STATEMENT_END = 3;  // like LINE, with the optional semicolon
+    private static final int INDENT = 4;
+    private static final int DEDENT = 5;
 
     private final StringBuilder out = new StringBuilder();
+    private final Traversal walk = new Traversal();
     private int indent = 0;
     private static boolean addSemicolons = false;
 
@@ -35,38 +49,72 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
      * @return A {@code String} containing the generated Lua source code.
      */
     public static String generate(Node root, boolean addSemicolonsToEnd) {
+        GenerateEvent event = new GenerateEvent();
+        event.begin();
+        long start = Instrumentation.start();
+
         addSemicolons = addSemicolonsToEnd;
         ASTStringGenerator pp = new ASTStringGenerator();
-        root.accept(pp);
-        return pp.out.toString();
+        pp.walk.run(root, pp);
+        String text = pp.out.toString();
+
+        Instrumentation.generated(event, start, ASTStringGenerator.class, root, text.length());
+        return text;
+    }
+
+    @Override
+    public void enter(Node node) {
+        node.accept(this);
+    }
+
+    @Override
+    public void step(int op, Object arg) {
+        switch (op) {
+            case TEXT -> out.append((String) arg);
+            case INDENTED -> {
+                for (int i = 0; i < indent; i++) {
+                    out.append("\t");
+                }
+                out.append((String) arg);
+            }
+            case LINE -> out.append((String) arg).append("\n");
+            case STATEMENT_END -> {
+                out.append((String) arg);
+                if (addSemicolons) {
+                    out.append(";");
+                }
+                out.append("\n");
+            }
+            case INDENT -> indent++;
+            case DEDENT -> indent--;
+            default -> throw new IllegalStateException("Unknown step " + op);
+        }
+    }
+
+    // The helpers below schedule; nothing is written until the traversal gets there.
+
+    private void visit(Node node) {
+        walk.visit(node);
     }
 
     private void append(String text) {
-        out.append(text);
+        walk.step(TEXT, text);
     }
 
     private void appendWithIndent(String text) {
-        for (int i = 0; i < indent; i++) {
-            out.append("\t");
-        }
-        out.append(text);
+        walk.step(INDENTED, text);
     }
 
     private void appendln(String text, boolean semicolons) {
-        append(text);
-        if (addSemicolons && semicolons) {
-            out.append(";");
-        }
-        out.append("\n");
+        walk.step(semicolons ? STATEMENT_END : LINE, text);
     }
 
-    private void withIndent(Runnable r) {
-        indent++;
-        try {
-            r.run();
-        } finally {
-            indent--;
-        }
+    private void indent() {
+        walk.step(INDENT);
+    }
+
+    private void dedent() {
+        walk.step(DEDENT);
     }
 
     private String listToString(java.util.List<? extends Node> list) {
@@ -80,44 +128,39 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
         return sb.toString();
     }
 
+    private void visitSeparated(List<? extends Node> nodes) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (i > 0) {
+                append(", ");
+            }
+            visit(nodes.get(i));
+        }
+    }
+
     // ─────────────────────────────────────────────
     // Root
     // ─────────────────────────────────────────────
 
     @Override
     public Void visitChunk(Chunk n) {
-        n.getBlock().accept(this);
+        visit(n.getBlock());
         return null;
     }
 
     @Override
     public Void visitBlock(Block n) {
         for (Statement s : n.getStatements()) {
-            s.accept(this);
+            visit(s);
         }
         return null;
     }
 
     @Override
     public Void visitAssignment(AssignmentStatement n) {
-        var variables = n.getVariables();
         appendWithIndent("");
-        for (Expression v : variables) {
-            v.accept(this);
-            append(", ");
-        }
-        if (variables.size() >= 1) {
-            out.setLength(out.length() - 2);
-        }
+        visitSeparated(n.getVariables());
         append(" = ");
-        var values = n.getValues();
-        for (Expression v : values) {
-            v.accept(this);
-            append(", ");
-        }
-        if (values.size() >= 1) {
-            out.setLength(out.length() - 2);
-        }
+        visitSeparated(n.getValues());
         appendln("", true);
         return null;
     }
@@ -125,25 +168,11 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     @Override
     public Void visitLocal(LocalStatement n) {
         appendWithIndent("local " );
-        var variables = n.getVariables();
-        for (Expression v : variables) {
-            v.accept(this);
-            append(", ");
-        }
-        if (variables.size() >= 1) {
-            out.setLength(out.length() - 2);
-        }
+        visitSeparated(n.getVariables());
         if (!n.getValues().isEmpty()) {
             append(" = ");
         }
-        var values = n.getValues();
-        for (Expression v : values) {
-            v.accept(this);
-            append(", ");
-        }
-        if (values.size() >= 1) {
-            out.setLength(out.length() - 2);
-        }
+        visitSeparated(n.getValues());
         appendln("", true);
         return null;
     }
@@ -155,7 +184,7 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
         if (!values.isEmpty()) {
             append(" ");
             for (Expression v : values) {
-                v.accept(this);
+                visit(v);
             }
         }
         appendln("", true);
@@ -181,9 +210,9 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     @Override
     public Void visitDo(DoStatement n) {
         appendWithIndent("do\n");
-        withIndent(() -> {
-            n.getBody().accept(this);
-        });
+        indent();
+        visit(n.getBody());
+        dedent();
         appendWithIndent("end");
         appendln("", true);
         return null;
@@ -192,16 +221,16 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     @Override
     public Void visitIf(IfStatement n) {
         appendWithIndent("if ");
-        n.getExpression().accept(this);
+        visit(n.getExpression());
         append(" then\n");
-        withIndent(() -> {
-            n.getBody().accept(this);
-        });
+        indent();
+        visit(n.getBody());
+        dedent();
         for (ElseIfStatement elseif : n.getElseIfs()) {
-            elseif.accept(this);
+            visit(elseif);
         }
         if (n.getElseStmt() != null) {
-            n.getElseStmt().accept(this);
+            visit(n.getElseStmt());
         }
         appendWithIndent("end");
         appendln("", true);
@@ -211,31 +240,31 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     @Override
     public Void visitElseIf(ElseIfStatement n) {
         appendWithIndent("elseif ");
-        n.getExpression().accept(this);
+        visit(n.getExpression());
         appendln(" then", false);
-        withIndent(() -> {
-            n.getBody().accept(this);
-        });
+        indent();
+        visit(n.getBody());
+        dedent();
         return null;
     }
 
     @Override
     public Void visitElse(ElseStatement n) {
         appendWithIndent("else");
-        withIndent(() -> {
-            n.getBody().accept(this);
-        });
+        indent();
+        visit(n.getBody());
+        dedent();
         return null;
     }
 
     @Override
     public Void visitWhile(WhileStatement n) {
         appendWithIndent("while ");
-        n.getExpression().accept(this);
+        visit(n.getExpression());
         append(" do\n");
-        withIndent(() -> {
-            n.getBody().accept(this);
-        });
+        indent();
+        visit(n.getBody());
+        dedent();
         appendWithIndent("end");
         appendln("", true);
         return null;
@@ -245,11 +274,11 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     public Void visitRepeat(RepeatStatement n) {
         appendWithIndent("");
         appendln("repeat", false);
-        withIndent(() -> {
-            n.getBody().accept(this);
-        });
+        indent();
+        visit(n.getBody());
+        dedent();
         appendWithIndent("until ");
-        n.getExpression().accept(this);
+        visit(n.getExpression());
         appendln("", true);
         return null;
     }
@@ -257,21 +286,21 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     @Override
     public Void visitForNumeric(ForNumericStatement n) {
         appendWithIndent("for ");
-        n.getVariable().accept(this);
+        visit(n.getVariable());
         append(" = ");
-        n.getStart().accept(this);
+        visit(n.getStart());
         append(", ");
-        n.getEnd().accept(this);
+        visit(n.getEnd());
         if (n.getStep() != null) {
             append(", ");
-            n.getStep().accept(this);
+            visit(n.getStep());
         }
         appendln(" do", false);
-        withIndent(() -> {
-            for ( Statement s : n.getBody().getStatements()) {
-                s.accept(this);
-            }
-        });
+        indent();
+        for (Statement s : n.getBody().getStatements()) {
+            visit(s);
+        }
+        dedent();
         appendWithIndent("end");
         appendln("", true);
         return null;
@@ -280,22 +309,13 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     @Override
     public Void visitForGeneric(ForGenericStatement n) {
         appendWithIndent("for ");
-        List<IdentifierExpression> vars = n.getNames();
-        for (Expression var : vars) {
-            var.accept(this);
-            append(", ");
-        }
-        if (!vars.isEmpty()) {
-            out.setLength(out.length() - 2);
-        }
+        visitSeparated(n.getNames());
         append(" in ");
-        Expression iterator = n.getExpression();
-        iterator.accept(this);
-
+        visit(n.getExpression());
         appendln(" do", false);
-        withIndent(() -> {
-            n.getBody().accept(this);
-        });
+        indent();
+        visit(n.getBody());
+        dedent();
         appendWithIndent("end");
         appendln("", true);
         return null;
@@ -304,7 +324,7 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     @Override
     public Void visitExpressionStatement(ExpressionStatement n) {
         appendWithIndent("");
-        n.getExpression().accept(this);
+        visit(n.getExpression());
         appendln("", true);
         return null;
     }
@@ -312,20 +332,13 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     @Override
     public Void visitLocalFunction(LocalFunctionStatement n) {
         appendWithIndent("local function ");
-        n.getName().accept(this);
+        visit(n.getName());
         append("(");
-        List<Expression> params = n.getParameters();
-        for (Expression param : params) {
-            param.accept(this);
-            append(", ");
-        }
-        if (!params.isEmpty()) {
-            out.setLength(out.length() - 2);
-        }
+        visitSeparated(n.getParameters());
         appendln(")", false);
-        withIndent(() -> {
-            n.getChunk().accept(this);
-        });
+        indent();
+        visit(n.getChunk());
+        dedent();
         appendWithIndent("end");
         appendln("", true);
         return null;
@@ -334,20 +347,13 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     @Override
     public Void visitFunction(FunctionStatement n) {
         appendWithIndent("function ");
-        n.getName().accept(this);
+        visit(n.getName());
         append("(");
-        List<Expression> params = n.getParameters();
-        for (Expression param : params) {
-            param.accept(this);
-            append(", ");
-        }
-        if (!params.isEmpty()) {
-            out.setLength(out.length() - 2);
-        }
+        visitSeparated(n.getParameters());
         appendln(")", false);
-        withIndent(() -> {
-            n.getChunk().accept(this);
-        });
+        indent();
+        visit(n.getChunk());
+        dedent();
         appendWithIndent("end");
         appendln("", true);
         return null;
@@ -373,7 +379,7 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
 
     @Override
     public Void visitBinary(BinaryExpression n) {
-        n.getLeft().accept(this);
+        visit(n.getLeft());
 
         if (n.getOp().isKeyword()) {
             append(" " + n.getOp().getKeywordText() + " ");
@@ -381,7 +387,7 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
             append(" " + n.getOp().getSymbolText() + " ");
         }
 
-        n.getRight().accept(this);
+        visit(n.getRight());
 
         return null;
     }
@@ -393,13 +399,13 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
         } else {
             append(n.getOp().getSymbolText());
         }
-        n.getExpr().accept(this);
+        visit(n.getExpr());
         return null;
     }
 
     @Override
     public Void visitFunctionCall(FunctionCallExpression n) {
-        n.getTarget().accept(this);
+        visit(n.getTarget());
         append("(");
         List<Expression> args = n.getArgs();
         return appendArguments(args);
@@ -414,14 +420,7 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     @Override
     public Void visitTableConstructor(TableConstructorExpression n) {
         append("{ ");
-        List<TableFieldExpression> fields = n.getFields();
-        for (TableFieldExpression field : fields) {
-            field.accept(this);
-            append(", ");
-        }
-        if (!fields.isEmpty()) {
-            out.setLength(out.length() - 2);
-        }
+        visitSeparated(n.getFields());
         append(" }");
         return null;
     }
@@ -430,30 +429,28 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     public Void visitTableField(TableFieldExpression n) {
         if (n.getKey() instanceof LiteralExpression) {
             append("[");
-            n.getKey().accept(this);
+            visit(n.getKey());
             append("]");
             append(" = ");
         } else if ((n.getKey() instanceof IdentifierExpression)) {
-            n.getKey().accept(this);
+            visit(n.getKey());
             append(" = ");
-        } else {
-            append("");
         }
 
-        n.getValue().accept(this);
+        visit(n.getValue());
         return null;
     }
 
     @Override
     public Void visitTableAccess(TableAccessExpression n) {
         if (n.isDotAccess()) {
-            n.getName().accept(this);
+            visit(n.getName());
             append(".");
-            n.getIndex().accept(this);
+            visit(n.getIndex());
         } else {
-            n.getName().accept(this);
+            visit(n.getName());
             append("[");
-            n.getIndex().accept(this);
+            visit(n.getIndex());
             append("]");
         }
         return null;
@@ -462,18 +459,11 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     @Override
     public Void visitAnonymousFunction(AnonymousFunctionExpression n) {
         append("function(");
-        List<Expression> params = n.getParameters();
-        for (Expression param : params) {
-            param.accept(this);
-            append(", ");
-        }
-        if (!params.isEmpty()) {
-            out.setLength(out.length() - 2);
-        }
+        visitSeparated(n.getParameters());
         appendln(")", false);
-        withIndent(() -> {
-            n.getChunk().accept(this);
-        });
+        indent();
+        visit(n.getChunk());
+        dedent();
         appendWithIndent("end");
         return null;
     }
@@ -481,16 +471,16 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
     @Override
     public Void visitParanthesis(ParanthesisExpression paranthesisExpression) {
         append("(");
-        paranthesisExpression.getInnerExpr().accept(this);
+        visit(paranthesisExpression.getInnerExpr());
         append(")");
         return null;
     }
 
     @Override
     public Void visitMethodCall(MethodCallExpression methodCallExpression) {
-        methodCallExpression.getValue().accept(this);
+        visit(methodCallExpression.getValue());
         append(":");
-        methodCallExpression.getMethodName().accept(this);
+        visit(methodCallExpression.getMethodName());
         append("(");
         List<Expression> args = methodCallExpression.getArguments();
         return appendArguments(args);
@@ -498,20 +488,14 @@ public final class ASTStringGenerator implements NodeVisitor<Void> {
 
     @Override
     public Void visitMethodDefinition(MethodDefinitionExpression n) {
-        n.getValue().accept(this);
+        visit(n.getValue());
         append(":");
-        n.getMethodName().accept(this);
+        visit(n.getMethodName());
         return null;
     }
 
     private Void appendArguments(List<Expression> args) {
-        for (Expression arg : args) {
-            arg.accept(this);
-            append(", ");
-        }
-        if (!args.isEmpty()) {
-            out.setLength(out.length() - 2);
-        }
+        visitSeparated(args);
         append(")");
         return null;
     }
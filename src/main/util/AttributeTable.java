@@ -0,0 +1,72 @@
+package main.util;
+
+import main.ast.Chunk;
+import main.ast.RedNode;
+
+import java.util.Arrays;
+
+/**
+ * Per-node values stored in an array indexed by {@link RedNode#getId()}.
+ * <p>A cheaper replacement for {@code IdentityHashMap<Node, T>}. Keys are positions in
+ * one tree, so a node shared by several positions or several trees gets a value per
+ * position.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * AttributeTable<String> scopes = new AttributeTable<>(chunk);
+ * RedNode root = RedNode.root(chunk);
+ * scopes.set(root.childAt(0), "global");
+ * String scope = scopes.get(root.childAt(0));
+ * }</pre>
+ */
+public final class AttributeTable<T> {
+
+    private final Object[] values;
+
+    /**
+     * A table for the positions of {@code RedNode.root(chunk)}.
+     */
+    public AttributeTable(Chunk chunk) {
+        this(chunk.getNodeCount());
+    }
+
+    public AttributeTable(int size) {
+        this.values = new Object[size];
+    }
+
+    static int idOf(RedNode node, int size) {
+        int id = node.getId();
+        if (id >= size) {
+            throw new IllegalArgumentException("node id " + id + " is outside this table (size " + size + ")");
+        }
+        return id;
+    }
+
+    /**
+     * The value stored for {@code node}, or null if none.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(RedNode node) {
+        return (T) values[idOf(node, values.length)];
+    }
+
+    public T getOrDefault(RedNode node, T defaultValue) {
+        T value = get(node);
+        return value != null ? value : defaultValue;
+    }
+
+    public void set(RedNode node, T value) {
+        values[idOf(node, values.length)] = value;
+    }
+
+    public boolean has(RedNode node) {
+        return get(node) != null;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+    }
+
+    public int size() {
+        return values.length;
+    }
+}
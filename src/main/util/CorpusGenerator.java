@@ -0,0 +1,418 @@
+package main.util;
+
+import main.ast.Chunk;
+import main.ast.NodeKind;
+import main.ast.exp.*;
+import main.ast.stmt.*;
+import main.lexer.TokenType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Builds random but reproducible Lua programs out of AST nodes and renders them with
+ * {@link ASTStringGenerator}, for benchmarks, fuzzing and scaling tests.
+ * <p>The output depends only on the seed and the settings: two generators configured
+ * the same way produce the same text. Every program parses with {@link main.parser.Parser}.
+ * {@link #write(Appendable, long)} streams top-level statements one at a time, so
+ * gigabyte-sized corpora never have to fit in memory. Each statement is built against
+ * the characters still missing: once its rough size estimate has used them up, blocks
+ * get a single statement without a body and expressions become atoms, so even small
+ * targets are met closely.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * CorpusGenerator gen = new CorpusGenerator(42);
+ * gen.setMaxDepth(8);
+ * gen.setStatementWeight(NodeKind.FUNCTION_STATEMENT, 20);
+ * gen.setTableDensity(0.3);
+ * gen.setStringLengths(4, 4096);
+ * try (Writer out = Files.newBufferedWriter(Path.of("big.lua"))) {
+ *     gen.write(out, 1L << 30);     // about 1 GB
+ * }
+ * }</pre>
+ */
+public final class CorpusGenerator {
+
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ne", "ru", "ta", "vo", "zen", "pa", "shi", "dor", "bel", "ix", "qua", "fen", "gor"
+    };
+    private static final String[] WORDS = {
+            "player", "health", "damage", "inventory", "item", "count", "index", "target",
+            "position", "velocity", "speed", "timer", "state", "config", "value", "result"
+    };
+    private static final TokenType[] ARITHMETIC = {
+            TokenType.PLUS, TokenType.MINUS, TokenType.STAR, TokenType.SLASH, TokenType.PERCENT, TokenType.DOT_DOT
+    };
+    private static final TokenType[] COMPARISON = {
+            TokenType.EQUAL, TokenType.NOT_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL,
+            TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LOGICAL_AND, TokenType.LOGICAL_OR
+    };
+
+    private final SplittableRandom random;
+    private final String[] names;
+    private final Map<NodeKind, Integer> weights = new EnumMap<>(NodeKind.class);
+
+    private int maxDepth = 5;
+    private int maxBlockStatements = 6;
+    private int maxExpressionDepth = 3;
+    private double tableDensity = 0.1;
+    private int minTableFields = 0;
+    private int maxTableFields = 8;
+    private int minStringLength = 1;
+    private int maxStringLength = 64;
+
+    private long budget = Long.MAX_VALUE;     // estimated characters left for the statement being built
+
+    public CorpusGenerator(long seed) {
+        this.random = new SplittableRandom(seed);
+        this.names = new String[256];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = SYLLABLES[random.nextInt(SYLLABLES.length)]
+                    + SYLLABLES[random.nextInt(SYLLABLES.length)]
+                    + (i < SYLLABLES.length ? "" : "_" + i);
+        }
+        weights.put(NodeKind.LOCAL_STATEMENT, 25);
+        weights.put(NodeKind.ASSIGNMENT_STATEMENT, 20);
+        weights.put(NodeKind.EXPRESSION_STATEMENT, 20);
+        weights.put(NodeKind.IF_STATEMENT, 10);
+        weights.put(NodeKind.FOR_NUMERIC_STATEMENT, 5);
+        weights.put(NodeKind.FOR_GENERIC_STATEMENT, 5);
+        weights.put(NodeKind.FUNCTION_STATEMENT, 5);
+        weights.put(NodeKind.LOCAL_FUNCTION_STATEMENT, 4);
+        weights.put(NodeKind.WHILE_STATEMENT, 3);
+        weights.put(NodeKind.REPEAT_STATEMENT, 2);
+        weights.put(NodeKind.DO_STATEMENT, 1);
+    }
+
+    // ----------------------------------------------------------------------
+    // Settings
+    // ----------------------------------------------------------------------
+
+    /**
+     * Deepest block nesting; statements at this depth have no bodies. Default 5.
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) throw new IllegalArgumentException("maxDepth must not be negative: " + maxDepth);
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Upper bound for statements in a nested block. Default 6.
+     */
+    public void setMaxBlockStatements(int maxBlockStatements) {
+        if (maxBlockStatements <= 0) throw new IllegalArgumentException("maxBlockStatements must be positive: " + maxBlockStatements);
+        this.maxBlockStatements = maxBlockStatements;
+    }
+
+    /**
+     * Deepest nesting of operators, calls and table constructors in one expression. Default 3.
+     */
+    public void setMaxExpressionDepth(int maxExpressionDepth) {
+        if (maxExpressionDepth < 0) throw new IllegalArgumentException("maxExpressionDepth must not be negative: " + maxExpressionDepth);
+        this.maxExpressionDepth = maxExpressionDepth;
+    }
+
+    /**
+     * Relative frequency of a statement kind; 0 disables it. Supported kinds are the
+     * ones with a weight by default: local, assignment, call, if, both fors, function,
+     * local function, while, repeat and do.
+     */
+    public void setStatementWeight(NodeKind kind, int weight) {
+        if (!weights.containsKey(kind)) throw new IllegalArgumentException("Unsupported statement kind: " + kind);
+        if (weight < 0) throw new IllegalArgumentException("weight must not be negative: " + weight);
+        weights.put(kind, weight);
+    }
+
+    /**
+     * Probability that an expression is a table constructor. Default 0.1.
+     */
+    public void setTableDensity(double tableDensity) {
+        if (tableDensity < 0 || tableDensity > 1) throw new IllegalArgumentException("tableDensity must be in [0, 1]: " + tableDensity);
+        this.tableDensity = tableDensity;
+    }
+
+    /**
+     * Field count range of table constructors, drawn uniformly. Default 0 to 8.
+     */
+    public void setTableFields(int min, int max) {
+        if (min < 0 || max < min) throw new IllegalArgumentException("Invalid table field range: " + min + ".." + max);
+        this.minTableFields = min;
+        this.maxTableFields = max;
+    }
+
+    /**
+     * Length range of string literals. Lengths are log-uniform, so short strings dominate
+     * while long ones still appear. Default 1 to 64.
+     */
+    public void setStringLengths(int min, int max) {
+        if (min < 1 || max < min) throw new IllegalArgumentException("Invalid string length range: " + min + ".." + max);
+        this.minStringLength = min;
+        this.maxStringLength = max;
+    }
+
+    // ----------------------------------------------------------------------
+    // Output
+    // ----------------------------------------------------------------------
+
+    /**
+     * A chunk of {@code statements} top-level statements.
+     */
+    public Chunk generateChunk(int statements) {
+        List<Statement> list = new ArrayList<>(statements);
+        for (int i = 0; i < statements; i++) {
+            list.add(statement(0));
+        }
+        return new Chunk(new Block(list));
+    }
+
+    /**
+     * Source of at least {@code targetChars} characters, ending at a statement boundary.
+     */
+    public String generate(long targetChars) {
+        StringBuilder out = new StringBuilder((int) Math.min(targetChars + 1024, Integer.MAX_VALUE - 8));
+        try {
+            write(out, targetChars);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);     // StringBuilder does not throw
+        }
+        return out.toString();
+    }
+
+    /**
+     * Appends statements to {@code out} until at least {@code targetChars} characters
+     * have been written. The output is ASCII, so characters equal bytes on disk.
+     *
+     * @return the number of characters written
+     */
+    public long write(Appendable out, long targetChars) throws IOException {
+        long written = 0;
+        try {
+            while (written < targetChars) {
+                budget = targetChars - written;
+                String text = ASTStringGenerator.generate(statement(0), false);
+                out.append(text);
+                written += text.length();
+            }
+        } finally {
+            budget = Long.MAX_VALUE;
+        }
+        return written;
+    }
+
+    // Counts rendered characters against the budget; estimates only, nothing is rendered yet.
+    private void spend(int chars) {
+        budget -= chars;
+    }
+
+    // ----------------------------------------------------------------------
+    // Statements
+    // ----------------------------------------------------------------------
+
+    private Statement statement(int depth) {
+        spend(12 + 2 * depth);      // keywords, separators, and indentation of the line and its "end"
+        NodeKind kind = pickKind(depth < maxDepth && budget > 0);
+        return switch (kind) {
+            case LOCAL_STATEMENT -> new LocalStatement(List.of(identifier()), List.of(expression(0, depth)));
+            case ASSIGNMENT_STATEMENT -> new AssignmentStatement(List.of(assignable()), List.of(expression(0, depth)));
+            case IF_STATEMENT -> ifStatement(depth);
+            case FOR_NUMERIC_STATEMENT -> new ForNumericStatement(loopVariable(depth), number(), expression(1, depth),
+                    loopBody(depth));
+            case FOR_GENERIC_STATEMENT -> new ForGenericStatement(List.of(new IdentifierExpression("k" + depth), new IdentifierExpression("v" + depth)),
+                    new FunctionCallExpression(new IdentifierExpression(random.nextBoolean() ? "pairs" : "ipairs"), List.of(identifier())),
+                    loopBody(depth));
+            case FUNCTION_STATEMENT -> new FunctionStatement(functionName(), parameters(), functionBody(depth));
+            case LOCAL_FUNCTION_STATEMENT -> new LocalFunctionStatement(identifier(), parameters(), functionBody(depth));
+            case WHILE_STATEMENT -> new WhileStatement(condition(depth), loopBody(depth));
+            case REPEAT_STATEMENT -> new RepeatStatement(condition(depth), loopBody(depth));
+            case DO_STATEMENT -> new DoStatement(block(depth + 1));
+            default -> new ExpressionStatement(call(0, depth));
+        };
+    }
+
+    private NodeKind pickKind(boolean allowBodies) {
+        int total = 0;
+        for (Map.Entry<NodeKind, Integer> e : weights.entrySet()) {
+            if (allowBodies || !hasBody(e.getKey())) total += e.getValue();
+        }
+        if (total == 0) return NodeKind.EXPRESSION_STATEMENT;
+        int r = random.nextInt(total);
+        for (Map.Entry<NodeKind, Integer> e : weights.entrySet()) {
+            if (!allowBodies && hasBody(e.getKey())) continue;
+            r -= e.getValue();
+            if (r < 0) return e.getKey();
+        }
+        throw new IllegalStateException("unreachable");
+    }
+
+    private static boolean hasBody(NodeKind kind) {
+        return switch (kind) {
+            case LOCAL_STATEMENT, ASSIGNMENT_STATEMENT, EXPRESSION_STATEMENT -> false;
+            default -> true;
+        };
+    }
+
+    private List<Statement> statements(int depth) {
+        int count = budget > 0 ? 1 + random.nextInt(maxBlockStatements) : 1;
+        List<Statement> list = new ArrayList<>(count + 1);
+        for (int i = 0; i < count && (i == 0 || budget > 0); i++) {
+            list.add(statement(depth));
+        }
+        return list;
+    }
+
+    private Block block(int depth) {
+        return new Block(statements(depth));
+    }
+
+    private Block loopBody(int depth) {
+        List<Statement> body = statements(depth + 1);
+        if (random.nextInt(10) == 0) {
+            body.add(new BreakStatement());     // must stay last in its block
+        }
+        return new Block(body);
+    }
+
+    private Chunk functionBody(int depth) {
+        List<Statement> body = statements(depth + 1);
+        if (random.nextInt(10) < 7) {
+            body.add(new ReturnStatement(List.of(expression(0, depth + 1))));
+        }
+        return new Chunk(new Block(body));
+    }
+
+    private IfStatement ifStatement(int depth) {
+        List<ElseIfStatement> elseIfs = new ArrayList<>();
+        int count = random.nextInt(4) == 0 ? 1 + random.nextInt(3) : 0;
+        for (int i = 0; i < count && budget > 0; i++) {
+            elseIfs.add(new ElseIfStatement(condition(depth), block(depth + 1)));
+        }
+        ElseStatement elseStmt = random.nextBoolean() && budget > 0 ? new ElseStatement(block(depth + 1)) : null;
+        return new IfStatement(condition(depth), block(depth + 1), elseIfs, elseStmt);
+    }
+
+    private IdentifierExpression loopVariable(int depth) {
+        return new IdentifierExpression("i" + depth);
+    }
+
+    private Expression functionName() {
+        Expression name = identifier();
+        return random.nextInt(3) == 0 ? new TableAccessExpression(name, word(), true, false) : name;
+    }
+
+    private List<Expression> parameters() {
+        int count = random.nextInt(4);
+        List<Expression> params = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            params.add(new IdentifierExpression("p" + i));
+        }
+        return params;
+    }
+
+    private Expression assignable() {
+        return random.nextInt(4) == 0 ? new TableAccessExpression(identifier(), word(), true, false) : identifier();
+    }
+
+    // ----------------------------------------------------------------------
+    // Expressions
+    // ----------------------------------------------------------------------
+
+    private Expression condition(int depth) {
+        return new BinaryExpression(operand(1, depth), COMPARISON[random.nextInt(COMPARISON.length)], operand(1, depth));
+    }
+
+    private Expression expression(int level, int depth) {
+        if (level >= maxExpressionDepth || budget <= 0) return atom();
+        if (random.nextDouble() < tableDensity) return table(level, depth);
+        int r = random.nextInt(100);
+        if (r < 40) return atom();
+        if (r < 65) return new BinaryExpression(operand(level + 1, depth), ARITHMETIC[random.nextInt(ARITHMETIC.length)], operand(level + 1, depth));
+        if (r < 80) return call(level + 1, depth);
+        if (r < 88) return new TableAccessExpression(identifier(), word(), true, false);
+        if (r < 93) return new UnaryExpression(random.nextBoolean() ? TokenType.NOT : TokenType.HASH, identifier());
+        if (r < 96 && depth < maxDepth) return new AnonymousFunctionExpression(parameters(), functionBody(depth));
+        return new TableAccessExpression(identifier(), number(), false, true);
+    }
+
+    // Binary operands are parenthesised when compound, so the rendered text parses back to the same tree.
+    private Expression operand(int level, int depth) {
+        Expression e = expression(level, depth);
+        return e instanceof BinaryExpression || e instanceof UnaryExpression || e instanceof AnonymousFunctionExpression
+                ? new ParanthesisExpression(e) : e;
+    }
+
+    private Expression call(int level, int depth) {
+        int count = random.nextInt(4);
+        List<Expression> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            args.add(expression(level, depth));
+        }
+        return random.nextInt(4) == 0
+                ? new MethodCallExpression(identifier(), word(), args)
+                : new FunctionCallExpression(random.nextBoolean() ? identifier() : new TableAccessExpression(identifier(), word(), true, false), args);
+    }
+
+    private Expression table(int level, int depth) {
+        int count = minTableFields + random.nextInt(maxTableFields - minTableFields + 1);
+        List<TableFieldExpression> fields = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Expression value = expression(level + 1, depth);
+            fields.add(switch (random.nextInt(3)) {
+                case 0 -> new TableFieldExpression(null, value);
+                case 1 -> new TableFieldExpression(word(), value);
+                default -> new TableFieldExpression(new LiteralExpression(String.valueOf(i + 1), TokenType.NUMBER), value);
+            });
+        }
+        return new TableConstructorExpression(fields);
+    }
+
+    private Expression atom() {
+        return switch (random.nextInt(10)) {
+            case 0, 1, 2, 3 -> identifier();
+            case 4, 5 -> number();
+            case 6, 7 -> string();
+            case 8 -> random.nextBoolean()
+                    ? new LiteralExpression("true", TokenType.TRUE)
+                    : new LiteralExpression("false", TokenType.FALSE);
+            default -> new LiteralExpression("nil", TokenType.NIL);
+        };
+    }
+
+    private LiteralExpression number() {
+        String value = random.nextInt(4) == 0
+                ? random.nextInt(1000) + "." + random.nextInt(100)
+                : String.valueOf(random.nextInt(10_000));
+        spend(value.length() + 2);
+        return new LiteralExpression(value, TokenType.NUMBER);
+    }
+
+    private LiteralExpression string() {
+        double logMin = Math.log(minStringLength);
+        double logMax = Math.log(maxStringLength + 1);
+        int length = (int) Math.exp(logMin + random.nextDouble() * (logMax - logMin));
+        StringBuilder sb = new StringBuilder(length + 16);
+        while (sb.length() < length) {
+            if (!sb.isEmpty()) sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        sb.setLength(Math.max(minStringLength, Math.min(length, sb.length())));
+        spend(sb.length() + 4);
+        return new LiteralExpression(sb.toString(), TokenType.STRING);
+    }
+
+    // Names are skewed towards the front of the pool, like real code reusing a few hot locals.
+    private IdentifierExpression identifier() {
+        int i = Math.min(random.nextInt(names.length), random.nextInt(names.length));
+        spend(names[i].length() + 2);
+        return new IdentifierExpression(names[i]);
+    }
+
+    private IdentifierExpression word() {
+        String word = WORDS[random.nextInt(WORDS.length)];
+        spend(word.length() + 2);
+        return new IdentifierExpression(word);
+    }
+}
@@ -0,0 +1,55 @@
+package main.util;
+
+import main.ast.Chunk;
+import main.ast.RedNode;
+
+import java.util.Arrays;
+
+/**
+ * Primitive {@code int} counterpart of {@link AttributeTable}, e.g. for depths,
+ * counts or scope numbers, without boxing.
+ */
+public final class IntAttributeTable {
+
+    private final int[] values;
+    private final int defaultValue;
+
+    public IntAttributeTable(Chunk chunk) {
+        this(chunk.getNodeCount(), 0);
+    }
+
+    public IntAttributeTable(Chunk chunk, int defaultValue) {
+        this(chunk.getNodeCount(), defaultValue);
+    }
+
+    public IntAttributeTable(int size, int defaultValue) {
+        this.values = new int[size];
+        this.defaultValue = defaultValue;
+        if (defaultValue != 0) {
+            Arrays.fill(values, defaultValue);
+        }
+    }
+
+    public int get(RedNode node) {
+        return values[AttributeTable.idOf(node, values.length)];
+    }
+
+    public void set(RedNode node, int value) {
+        values[AttributeTable.idOf(node, values.length)] = value;
+    }
+
+    /**
+     * Adds {@code delta} to the value of {@code node} and returns the new value.
+     */
+    public int add(RedNode node, int delta) {
+        return values[AttributeTable.idOf(node, values.length)] += delta;
+    }
+
+    public void clear() {
+        Arrays.fill(values, defaultValue);
+    }
+
+    public int size() {
+        return values.length;
+    }
+}
@@ -0,0 +1,333 @@
+package main.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Streams items through a chain of stages, each run by its own group of threads and
+ * connected to the next by a bounded queue.
+ * <p>A full queue blocks the stage feeding it, so a slow stage throttles everything
+ * upstream; together with a cap on items in flight this bounds memory by the queue
+ * capacities instead of the number of inputs. A stage that throws anything, errors
+ * included, marks the item as failed and later stages pass it through untouched, so
+ * one bad file does not stop the batch. Results reach the sink on the calling thread,
+ * either as they finish or, when {@link Builder#ordered(boolean) ordered}, in input
+ * order.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * int cores = Runtime.getRuntime().availableProcessors();
+ * Pipeline<Path, String> pipeline = Pipeline.<Path>builder()
+ *         .stage("read", 8, Files::readString)
+ *         .stage("lex", cores, source -> new Lexer(source).tokenize())
+ *         .stage("parse", cores, tokens -> new Parser(tokens).parseChunk())
+ *         .stage("rewrite", cores, chunk -> chunk.accept(new FlattenerRewriter()))
+ *         .stage("generate", cores, node -> ASTStringGenerator.generate(node, false))
+ *         .queueCapacity(32)
+ *         .build();
+ * pipeline.run(files, result -> write(result.input(), result.output()));
+ * pipeline.getMetrics().forEach(System.out::println);
+ * }</pre>
+ *
+ * @param <I> input type
+ * @param <O> output type of the last stage
+ */
+public final class Pipeline<I, O> {
+
+    /**
+     * One stage's work on a single item. May throw; the item is then reported as failed.
+     */
+    @FunctionalInterface
+    public interface Step<T, R> {
+        R apply(T value) throws Exception;
+    }
+
+    /**
+     * What became of one input: {@code output} on success, otherwise {@code error}
+     * and the name of the stage that raised it.
+     */
+    public record Result<I, O>(I input, O output, Throwable error, String failedStage) {
+        public boolean isOk() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Counters for one stage, summed over all runs.
+     *
+     * @param busyNanos    time spent inside the step
+     * @param starvedNanos time workers waited for input
+     * @param blockedNanos time workers waited for room downstream (backpressure)
+     */
+    public record StageMetrics(String name, int parallelism, long items, long failures,
+                               long busyNanos, long starvedNanos, long blockedNanos) {
+        @Override
+        public String toString() {
+            return String.format("%-10s x%-3d %8d items %5d failed  busy %8.1f ms  starved %8.1f ms  blocked %8.1f ms",
+                    name, parallelism, items, failures, busyNanos / 1e6, starvedNanos / 1e6, blockedNanos / 1e6);
+        }
+    }
+
+    public static <I> Builder<I, I> builder() {
+        return new Builder<>(new ArrayList<>());
+    }
+
+    public static final class Builder<I, O> {
+        private final List<Stage> stages;
+        private int queueCapacity = 64;
+        private boolean ordered = false;
+
+        private Builder(List<Stage> stages) {
+            this.stages = stages;
+        }
+
+        /**
+         * Appends a stage run by {@code parallelism} threads.
+         */
+        @SuppressWarnings("unchecked")
+        public <R> Builder<I, R> stage(String name, int parallelism, Step<? super O, ? extends R> step) {
+            if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+            stages.add(new Stage(name, parallelism, (Step<Object, Object>) step));
+            Builder<I, R> next = new Builder<>(stages);
+            next.queueCapacity = queueCapacity;
+            next.ordered = ordered;
+            return next;
+        }
+
+        /**
+         * Capacity of each queue between stages; default 64.
+         */
+        public Builder<I, O> queueCapacity(int queueCapacity) {
+            if (queueCapacity <= 0) throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Deliver results in input order rather than completion order; default false.
+         */
+        public Builder<I, O> ordered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        public Pipeline<I, O> build() {
+            if (stages.isEmpty()) throw new IllegalStateException("Pipeline has no stages");
+            return new Pipeline<>(List.copyOf(stages), queueCapacity, ordered);
+        }
+    }
+
+    private static final class Stage {
+        final String name;
+        final int parallelism;
+        final Step<Object, Object> step;
+
+        final LongAdder items = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder busy = new LongAdder();
+        final LongAdder starved = new LongAdder();
+        final LongAdder blocked = new LongAdder();
+
+        Stage(String name, int parallelism, Step<Object, Object> step) {
+            this.name = name;
+            this.parallelism = parallelism;
+            this.step = step;
+        }
+    }
+
+    /** An item travelling through the stages. */
+    private static final class Envelope {
+        static final Envelope END = new Envelope(-1, null);
+
+        final long sequence;
+        final Object input;
+        Object value;
+        Throwable error;
+        String failedStage;
+
+        Envelope(long sequence, Object input) {
+            this.sequence = sequence;
+            this.input = input;
+            this.value = input;
+        }
+    }
+
+    private final List<Stage> stages;
+    private final int queueCapacity;
+    private final boolean ordered;
+
+    private Pipeline(List<Stage> stages, int queueCapacity, boolean ordered) {
+        this.stages = stages;
+        this.queueCapacity = queueCapacity;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Feeds every input through the stages and hands each result to {@code sink},
+     * returning once all have been delivered. If iterating {@code inputs} or the sink
+     * throws, the run is abandoned and the exception rethrown.
+     */
+    public void run(Iterable<? extends I> inputs, Consumer<? super Result<I, O>> sink) {
+        int n = stages.size();
+        List<BlockingQueue<Envelope>> queues = new ArrayList<>(n + 1);
+        int maxInFlight = 0;
+        for (int i = 0; i <= n; i++) {
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+            maxInFlight += queueCapacity + (i < n ? stages.get(i).parallelism : 0);
+        }
+        // Bounds the reorder buffer as well as the queues: a slow head item stalls the feeder.
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        Throwable[] feedError = { null };
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(Thread.ofPlatform().daemon().name("pipeline-feed").unstarted(
+                () -> feed(inputs, queues.getFirst(), inFlight, feedError)));
+        for (int i = 0; i < n; i++) {
+            Stage stage = stages.get(i);
+            BlockingQueue<Envelope> in = queues.get(i);
+            BlockingQueue<Envelope> out = queues.get(i + 1);
+            int downstream = i + 1 < n ? stages.get(i + 1).parallelism : 1;
+            AtomicInteger running = new AtomicInteger(stage.parallelism);
+            for (int w = 0; w < stage.parallelism; w++) {
+                threads.add(Thread.ofPlatform().daemon().name("pipeline-" + stage.name + "-" + w).unstarted(
+                        () -> work(stage, in, out, running, downstream)));
+            }
+        }
+        threads.forEach(Thread::start);
+
+        boolean completed = false;
+        try {
+            drain(queues.getLast(), inFlight, sink);
+            completed = true;
+        } finally {
+            if (!completed) {
+                threads.forEach(Thread::interrupt);
+            }
+        }
+        join(threads);
+        if (feedError[0] instanceof RuntimeException e) throw e;
+        if (feedError[0] instanceof Error e) throw e;
+    }
+
+    private void feed(Iterable<? extends I> inputs, BlockingQueue<Envelope> first, Semaphore inFlight, Throwable[] error) {
+        try {
+            long sequence = 0;
+            try {
+                for (I input : inputs) {
+                    inFlight.acquire();
+                    first.put(new Envelope(sequence++, input));
+                }
+            } catch (RuntimeException | Error e) {
+                error[0] = e;
+            }
+            for (int i = 0; i < stages.getFirst().parallelism; i++) {
+                first.put(Envelope.END);
+            }
+        } catch (InterruptedException ignored) {
+            // run abandoned
+        }
+    }
+
+    private static void work(Stage stage, BlockingQueue<Envelope> in, BlockingQueue<Envelope> out,
+                             AtomicInteger running, int downstream) {
+        try {
+            while (true) {
+                long t0 = System.nanoTime();
+                Envelope e = in.take();
+                long t1 = System.nanoTime();
+                stage.starved.add(t1 - t0);
+                if (e == Envelope.END) break;
+
+                if (e.error == null) {
+                    try {
+                        e.value = stage.step.apply(e.value);
+                    } catch (Throwable x) {
+                        // any other Error would end this worker before it forwards END and hang run()
+                        e.value = null;
+                        e.error = x;
+                        e.failedStage = stage.name;
+                        stage.failures.increment();
+                    }
+                }
+                long t2 = System.nanoTime();
+                stage.busy.add(t2 - t1);
+                stage.items.increment();
+
+                out.put(e);
+                stage.blocked.add(System.nanoTime() - t2);
+            }
+            // the last worker out tells the next stage's workers that input is exhausted
+            if (running.decrementAndGet() == 0) {
+                for (int i = 0; i < downstream; i++) {
+                    out.put(Envelope.END);
+                }
+            }
+        } catch (InterruptedException ignored) {
+            // run abandoned
+        }
+    }
+
+    private void drain(BlockingQueue<Envelope> last, Semaphore inFlight, Consumer<? super Result<I, O>> sink) {
+        Map<Long, Envelope> pending = new HashMap<>();
+        long next = 0;
+        try {
+            while (true) {
+                Envelope e = last.take();
+                if (e == Envelope.END) break;
+                if (!ordered) {
+                    inFlight.release();
+                    sink.accept(toResult(e));
+                    continue;
+                }
+                pending.put(e.sequence, e);
+                while ((e = pending.remove(next)) != null) {
+                    next++;
+                    inFlight.release();
+                    sink.accept(toResult(e));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for pipeline results", ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Result<I, O> toResult(Envelope e) {
+        return new Result<>((I) e.input, (O) e.value, e.error, e.failedStage);
+    }
+
+    private static void join(List<Thread> threads) {
+        boolean interrupted = false;
+        for (Thread t : threads) {
+            while (true) {
+                try {
+                    t.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Per-stage counters, in stage order.
+     */
+    public List<StageMetrics> getMetrics() {
+        List<StageMetrics> metrics = new ArrayList<>(stages.size());
+        for (Stage s : stages) {
+            metrics.add(new StageMetrics(s.name, s.parallelism, s.items.sum(), s.failures.sum(),
+                    s.busy.sum(), s.starved.sum(), s.blocked.sum()));
+        }
+        return metrics;
+    }
+}
@@ -2,10 +2,18 @@ package main.visit;
 
 import main.ast.Chunk;
 import main.ast.Node;
+import main.ast.NodeKind;
 import main.ast.exp.*;
 import main.ast.stmt.*;
+import main.diagnostics.Instrumentation;
+import main.diagnostics.RewritePassEvent;
+
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A base implementation of a Rewriting Visitor for the Lua AST.
@@ -14,6 +22,229 @@ import java.util.List;
  */
 public abstract class BaseRewriter implements NodeVisitor<Node> {
 
+    /**
+     * Kinds this rewriter may replace, as a union of {@link NodeKind#mask()}.
+     * Subtrees that contain none of them are returned as-is without being walked.
+     * Defaults to every kind; override it when only a few visit methods are overridden.
+     */
+    protected long rewrittenKinds() {
+        return -1L;
+    }
+
+    /**
+     * True if this rewriter can be fused with others by {@link FusedRewriter}: each
+     * visit method only replaces the node it is given, reaches children solely through
+     * {@link #rewrite(Node)} or {@link #acceptList(List)}, and keeps no state that
+     * depends on traversal order. Defaults to false, which runs it as a separate pass.
+     */
+    protected boolean isLocal() {
+        return false;
+    }
+
+    /**
+     * True if what this rewriter returns for a subtree depends only on that subtree,
+     * not on anything it saw elsewhere, so that {@link ParallelRewriter} may let separate
+     * instances rewrite parts of one tree on different threads. Defaults to false.
+     */
+    protected boolean isStateless() {
+        return false;
+    }
+
+    private boolean shallow = false;     // set while FusedRewriter offers a single node
+    Map<Node, Node> precomputed;         // subtrees ParallelRewriter already rewrote, by identity
+
+    /**
+     * Rewrites {@code node} as part of a larger pass, so it is not reported as a pass of its own.
+     */
+    Node rewriteNested(Node node) {
+        chunkDepth++;
+        try {
+            return rewrite(node);
+        } finally {
+            chunkDepth--;
+        }
+    }
+
+    /**
+     * Applies this rewriter to {@code node} alone, treating its children as already
+     * rewritten.
+     */
+    Node rewriteShallow(Node node) {
+        shallow = true;
+        try {
+            return node.accept(this);
+        } finally {
+            shallow = false;
+        }
+    }
+
+    /**
+     * Visits {@code node}, or returns it unchanged when its subtree holds none of
+     * the {@link #rewrittenKinds()}.
+     * <p>Rewriting recurses only {@value #MAX_NESTING} levels deep. Below that, the
+     * subtree is driven by {@link Traversal#reduce(Node, Traversal.Reducer)}: every
+     * child is rewritten before its parent's visit method runs, and the calls to this
+     * method from that visit method return the finished results, so deep trees cannot
+     * overflow the stack. That covers every visit method of a {@link #isLocal() local}
+     * or {@link #isStateless() stateless} rewriter, and the visit methods this class
+     * defines for any rewriter, since they only rebuild the node. A visit method that
+     * another rewriter overrides may set state before rewriting children, so it is
+     * still called before its children, in document order, and recurses as before.</p>
+     */
+    protected Node rewrite(Node node) {
+        if (shallow) return node;
+        if (precomputed != null) {
+            Node done = precomputed.get(node);
+            if (done != null) return done;
+        }
+        if ((node.getSubtreeKinds() & rewrittenKinds()) == 0) return node;
+        if (reducing != null) {
+            Node done = reducedChild(node);
+            if (done == null) done = reduceHidden(node);
+            if (done != null) return done;
+        }
+        if (nesting >= MAX_NESTING && isDriven(node)) {
+            if (driver == null) driver = new Driver();
+            return Traversal.reduce(node, driver);
+        }
+        Node result;
+        nesting++;
+        try {
+            result = node.accept(this);
+        } finally {
+            nesting--;
+        }
+        return postVisit(result);
+    }
+
+    /**
+     * Called with what a node's visit method returned, before it reaches the parent's
+     * visit method, on both the recursive and the {@link Traversal} path of
+     * {@link #rewrite(Node)}; the return value takes its place. Returns it unchanged by
+     * default. Override this, not {@code rewrite}, to post-process every node, so deep
+     * trees still go through the driver.
+     */
+    protected Node postVisit(Node rewritten) {
+        return rewritten;
+    }
+
+    private static final int MAX_NESTING = 128;
+    private int nesting;           // rewrite() calls running inside one another
+
+    // Node classes whose visit method a rewriter class overrides, found once per class.
+    private static final ClassValue<Set<Class<?>>> OVERRIDDEN = new ClassValue<>() {
+        @Override
+        protected Set<Class<?>> computeValue(Class<?> type) {
+            Set<Class<?>> nodes = new HashSet<>();
+            for (Method m : NodeVisitor.class.getMethods()) {
+                try {
+                    Class<?> owner = type.getMethod(m.getName(), m.getParameterTypes()).getDeclaringClass();
+                    if (owner != BaseRewriter.class && BaseRewriter.class.isAssignableFrom(owner)) {
+                        nodes.add(m.getParameterTypes()[0]);
+                    }
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalStateException(e);     // every NodeVisitor method is public
+                }
+            }
+            return Set.copyOf(nodes);
+        }
+    };
+    private Set<Class<?>> overridden;
+
+    // True if node's visit method may run after its children, from the driver.
+    private boolean isDriven(Node node) {
+        if (isLocal() || isStateless()) return true;
+        if (overridden == null) overridden = OVERRIDDEN.get(getClass());
+        return !overridden.contains(node.getClass());
+    }
+
+    // Set while the driver runs a visit method: the node and its children's results.
+    private Node reducing;
+    private List<Node> reduced;
+    private int cursor;            // where the next child is expected; visit methods mostly go in order
+    private Driver driver;
+
+    private Node reducedChild(Node child) {
+        int n = reduced.size();
+        for (int k = 0, i = cursor; k < n; k++, i = i + 1 == n ? 0 : i + 1) {
+            if (reducing.childAt(i) == child) {
+                cursor = i + 1 == n ? 0 : i + 1;
+                return reduced.get(i);
+            }
+        }
+        return null;       // not a child, e.g. a node the visit method built; rewrite it on its own
+    }
+
+    // Blocks that childAt skips, such as a do statement's body, usually have all their
+    // children done already; reduce them in place rather than walking them again.
+    private Node reduceHidden(Node node) {
+        int n = node.childCount();
+        List<Node> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Node child = node.childAt(i);
+            Node done = child == null ? null : driver.skip(child);
+            if (child != null && done == null) return null;
+            results.add(done);
+        }
+        return driver.reduce(node, results);
+    }
+
+    private final class Driver implements Traversal.Reducer<Node> {
+        @Override
+        public Node skip(Node child) {
+            if (precomputed != null) {
+                Node done = precomputed.get(child);
+                if (done != null) return done;
+            }
+            // a node missing from childAt, such as the body block of a do statement,
+            // is reduced separately; its children may already be done
+            if (reducing != null) {
+                Node done = reducedChild(child);
+                if (done != null) return done;
+            }
+            if ((child.getSubtreeKinds() & rewrittenKinds()) == 0) return child;
+            return isDriven(child) ? null : visitFirst(child);
+        }
+
+        // An overridden visit method runs before its children, which it rewrites through
+        // rewrite(), driving them again below it.
+        private Node visitFirst(Node node) {
+            Node outerNode = reducing;
+            List<Node> outerResults = reduced;
+            int outerCursor = cursor;
+            reducing = null;
+            reduced = null;
+            Node result;
+            try {
+                result = node.accept(BaseRewriter.this);
+            } finally {
+                reducing = outerNode;
+                reduced = outerResults;
+                cursor = outerCursor;
+            }
+            return postVisit(result);
+        }
+
+        @Override
+        public Node reduce(Node node, List<Node> children) {
+            Node outerNode = reducing;
+            List<Node> outerResults = reduced;
+            int outerCursor = cursor;
+            reducing = node;
+            reduced = children;
+            cursor = 0;
+            Node result;
+            try {
+                result = node.accept(BaseRewriter.this);
+            } finally {
+                reducing = outerNode;
+                reduced = outerResults;
+                cursor = outerCursor;
+            }
+            return postVisit(result);
+        }
+    }
+
     /**
      * Internal helper to handle list identity. Returns the same list if
      * no elements changed to avoid unnecessary allocations.
@@ -27,7 +258,7 @@ public abstract class BaseRewriter implements NodeVisitor<Node> {
         List<T> newNodes = new ArrayList<>(nodes.size());
 
         for (T node : nodes) {
-            T newNode = (T) node.accept(this);
+            T newNode = (T) rewrite(node);
             if (newNode != node) changed = true;
             newNodes.add(newNode);
         }
@@ -35,11 +266,38 @@ public abstract class BaseRewriter implements NodeVisitor<Node> {
         return changed ? newNodes : nodes;
     }
 
+    private int chunkDepth = 0;      // function bodies are chunks too; only the outermost is a pass
+
+    /**
+     * Rewrites the chunk's block. The outermost chunk of each pass is reported to
+     * {@link Instrumentation} as a {@link RewritePassEvent} named after this class.
+     */
     @Override
     public Node visitChunk(Chunk n) {
-        Block rewrittenBlock = (Block) n.getBlock().accept(this);
+        if (chunkDepth > 0 || shallow) return rewriteChunk(n);
+
+        RewritePassEvent event = new RewritePassEvent();
+        event.begin();
+        long start = Instrumentation.start();
+        chunkDepth++;
+        try {
+            Node result = rewriteChunk(n);
+            Instrumentation.rewritten(event, start, getClass(), n, result);
+            return result;
+        } finally {
+            chunkDepth--;
+        }
+    }
+
+    private Node rewriteChunk(Chunk n) {
+        Block rewrittenBlock = (Block) rewrite(n.getBlock());
         if (rewrittenBlock == n.getBlock()) return n;
-        return new Chunk(rewrittenBlock, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
+        Chunk chunk = new Chunk(rewrittenBlock, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
+        // keep the kind index for whoever relied on it
+        if (n.hasKindIndex()) {
+            chunk.buildKindIndex();
+        }
+        return chunk;
     }
 
     @Override
@@ -75,43 +333,43 @@ public abstract class BaseRewriter implements NodeVisitor<Node> {
 
     @Override
     public Node visitExpressionStatement(ExpressionStatement n) {
-        Expression expr = (Expression) n.getExpression().accept(this);
+        Expression expr = (Expression) rewrite(n.getExpression());
         if (expr == n.getExpression()) return n;
         return new ExpressionStatement(expr, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
 
     @Override
     public Node visitDo(DoStatement n) {
-        Block body = (Block) n.getBody().accept(this);
+        Block body = (Block) rewrite(n.getBody());
         if (body == n.getBody()) return n;
         return new DoStatement(body, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
 
     @Override
     public Node visitWhile(WhileStatement n) {
-        Expression cond = (Expression) n.getExpression().accept(this);
-        Block body = (Block) n.getBody().accept(this);
+        Expression cond = (Expression) rewrite(n.getExpression());
+        Block body = (Block) rewrite(n.getBody());
         if (cond == n.getExpression() && body == n.getBody()) return n;
         return new WhileStatement(cond, body, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
 
     @Override
     public Node visitRepeat(RepeatStatement n) {
-        Block body = (Block) n.getBody().accept(this);
-        Expression cond = (Expression) n.getExpression().accept(this);
+        Block body = (Block) rewrite(n.getBody());
+        Expression cond = (Expression) rewrite(n.getExpression());
         if (body == n.getBody() && cond == n.getExpression()) return n;
         return new RepeatStatement(cond, body, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
 
     @Override
     public Node visitIf(IfStatement n) {
-        Expression cond = (Expression) n.getExpression().accept(this);
-        Block body = (Block) n.getBody().accept(this);
+        Expression cond = (Expression) rewrite(n.getExpression());
+        Block body = (Block) rewrite(n.getBody());
         List<ElseIfStatement> elseIfs = acceptList(n.getElseIfs());
 
         ElseStatement elseStmt = n.getElseStmt();
         if (elseStmt != null) {
-            elseStmt = (ElseStatement) elseStmt.accept(this);
+            elseStmt = (ElseStatement) rewrite(elseStmt);
         }
 
         if (cond == n.getExpression() && body == n.getBody() &&
@@ -122,26 +380,26 @@ public abstract class BaseRewriter implements NodeVisitor<Node> {
 
     @Override
     public Node visitElseIf(ElseIfStatement n) {
-        Expression cond = (Expression) n.getExpression().accept(this);
-        Block body = (Block) n.getBody().accept(this);
+        Expression cond = (Expression) rewrite(n.getExpression());
+        Block body = (Block) rewrite(n.getBody());
         if (cond == n.getExpression() && body == n.getBody()) return n;
         return new ElseIfStatement(cond, body, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
 
     @Override
     public Node visitElse(ElseStatement n) {
-        Block body = (Block) n.getBody().accept(this);
+        Block body = (Block) rewrite(n.getBody());
         if (body == n.getBody()) return n;
         return new ElseStatement(body, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
 
     @Override
     public Node visitForNumeric(ForNumericStatement n) {
-        IdentifierExpression var = (IdentifierExpression) n.getVariable().accept(this);
-        Expression start = (Expression) n.getStart().accept(this);
-        Expression end = (Expression) n.getEnd().accept(this);
-        Expression step = n.getStep() != null ? (Expression) n.getStep().accept(this) : null;
-        Block body = (Block) n.getBody().accept(this);
+        IdentifierExpression var = (IdentifierExpression) rewrite(n.getVariable());
+        Expression start = (Expression) rewrite(n.getStart());
+        Expression end = (Expression) rewrite(n.getEnd());
+        Expression step = n.getStep() != null ? (Expression) rewrite(n.getStep()) : null;
+        Block body = (Block) rewrite(n.getBody());
 
         if (var == n.getVariable() && start == n.getStart() && end == n.getEnd() &&
                 step == n.getStep() && body == n.getBody()) return n;
@@ -153,8 +411,8 @@ public abstract class BaseRewriter implements NodeVisitor<Node> {
     public Node visitForGeneric(ForGenericStatement n) {
         @SuppressWarnings("unchecked")
         List<IdentifierExpression> names = acceptList(n.getNames());
-        Expression expr = (Expression) n.getExpression().accept(this);
-        Block body = (Block) n.getBody().accept(this);
+        Expression expr = (Expression) rewrite(n.getExpression());
+        Block body = (Block) rewrite(n.getBody());
 
         if (names == n.getNames() && expr == n.getExpression() && body == n.getBody()) return n;
 
@@ -163,9 +421,9 @@ public abstract class BaseRewriter implements NodeVisitor<Node> {
 
     @Override
     public Node visitLocalFunction(LocalFunctionStatement n) {
-        IdentifierExpression name = (IdentifierExpression) n.getName().accept(this);
+        IdentifierExpression name = (IdentifierExpression) rewrite(n.getName());
         List<Expression> params = acceptList(n.getParameters());
-        Chunk chunk = (Chunk) n.getChunk().accept(this);
+        Chunk chunk = (Chunk) rewrite(n.getChunk());
 
         if (name == n.getName() && params == n.getParameters() && chunk == n.getChunk()) return n;
 
@@ -174,9 +432,9 @@ public abstract class BaseRewriter implements NodeVisitor<Node> {
 
     @Override
     public Node visitFunction(FunctionStatement n) {
-        Expression name = (Expression) n.getName().accept(this);
+        Expression name = (Expression) rewrite(n.getName());
         List<Expression> params = acceptList(n.getParameters());
-        Chunk chunk = (Chunk) n.getChunk().accept(this);
+        Chunk chunk = (Chunk) rewrite(n.getChunk());
 
         if (name == n.getName() && params == n.getParameters() && chunk == n.getChunk()) return n;
 
@@ -185,22 +443,22 @@ public abstract class BaseRewriter implements NodeVisitor<Node> {
 
     @Override
     public Node visitBinary(BinaryExpression n) {
-        Expression left = (Expression) n.getLeft().accept(this);
-        Expression right = (Expression) n.getRight().accept(this);
+        Expression left = (Expression) rewrite(n.getLeft());
+        Expression right = (Expression) rewrite(n.getRight());
         if (left == n.getLeft() && right == n.getRight()) return n;
         return new BinaryExpression(left, n.getOp(), right, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
 
     @Override
     public Node visitUnary(UnaryExpression n) {
-        Expression expr = (Expression) n.getExpr().accept(this);
+        Expression expr = (Expression) rewrite(n.getExpr());
         if (expr == n.getExpr()) return n;
         return new UnaryExpression(n.getOp(), expr, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
 
     @Override
     public Node visitFunctionCall(FunctionCallExpression n) {
-        Expression target = (Expression) n.getTarget().accept(this);
+        Expression target = (Expression) rewrite(n.getTarget());
         List<Expression> args = acceptList(n.getArgs());
         if (target == n.getTarget() && args == n.getArgs()) return n;
         return new FunctionCallExpression(target, args, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
@@ -215,16 +473,16 @@ public abstract class BaseRewriter implements NodeVisitor<Node> {
 
     @Override
     public Node visitTableField(TableFieldExpression n) {
-        Expression key = n.getKey() != null ? (Expression) n.getKey().accept(this) : null;
-        Expression value = (Expression) n.getValue().accept(this);
+        Expression key = n.getKey() != null ? (Expression) rewrite(n.getKey()) : null;
+        Expression value = (Expression) rewrite(n.getValue());
         if (key == n.getKey() && value == n.getValue()) return n;
         return new TableFieldExpression(key, value, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
 
     @Override
     public Node visitTableAccess(TableAccessExpression n) {
-        Expression name = (Expression) n.getName().accept(this);
-        Expression index = (Expression) n.getIndex().accept(this);
+        Expression name = (Expression) rewrite(n.getName());
+        Expression index = (Expression) rewrite(n.getIndex());
         if (name == n.getName() && index == n.getIndex()) return n;
         return new TableAccessExpression(name, index, n.isDotAccess(), n.isBracketAccess(), n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
@@ -232,22 +490,22 @@ public abstract class BaseRewriter implements NodeVisitor<Node> {
     @Override
     public Node visitAnonymousFunction(AnonymousFunctionExpression n) {
         List<Expression> params = acceptList(n.getParameters());
-        Chunk chunk = (Chunk) n.getChunk().accept(this);
+        Chunk chunk = (Chunk) rewrite(n.getChunk());
         if (params == n.getParameters() && chunk == n.getChunk()) return n;
         return new AnonymousFunctionExpression(params, chunk, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
 
     @Override
     public Node visitParanthesis(ParanthesisExpression n) {
-        Expression inner = (Expression) n.getInnerExpr().accept(this);
+        Expression inner = (Expression) rewrite(n.getInnerExpr());
         if (inner == n.getInnerExpr()) return n;
         return new ParanthesisExpression(inner, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
 
     @Override
     public Node visitMethodCall(MethodCallExpression n) {
-        Expression target = (Expression) n.getValue().accept(this);
-        IdentifierExpression method = (IdentifierExpression) n.getMethodName().accept(this);
+        Expression target = (Expression) rewrite(n.getValue());
+        IdentifierExpression method = (IdentifierExpression) rewrite(n.getMethodName());
         List<Expression> args = acceptList(n.getArguments());
         if (target == n.getValue() && method == n.getMethodName() && args == n.getArguments()) return n;
         return new MethodCallExpression(target, method, args, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
@@ -255,8 +513,8 @@ public abstract class BaseRewriter implements NodeVisitor<Node> {
 
     @Override
     public Node visitMethodDefinition(MethodDefinitionExpression n) {
-        Expression target = (Expression) n.getValue().accept(this);
-        IdentifierExpression method = (IdentifierExpression) n.getMethodName().accept(this);
+        Expression target = (Expression) rewrite(n.getValue());
+        IdentifierExpression method = (IdentifierExpression) rewrite(n.getMethodName());
         if (target == n.getValue() && method == n.getMethodName()) return n;
         return new MethodDefinitionExpression(target, method, n.getSpan(), n.getLeadingComments(), n.getTrailingComments());
     }
@@ -0,0 +1,142 @@
+package main.visit;
+
+import main.ast.Node;
+import main.ast.NodeKind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Runs many analyses over a tree in a single walk.
+ * <p>Each {@link Rule} subscribes to the node kinds it cares about, separately for
+ * entering a node (preorder) and leaving it (postorder, after its whole subtree). The
+ * walk looks up the rules for each node's kind in a per-kind table and calls only
+ * those, in the order they were added, and skips subtrees that hold none of the
+ * subscribed kinds. Forty rules therefore cost one traversal plus one call per
+ * match, not forty traversals. The walk covers every
+ * {@link Node#syntaxChildAt(int) syntactic child}, so blocks of do, for-in and function
+ * bodies and the names a {@code local} statement declares are dispatched too. It uses
+ * an explicit stack, so deep trees cannot overflow the thread's stack.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * CompositeVisitor lint = new CompositeVisitor();
+ * lint.add(CompositeVisitor.Rule.onEnter(NodeKind.FUNCTION_CALL, call -> calls++));
+ * lint.add(new UnusedLocalRule());     // implements Rule with enter and exit hooks
+ * lint.walk(chunk);
+ * }</pre>
+ */
+public final class CompositeVisitor {
+
+    /**
+     * One analysis. Hooks are only called for the kinds returned by
+     * {@link #enterKinds()} and {@link #exitKinds()}, both unions of {@link NodeKind#mask()}.
+     */
+    public interface Rule {
+        long enterKinds();
+
+        default long exitKinds() {
+            return 0;
+        }
+
+        default void enter(Node node) {}
+
+        default void exit(Node node) {}
+
+        static Rule onEnter(NodeKind kind, Consumer<? super Node> hook) {
+            return new Rule() {
+                @Override public long enterKinds()     { return kind.mask(); }
+                @Override public void enter(Node node) { hook.accept(node); }
+            };
+        }
+
+        static Rule onExit(NodeKind kind, Consumer<? super Node> hook) {
+            return new Rule() {
+                @Override public long enterKinds()    { return 0; }
+                @Override public long exitKinds()     { return kind.mask(); }
+                @Override public void exit(Node node) { hook.accept(node); }
+            };
+        }
+    }
+
+    private static final Rule[] NONE = new Rule[0];
+    private static final int KINDS = NodeKind.values().length;
+
+    private final List<Rule> rules = new ArrayList<>();
+    private Rule[][] enterTable;     // by NodeKind ordinal; rebuilt after add()
+    private Rule[][] exitTable;
+    private long subscribed;
+
+    public CompositeVisitor add(Rule rule) {
+        if (rule == null) throw new IllegalArgumentException("rule is null");
+        rules.add(rule);
+        enterTable = null;
+        return this;
+    }
+
+    public List<Rule> getRules() {
+        return List.copyOf(rules);
+    }
+
+    /**
+     * Walks {@code root} and its subtree once, calling every subscribed hook.
+     */
+    public void walk(Node root) {
+        if (enterTable == null) buildTables();
+        if (root == null || (root.getSubtreeKinds() & subscribed) == 0) return;
+        Rule[][] enters = enterTable;
+        Rule[][] exits = exitTable;
+
+        Node[] nodes = new Node[64];
+        int[] next = new int[64];
+        int depth = 0;
+        dispatchEnter(enters, root);
+        nodes[depth++] = root;
+
+        while (depth > 0) {
+            Node n = nodes[depth - 1];
+            int i = next[depth - 1];
+            if (i < n.syntaxChildCount()) {
+                next[depth - 1] = i + 1;
+                Node child = n.syntaxChildAt(i);
+                if (child == null || (child.getSubtreeKinds() & subscribed) == 0) continue;
+                dispatchEnter(enters, child);
+                if (depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, depth * 2);
+                    next = Arrays.copyOf(next, depth * 2);
+                }
+                nodes[depth] = child;
+                next[depth] = 0;
+                depth++;
+            } else {
+                nodes[--depth] = null;
+                for (Rule r : exits[n.getKind().ordinal()]) r.exit(n);
+            }
+        }
+    }
+
+    private static void dispatchEnter(Rule[][] enters, Node n) {
+        for (Rule r : enters[n.getKind().ordinal()]) r.enter(n);
+    }
+
+    private void buildTables() {
+        Rule[][] enters = new Rule[KINDS][];
+        Rule[][] exits = new Rule[KINDS][];
+        long mask = 0;
+        for (NodeKind kind : NodeKind.values()) {
+            List<Rule> in = new ArrayList<>();
+            List<Rule> out = new ArrayList<>();
+            for (Rule r : rules) {
+                if ((r.enterKinds() & kind.mask()) != 0) in.add(r);
+                if ((r.exitKinds() & kind.mask()) != 0) out.add(r);
+            }
+            enters[kind.ordinal()] = in.isEmpty() ? NONE : in.toArray(NONE);
+            exits[kind.ordinal()] = out.isEmpty() ? NONE : out.toArray(NONE);
+            if (!in.isEmpty() || !out.isEmpty()) mask |= kind.mask();
+        }
+        exitTable = exits;
+        subscribed = mask;
+        enterTable = enters;
+    }
+}
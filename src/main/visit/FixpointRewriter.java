@@ -0,0 +1,188 @@
+package main.visit;
+
+import main.ast.Node;
+import main.ast.NodeKind;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Applies a set of node-level rules until none of them fires anywhere in the tree.
+ * <p>Rules are tried in the order they were added, on the rules registered for the
+ * node's kind only. Instead of rerunning whole passes until nothing changes, the tree
+ * is walked once bottom-up and every node is brought to its fixpoint before its parent:
+ * when a rule replaces a node, only the new parts of the replacement are walked, then
+ * the replacement itself is offered to the rules again, and its ancestors are rebuilt
+ * and reconsidered on the way up. Subtrees already at their fixpoint are remembered by
+ * identity and never revisited, and subtrees holding none of the rules' kinds are
+ * skipped outright. Rules may inspect a node's subtree but not its parent, which still
+ * belongs to the tree before rewriting.</p>
+ * <p>A rule set that never settles, such as two rules undoing each other, is stopped
+ * after {@link #setMaxRewrites(long)} replacements with an {@link IllegalStateException}.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * FixpointRewriter simplifier = new FixpointRewriter()
+ *         .addRule("fold-arithmetic", NodeKind.BINARY, Folding::foldArithmetic)
+ *         .addRule("strip-parens", NodeKind.PARENTHESIS_EXPRESSION, Folding::stripRedundantParens);
+ * Chunk simplified = (Chunk) simplifier.rewrite(chunk);
+ * simplifier.getStats().forEach(System.out::println);
+ * }</pre>
+ */
+public final class FixpointRewriter {
+
+    /**
+     * Counters for one rule over the last {@link #rewrite(Node)} call.
+     *
+     * @param attempts nodes offered to the rule
+     * @param hits     times it replaced the node
+     */
+    public record RuleStats(String name, long attempts, long hits) {
+        @Override
+        public String toString() {
+            return String.format("%-24s %10d attempts %8d hits", name, attempts, hits);
+        }
+    }
+
+    private static final class Rule {
+        final String name;
+        final long kinds;
+        final Function<? super Node, ? extends Node> apply;
+        long attempts, hits;
+
+        Rule(String name, long kinds, Function<? super Node, ? extends Node> apply) {
+            this.name = name;
+            this.kinds = kinds;
+            this.apply = apply;
+        }
+    }
+
+    private static final Rule[] NONE = new Rule[0];
+
+    private final List<Rule> rules = new ArrayList<>();
+    private long maxRewrites = 1_000_000;
+    private long rewrites;
+
+    public FixpointRewriter addRule(String name, NodeKind kind, Function<? super Node, ? extends Node> rule) {
+        return addRule(name, kind.mask(), rule);
+    }
+
+    /**
+     * Adds a rule for the kinds in {@code kinds}, a union of {@link NodeKind#mask()}.
+     * The rule returns the replacement, or the node itself (or null) to leave it alone.
+     */
+    public FixpointRewriter addRule(String name, long kinds, Function<? super Node, ? extends Node> rule) {
+        if (name == null || rule == null) throw new IllegalArgumentException("name and rule are required");
+        rules.add(new Rule(name, kinds, rule));
+        return this;
+    }
+
+    /**
+     * Replacements allowed per {@link #rewrite(Node)} call before it gives up; default 1,000,000.
+     */
+    public void setMaxRewrites(long maxRewrites) {
+        if (maxRewrites <= 0) throw new IllegalArgumentException("maxRewrites must be positive: " + maxRewrites);
+        this.maxRewrites = maxRewrites;
+    }
+
+    /**
+     * Rewrites {@code root} until no rule fires and returns the result; {@code root}
+     * itself is not modified.
+     *
+     * @throws IllegalStateException if no fixpoint was reached within the rewrite limit
+     */
+    public Node rewrite(Node root) {
+        rewrites = 0;
+        for (Rule r : rules) {
+            r.attempts = 0;
+            r.hits = 0;
+        }
+        return new Engine().rewriteRoot(root);
+    }
+
+    /**
+     * Replacements made by the last {@link #rewrite(Node)} call.
+     */
+    public long getRewriteCount() {
+        return rewrites;
+    }
+
+    /**
+     * Per-rule counters of the last {@link #rewrite(Node)} call, in the order rules were added.
+     */
+    public List<RuleStats> getStats() {
+        List<RuleStats> stats = new ArrayList<>(rules.size());
+        for (Rule r : rules) stats.add(new RuleStats(r.name, r.attempts, r.hits));
+        return stats;
+    }
+
+    /** One run: the dispatch table and the nodes known to be at their fixpoint. */
+    private final class Engine extends BaseRewriter {
+        private final Rule[][] byKind = new Rule[NodeKind.values().length][];
+        private final Set<Node> settled = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final long ruleKinds;
+
+        Engine() {
+            long all = 0;
+            for (NodeKind kind : NodeKind.values()) {
+                List<Rule> matching = new ArrayList<>();
+                for (Rule r : rules) {
+                    if ((r.kinds & kind.mask()) != 0) matching.add(r);
+                }
+                byKind[kind.ordinal()] = matching.isEmpty() ? NONE : matching.toArray(NONE);
+                if (!matching.isEmpty()) all |= kind.mask();
+            }
+            this.ruleKinds = all;
+        }
+
+        @Override
+        protected long rewrittenKinds() {
+            return ruleKinds;
+        }
+
+        @Override
+        protected boolean isStateless() {
+            return true;        // a node's fixpoint depends only on its subtree
+        }
+
+        Node rewriteRoot(Node root) {
+            return postVisit(root.accept(this));
+        }
+
+        @Override
+        protected Node rewrite(Node node) {
+            return settled.contains(node) ? node : super.rewrite(node);
+        }
+
+        // Children are settled by now; settle this node, walking what the rules put in.
+        @Override
+        protected Node postVisit(Node node) {
+            Node current = node;
+            while (true) {
+                Node next = fire(current);
+                if (next == current) break;
+                current = next.accept(this);
+            }
+            settled.add(current);
+            return current;
+        }
+
+        private Node fire(Node node) {
+            for (Rule r : byKind[node.getKind().ordinal()]) {
+                r.attempts++;
+                Node out = r.apply.apply(node);
+                if (out == null || out == node) continue;
+                r.hits++;
+                if (++rewrites > maxRewrites) {
+                    throw new IllegalStateException("No fixpoint after " + maxRewrites
+                            + " rewrites; rule '" + r.name + "' was still firing on " + node.getKind());
+                }
+                return out;
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package main.visit;
+
+import main.ast.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies several {@link BaseRewriter}s in order while walking the tree as few times
+ * as possible.
+ * <p>Consecutive rewriters that are {@link BaseRewriter#isLocal() local} share one
+ * bottom-up pass. Every node is finished by all of them before its parent is rebuilt:
+ * its children are rewritten first, then the node is offered to each rewriter in the
+ * order given, each seeing the previous one's result. When a rewriter replaces the
+ * node, later rewriters get the replacement node but do not walk into new subtrees
+ * it built. This matches applying the rewriters one after another whenever none of
+ * them depends on what another produced below the node being rewritten.</p>
+ * <p>A rewriter that is not local needs the whole tree in some state. It runs as its
+ * own full pass at its position in the chain, splitting the local rewriters around it
+ * into separate fused passes.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * FusedRewriter chain = new FusedRewriter(new HelloWorldRewriter(), renamer, new IfWrapperRewriter());
+ * Chunk rewritten = (Chunk) chain.rewrite(chunk);    // hello + renamer fused, then IfWrapperRewriter alone
+ * }</pre>
+ */
+public final class FusedRewriter {
+
+    private final List<Object> passes = new ArrayList<>();    // Pass or non-local BaseRewriter
+
+    public FusedRewriter(BaseRewriter... rewriters) {
+        this(List.of(rewriters));
+    }
+
+    public FusedRewriter(List<? extends BaseRewriter> rewriters) {
+        List<BaseRewriter> group = new ArrayList<>();
+        for (BaseRewriter r : rewriters) {
+            if (r == null) throw new IllegalArgumentException("rewriter is null");
+            if (r.isLocal()) {
+                group.add(r);
+                continue;
+            }
+            if (!group.isEmpty()) passes.add(new Pass(group));
+            group.clear();
+            passes.add(r);
+        }
+        if (!group.isEmpty()) passes.add(new Pass(group));
+    }
+
+    /**
+     * Number of full traversals {@link #rewrite(Node)} makes.
+     */
+    public int getPassCount() {
+        return passes.size();
+    }
+
+    public Node rewrite(Node root) {
+        Node result = root;
+        for (Object pass : passes) {
+            result = pass instanceof Pass p ? p.rewriteRoot(result) : result.accept((BaseRewriter) pass);
+        }
+        return result;
+    }
+
+    /** One traversal applying a group of local rewriters at every node. */
+    private static final class Pass extends BaseRewriter {
+        private final BaseRewriter[] rewriters;
+        private final long[] kinds;
+        private final long allKinds;
+
+        Pass(List<BaseRewriter> group) {
+            this.rewriters = group.toArray(new BaseRewriter[0]);
+            this.kinds = new long[rewriters.length];
+            long all = 0;
+            for (int i = 0; i < rewriters.length; i++) {
+                kinds[i] = rewriters[i].rewrittenKinds();
+                all |= kinds[i];
+            }
+            this.allKinds = all;
+        }
+
+        @Override
+        protected long rewrittenKinds() {
+            return allKinds;
+        }
+
+        @Override
+        protected boolean isLocal() {
+            return true;        // every member is
+        }
+
+        Node rewriteRoot(Node root) {
+            return postVisit(root.accept(this));
+        }
+
+        // Children are final here; hand the rebuilt node to each rewriter in turn.
+        @Override
+        protected Node postVisit(Node node) {
+            for (int i = 0; i < rewriters.length; i++) {
+                if ((node.getKind().mask() & kinds[i]) != 0) {
+                    node = rewriters[i].rewriteShallow(node);
+                }
+            }
+            return node;
+        }
+    }
+}
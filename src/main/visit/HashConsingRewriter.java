@@ -0,0 +1,88 @@
+package main.visit;
+
+import main.ast.Node;
+import main.util.Span;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites a tree so that structurally equal subtrees (see
+ * {@link Node#structurallyEquals(Node)}) share one instance.
+ * <p>Children are interned bottom-up before their parent is rebuilt, so repeated
+ * table literals or calls collapse into a single subtree. By default only subtrees
+ * without spans or comments are merged, such as the code other rewriters synthesize,
+ * so every node keeps its own source position. With {@link #setMergeParsed(boolean)}
+ * parsed subtrees are merged too: a shared node then keeps the span of its first
+ * occurrence, and so does {@link main.ast.RedNode#getOffset()} at every position.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * Chunk shared = (Chunk) chunk.accept(new HashConsingRewriter());
+ * }</pre>
+ */
+public final class HashConsingRewriter extends BaseRewriter {
+
+    private final Map<Key, Node> canonical = new HashMap<>();
+    private final Set<Node> positionless = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean mergeParsed = false;
+    private int hits = 0;
+
+    /**
+     * Also merges subtrees that carry spans or comments, trading source positions for
+     * fewer nodes. Off by default.
+     */
+    public void setMergeParsed(boolean mergeParsed) {
+        this.mergeParsed = mergeParsed;
+    }
+
+    @Override
+    protected Node postVisit(Node rewritten) {
+        if (!mergeParsed && !isPositionless(rewritten)) return rewritten;
+        Node existing = canonical.putIfAbsent(new Key(rewritten), rewritten);
+        if (existing != null) {
+            hits++;
+            return existing;
+        }
+        return rewritten;
+    }
+
+    // Children are post-visited first, so only this node needs looking at.
+    private boolean isPositionless(Node node) {
+        Span span = node.getSpan();
+        if (span.getStartOffset() != 0 || span.getEndOffset() != 0) return false;
+        if (!node.getLeadingComments().isEmpty() || !node.getTrailingComments().isEmpty()) return false;
+        for (int i = 0, n = node.syntaxChildCount(); i < n; i++) {
+            Node child = node.syntaxChildAt(i);
+            if (child != null && !positionless.contains(child)) return false;
+        }
+        positionless.add(node);
+        return true;
+    }
+
+    /**
+     * Number of subtrees replaced by an earlier equal instance.
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    public int getDistinctCount() {
+        return canonical.size();
+    }
+
+    private record Key(Node node) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && node.structurallyEquals(k.node);
+        }
+
+        @Override
+        public int hashCode() {
+            long h = node.structuralHash();
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
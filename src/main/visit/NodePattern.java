@@ -0,0 +1,261 @@
+package main.visit;
+
+import main.ast.Node;
+import main.ast.NodeKind;
+import main.ast.exp.BinaryExpression;
+import main.ast.exp.IdentifierExpression;
+import main.ast.exp.LiteralExpression;
+import main.ast.exp.UnaryExpression;
+import main.lexer.TokenType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * A tree-shaped pattern over the AST, with metavariables that capture the nodes they
+ * match.
+ * <p>A pattern constrains a node's kind, its text (identifier name, literal type and
+ * value, or operator), its child count, the patterns of chosen children and arbitrary
+ * predicates. Children are addressed by {@link Node#childAt(int)} index; negative
+ * indexes count from the end, so {@code -1} is the body of an {@code if}. A name bound
+ * twice must match structurally equal subtrees both times. Patterns are immutable:
+ * every method returns a new pattern.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * // if <x> == "flatten me" then <body> end
+ * NodePattern target = NodePattern.of(NodeKind.IF_STATEMENT)
+ *         .child(0, NodePattern.binary(TokenType.EQUAL, NodePattern.capture("x"), NodePattern.literal("flatten me")))
+ *         .child(-1, NodePattern.capture("body"));
+ * Map<String, Node> bindings = target.match(node);   // null if it does not match
+ * }</pre>
+ *
+ * @see PatternRules
+ */
+public final class NodePattern {
+
+    private static final NodePattern ANY = new NodePattern(null, null, -1, null, List.of(), List.of(), List.of());
+
+    private final NodeKind kind;          // null matches every kind
+    private final String text;            // null matches any text
+    private final int childCount;         // -1 matches any count
+    private final String name;            // metavariable bound to the matched node, or null
+    private final List<Integer> childIndexes;
+    private final List<NodePattern> childPatterns;
+    private final List<Predicate<? super Node>> conditions;
+
+    private NodePattern(NodeKind kind, String text, int childCount, String name, List<Integer> childIndexes,
+                        List<NodePattern> childPatterns, List<Predicate<? super Node>> conditions) {
+        this.kind = kind;
+        this.text = text;
+        this.childCount = childCount;
+        this.name = name;
+        this.childIndexes = childIndexes;
+        this.childPatterns = childPatterns;
+        this.conditions = conditions;
+    }
+
+    /**
+     * Matches any node.
+     */
+    public static NodePattern any() {
+        return ANY;
+    }
+
+    public static NodePattern of(NodeKind kind) {
+        return new NodePattern(Objects.requireNonNull(kind, "kind"), null, -1, null, List.of(), List.of(), List.of());
+    }
+
+    /**
+     * Matches any node and binds it to {@code name}.
+     */
+    public static NodePattern capture(String name) {
+        return ANY.as(name);
+    }
+
+    /**
+     * A literal of the type {@code value} has in Java: a {@link Number} matches a number
+     * literal that prints the same, so {@code literal(1)} matches the source text {@code 1}
+     * but not {@code "1"}; a {@link Boolean} matches {@code true} or {@code false}; null
+     * matches {@code nil}; anything else matches a string with that content.
+     */
+    public static NodePattern literal(Object value) {
+        return switch (value) {
+            case null -> of(NodeKind.LITERAL).withText(literalText(TokenType.NIL, null));
+            case Number n -> number(n);
+            case Boolean b -> of(NodeKind.LITERAL).withText(literalText(b ? TokenType.TRUE : TokenType.FALSE, null));
+            default -> string(String.valueOf(value));
+        };
+    }
+
+    /**
+     * A number literal whose value prints as {@code value}, e.g. {@code number("0x10")}.
+     */
+    public static NodePattern number(Object value) {
+        return of(NodeKind.LITERAL).withText(literalText(TokenType.NUMBER, value));
+    }
+
+    /**
+     * A string literal, quoted or long-bracketed, with content {@code value}.
+     */
+    public static NodePattern string(String value) {
+        return of(NodeKind.LITERAL).withText(literalText(TokenType.STRING, value));
+    }
+
+    public static NodePattern identifier(String name) {
+        return of(NodeKind.IDENTIFIER).withText(name);
+    }
+
+    public static NodePattern binary(TokenType op, NodePattern left, NodePattern right) {
+        return of(NodeKind.BINARY).withText(op.name()).child(0, left).child(1, right);
+    }
+
+    public static NodePattern unary(TokenType op, NodePattern operand) {
+        return of(NodeKind.UNARY).withText(op.name()).child(0, operand);
+    }
+
+    /**
+     * Binds the node matched by this pattern to {@code name}.
+     */
+    public NodePattern as(String name) {
+        return new NodePattern(kind, text, childCount, Objects.requireNonNull(name, "name"),
+                childIndexes, childPatterns, conditions);
+    }
+
+    /**
+     * Requires child {@code index} (negative counts from the end) to match {@code pattern}.
+     */
+    public NodePattern child(int index, NodePattern pattern) {
+        List<Integer> indexes = new ArrayList<>(childIndexes);
+        List<NodePattern> patterns = new ArrayList<>(childPatterns);
+        indexes.add(index);
+        patterns.add(Objects.requireNonNull(pattern, "pattern"));
+        return new NodePattern(kind, text, childCount, name, List.copyOf(indexes), List.copyOf(patterns), conditions);
+    }
+
+    /**
+     * Requires exactly these children, in order.
+     */
+    public NodePattern children(NodePattern... patterns) {
+        NodePattern p = withChildCount(patterns.length);
+        for (int i = 0; i < patterns.length; i++) {
+            p = p.child(i, patterns[i]);
+        }
+        return p;
+    }
+
+    public NodePattern withChildCount(int count) {
+        if (count < 0) throw new IllegalArgumentException("count must not be negative: " + count);
+        return new NodePattern(kind, text, count, name, childIndexes, childPatterns, conditions);
+    }
+
+    /**
+     * Requires the node's text, see {@link #textOf(Node)}, to equal {@code text}.
+     */
+    public NodePattern withText(String text) {
+        return new NodePattern(kind, text, childCount, name, childIndexes, childPatterns, conditions);
+    }
+
+    public NodePattern where(Predicate<? super Node> condition) {
+        List<Predicate<? super Node>> list = new ArrayList<>(conditions);
+        list.add(Objects.requireNonNull(condition, "condition"));
+        return new NodePattern(kind, text, childCount, name, childIndexes, childPatterns, List.copyOf(list));
+    }
+
+    public boolean matches(Node node) {
+        return match(node) != null;
+    }
+
+    /**
+     * The metavariable bindings if {@code node} matches, otherwise null.
+     */
+    public Map<String, Node> match(Node node) {
+        Map<String, Node> bindings = new HashMap<>();
+        return match(node, bindings) ? bindings : null;
+    }
+
+    boolean match(Node node, Map<String, Node> bindings) {
+        if (node == null) return false;
+        if (kind != null && node.getKind() != kind) return false;
+        if (childCount >= 0 && node.childCount() != childCount) return false;
+        if (text != null && !text.equals(textOf(node))) return false;
+        for (int i = 0; i < childIndexes.size(); i++) {
+            if (!childPatterns.get(i).match(childOf(node, childIndexes.get(i)), bindings)) return false;
+        }
+        for (Predicate<? super Node> condition : conditions) {
+            if (!condition.test(node)) return false;
+        }
+        if (name != null) {
+            Node bound = bindings.putIfAbsent(name, node);
+            return bound == null || bound.structurallyEquals(node);
+        }
+        return true;
+    }
+
+    /**
+     * The text patterns compare against: an identifier's name, a literal's type and
+     * value (such as {@code NUMBER 1}, {@code STRING 1} or {@code NIL}), a binary or
+     * unary operator's {@link TokenType} name, otherwise null.
+     */
+    public static String textOf(Node node) {
+        return switch (node) {
+            case IdentifierExpression id -> id.getName();
+            case LiteralExpression lit -> literalText(lit.getType(), lit.getValue());
+            case BinaryExpression bin -> bin.getOp().name();
+            case UnaryExpression un -> un.getOp().name();
+            default -> null;
+        };
+    }
+
+    // Both string forms share a key: they denote the same value.
+    private static String literalText(TokenType type, Object value) {
+        return switch (type) {
+            case NUMBER -> "NUMBER " + value;
+            case STRING, MULTILINE_STRING -> "STRING " + value;
+            default -> type.name();
+        };
+    }
+
+    /**
+     * Child {@code index} of {@code node}, counting from the end when negative, or null if absent.
+     */
+    static Node childOf(Node node, int index) {
+        int n = node.childCount();
+        int i = index < 0 ? n + index : index;
+        return i >= 0 && i < n ? node.childAt(i) : null;
+    }
+
+    NodeKind kind() {
+        return kind;
+    }
+
+    // ----------------------------------------------------------------------
+    // Constraints seen by the decision tree in PatternRules
+    // ----------------------------------------------------------------------
+
+    /** A position below the root, and whether it tests the kind or the text there. */
+    record Test(List<Integer> path, boolean text) {}
+
+    /**
+     * Kinds and texts this pattern requires at each position, the root's kind excluded.
+     */
+    Map<Test, Object> constraints() {
+        Map<Test, Object> out = new HashMap<>();
+        collect(List.of(), out);
+        out.remove(new Test(List.of(), false));
+        return out;
+    }
+
+    private void collect(List<Integer> path, Map<Test, Object> out) {
+        if (kind != null) out.putIfAbsent(new Test(path, false), kind);
+        if (text != null) out.putIfAbsent(new Test(path, true), text);
+        for (int i = 0; i < childIndexes.size(); i++) {
+            List<Integer> childPath = new ArrayList<>(path);
+            childPath.add(childIndexes.get(i));
+            childPatterns.get(i).collect(List.copyOf(childPath), out);
+        }
+    }
+}
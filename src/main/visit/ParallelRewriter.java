@@ -0,0 +1,221 @@
+package main.visit;
+
+import main.ast.Node;
+import main.ast.NodeKind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Runs a {@link BaseRewriter#isStateless() stateless} rewriter over one tree on several
+ * threads.
+ * <p>Before rewriting, the tree is cut into units of at least
+ * {@link #setMinTaskNodes(int) a minimum size}: the bodies of function statements, local
+ * functions and anonymous functions, and runs of consecutive statements in large
+ * blocks, including the bodies of chunks and of do, else, elseif and for-in
+ * statements. Units nested in a unit are rewritten first as forked
+ * {@link java.util.concurrent.ForkJoinTask}s, then the enclosing unit is rewritten
+ * on its own thread by a fresh rewriter that takes the finished inner results as they
+ * are. Every instance sees only one thread. Results are put back by node identity, so
+ * the tree is the same as a single-threaded pass whatever the scheduling, provided the
+ * rewriter reaches children through {@link BaseRewriter#rewrite(Node)} or
+ * {@link BaseRewriter#acceptList(List)}. A rewriter that calls {@code accept} on
+ * children itself still gets the right answer, but redoes the inner units.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * ParallelRewriter parallel = new ParallelRewriter(IfWrapperRewriter::new);
+ * Chunk wrapped = (Chunk) parallel.rewrite(chunk);
+ * }</pre>
+ */
+public final class ParallelRewriter {
+
+    private static final long FUNCTIONS = NodeKind.maskOf(
+            NodeKind.FUNCTION_STATEMENT, NodeKind.LOCAL_FUNCTION_STATEMENT, NodeKind.ANONYMOUS_FUNCTION);
+
+    private final Supplier<? extends BaseRewriter> factory;
+    private final ForkJoinPool pool;
+    private final long rewrittenKinds;
+    private int minTaskNodes = 2048;
+
+    public ParallelRewriter(Supplier<? extends BaseRewriter> factory) {
+        this(factory, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param factory a new rewriter for each unit; its rewriters must be {@link BaseRewriter#isStateless() stateless}
+     */
+    public ParallelRewriter(Supplier<? extends BaseRewriter> factory, ForkJoinPool pool) {
+        if (factory == null || pool == null) throw new IllegalArgumentException("factory and pool are required");
+        BaseRewriter sample = factory.get();
+        if (!sample.isStateless()) {
+            throw new IllegalArgumentException(sample.getClass().getName() + " is not stateless and cannot be run in parallel");
+        }
+        this.factory = factory;
+        this.pool = pool;
+        this.rewrittenKinds = sample.rewrittenKinds();
+    }
+
+    /**
+     * Smallest subtree, in nodes, worth a task of its own; default 2048.
+     */
+    public void setMinTaskNodes(int minTaskNodes) {
+        if (minTaskNodes <= 0) throw new IllegalArgumentException("minTaskNodes must be positive: " + minTaskNodes);
+        this.minTaskNodes = minTaskNodes;
+    }
+
+    public Node rewrite(Node root) {
+        if (pool.getParallelism() <= 1) return root.accept(factory.get());     // planning would be pure overhead
+        Unit top = plan(root);
+        return pool.invoke(new UnitTask(top, true)).get(root);
+    }
+
+    // ----------------------------------------------------------------------
+    // Planning
+    // ----------------------------------------------------------------------
+
+    /** Sibling subtrees rewritten together by one task, after the units inside them. */
+    private record Unit(List<Node> roots, List<Unit> inner) {}
+
+    /** Per-statement sizes and units of a block on the planning stack, to cut it into runs. */
+    private static final class BlockParts {
+        final List<Integer> sizes = new ArrayList<>();
+        final List<List<Unit>> units = new ArrayList<>();
+    }
+
+    // Post-order walk over the syntactic children, so that blocks childAt folds into
+    // their parent are seen too, which sizes every subtree and cuts units bottom-up.
+    // Parallel arrays rather than a frame object per node, since this runs over the
+    // whole tree.
+    private Unit plan(Node root) {
+        Node[] nodes = new Node[64];
+        int[] next = new int[64];
+        int[] size = new int[64];                   // nodes not already inside an inner unit
+        List<List<Unit>> units = new ArrayList<>();
+        BlockParts[] parts = new BlockParts[64];
+        int depth = 0;
+        nodes[0] = root;
+        size[0] = 1;
+        units.add(List.of());
+        parts[0] = root.getKind() == NodeKind.BLOCK ? new BlockParts() : null;
+        depth++;
+
+        while (true) {
+            int top = depth - 1;
+            Node n = nodes[top];
+            if (next[top] < n.syntaxChildCount()) {
+                Node child = n.syntaxChildAt(next[top]++);
+                if (child == null) continue;
+                if ((child.getSubtreeKinds() & rewrittenKinds) == 0) {
+                    add(size, units, parts, top, 1, List.of());     // the rewriter will skip it anyway
+                    continue;
+                }
+                if (depth == nodes.length) {
+                    int grown = depth * 2;
+                    nodes = Arrays.copyOf(nodes, grown);
+                    next = Arrays.copyOf(next, grown);
+                    size = Arrays.copyOf(size, grown);
+                    parts = Arrays.copyOf(parts, grown);
+                }
+                nodes[depth] = child;
+                next[depth] = 0;
+                size[depth] = 1;
+                if (depth == units.size()) units.add(List.of());
+                else units.set(depth, List.of());
+                parts[depth] = child.getKind() == NodeKind.BLOCK ? new BlockParts() : null;
+                depth++;
+                continue;
+            }
+
+            depth--;
+            List<Unit> inner = units.get(top);
+            BlockParts block = parts[top];
+            nodes[top] = null;
+            units.set(top, null);
+            parts[top] = null;
+            if (top == 0) return new Unit(List.of(root), inner);
+
+            int parent = top - 1;
+            if (n.getKind() == NodeKind.CHUNK && (nodes[parent].getKind().mask() & FUNCTIONS) != 0
+                    && size[top] >= minTaskNodes) {
+                add(size, units, parts, parent, 1, List.of(new Unit(List.of(n), inner)));
+            } else if (block != null && block.sizes.size() > 1 && size[top] >= 2 * minTaskNodes) {
+                add(size, units, parts, parent, 1, segments(n, block));
+            } else {
+                add(size, units, parts, parent, size[top], inner);
+            }
+        }
+    }
+
+    private static void add(int[] size, List<List<Unit>> units, BlockParts[] parts, int at,
+                            int childSize, List<Unit> childUnits) {
+        size[at] += childSize;
+        if (!childUnits.isEmpty()) {
+            if (units.get(at).isEmpty()) units.set(at, new ArrayList<>());
+            units.get(at).addAll(childUnits);
+        }
+        if (parts[at] != null) {
+            parts[at].sizes.add(childSize);
+            parts[at].units.add(childUnits);
+        }
+    }
+
+    private List<Unit> segments(Node block, BlockParts parts) {
+        List<Unit> segments = new ArrayList<>();
+        List<Node> roots = new ArrayList<>();
+        List<Unit> inner = new ArrayList<>();
+        int size = 0;
+        for (int i = 0; i < parts.sizes.size(); i++) {
+            roots.add(block.childAt(i));
+            inner.addAll(parts.units.get(i));
+            size += parts.sizes.get(i);
+            if (size >= minTaskNodes || i == parts.sizes.size() - 1) {
+                segments.add(new Unit(List.copyOf(roots), List.copyOf(inner)));
+                roots.clear();
+                inner.clear();
+                size = 0;
+            }
+        }
+        return segments;
+    }
+
+    // ----------------------------------------------------------------------
+    // Execution
+    // ----------------------------------------------------------------------
+
+    @SuppressWarnings("serial")     // never serialized; ForkJoinTask is Serializable only by inheritance
+    private final class UnitTask extends RecursiveTask<Map<Node, Node>> {
+        private final Unit unit;
+        private final boolean top;
+
+        UnitTask(Unit unit, boolean top) {
+            this.unit = unit;
+            this.top = top;
+        }
+
+        @Override
+        protected Map<Node, Node> compute() {
+            Map<Node, Node> done = new IdentityHashMap<>();
+            if (!unit.inner().isEmpty()) {
+                List<UnitTask> subtasks = new ArrayList<>(unit.inner().size());
+                for (Unit u : unit.inner()) subtasks.add(new UnitTask(u, false));
+                invokeAll(subtasks);
+                for (UnitTask t : subtasks) done.putAll(t.join());
+            }
+
+            BaseRewriter rewriter = factory.get();
+            rewriter.precomputed = done.isEmpty() ? null : done;
+            Map<Node, Node> results = new IdentityHashMap<>();
+            for (Node n : unit.roots()) {
+                // the whole tree is reported as one pass; units are parts of it
+                results.put(n, top ? n.accept(rewriter) : rewriter.rewriteNested(n));
+            }
+            return results;
+        }
+    }
+}
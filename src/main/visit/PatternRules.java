@@ -0,0 +1,240 @@
+package main.visit;
+
+import main.ast.Node;
+import main.ast.NodeKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * An ordered set of {@link NodePattern} rewrite rules, compiled into a decision tree so
+ * that finding the rules that can match a node takes a few lookups however many
+ * rules there are.
+ * <p>The first level is indexed by the node's kind. Below it, each level tests the kind
+ * or text (name, literal type and value, operator) at the position most rules constrain and
+ * branches on the answer; rules that do not care about that position follow every
+ * branch. The rules left at a leaf are then matched in full, in the order they were
+ * added, and the first that matches wins. A replacement that returns null or the node
+ * itself leaves the node alone.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * PatternRules rules = new PatternRules()
+ *         .add(NodePattern.binary(TokenType.PLUS, NodePattern.capture("x"), NodePattern.literal(0)),
+ *              m -> m.get("x"))                            // x + 0  ->  x
+ *         .add(NodePattern.of(NodeKind.PARENTHESIS_EXPRESSION).child(0, NodePattern.of(NodeKind.IDENTIFIER).as("id")),
+ *              m -> m.get("id"));                          // (id)  ->  id
+ * Chunk simplified = (Chunk) rules.rewrite(chunk);        // one bottom-up pass
+ * new FixpointRewriter().addRule("simplify", rules.getKinds(), rules::apply).rewrite(chunk);   // until stable
+ * }</pre>
+ */
+public final class PatternRules {
+
+    /**
+     * A successful match: the node and the metavariables bound in it.
+     */
+    public record Match(Node node, Map<String, Node> bindings) {
+        /**
+         * The node bound to {@code name}, or null if the pattern has no such metavariable.
+         */
+        @SuppressWarnings("unchecked")
+        public <T extends Node> T get(String name) {
+            return (T) bindings.get(name);
+        }
+    }
+
+    private record Rule(NodePattern pattern, Function<? super Match, ? extends Node> replacement,
+                        Map<NodePattern.Test, Object> constraints) {}
+
+    /** Inner nodes test {@code test}; leaves hold the candidate rules in order. */
+    private static final class Decision {
+        NodePattern.Test test;
+        Map<Object, Decision> branches;
+        Decision otherwise;
+        Rule[] candidates;
+    }
+
+    private static final Rule[] NO_RULES = new Rule[0];
+
+    private final List<Rule> rules = new ArrayList<>();
+    private Decision[] roots;         // by NodeKind ordinal; rebuilt after add()
+    private long kinds;
+
+    public PatternRules add(NodePattern pattern, Function<? super Match, ? extends Node> replacement) {
+        if (pattern == null || replacement == null) throw new IllegalArgumentException("pattern and replacement are required");
+        rules.add(new Rule(pattern, replacement, pattern.constraints()));
+        roots = null;
+        return this;
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    /**
+     * Kinds that some rule can match, as a union of {@link NodeKind#mask()}.
+     */
+    public long getKinds() {
+        compile();
+        return kinds;
+    }
+
+    /**
+     * The first rule matching {@code node}, or null if none does.
+     */
+    public Match match(Node node) {
+        for (Rule r : candidates(node)) {
+            Map<String, Node> bindings = new HashMap<>();
+            if (r.pattern().match(node, bindings)) return new Match(node, bindings);
+        }
+        return null;
+    }
+
+    /**
+     * The replacement from the first matching rule whose replacement changes
+     * {@code node}, or {@code node} itself.
+     */
+    public Node apply(Node node) {
+        for (Rule r : candidates(node)) {
+            Map<String, Node> bindings = new HashMap<>();
+            if (!r.pattern().match(node, bindings)) continue;
+            Node out = r.replacement().apply(new Match(node, bindings));
+            if (out != null && out != node) return out;
+        }
+        return node;
+    }
+
+    /**
+     * Rewrites {@code root} in one bottom-up pass: each node is offered to the rules
+     * after its children have been rewritten. Use {@link FixpointRewriter} with
+     * {@link #apply(Node)} to repeat until nothing matches.
+     */
+    public Node rewrite(Node root) {
+        compile();
+        return new Pass().rewriteRoot(root);
+    }
+
+    private Rule[] candidates(Node node) {
+        compile();
+        Decision d = roots[node.getKind().ordinal()];
+        while (d.test != null) {
+            Object value = valueAt(node, d.test);
+            Decision next = value != null ? d.branches.get(value) : null;
+            d = next != null ? next : d.otherwise;
+        }
+        return d.candidates;
+    }
+
+    private static Object valueAt(Node node, NodePattern.Test test) {
+        Node at = node;
+        for (int index : test.path()) {
+            at = NodePattern.childOf(at, index);
+            if (at == null) return null;
+        }
+        return test.text() ? NodePattern.textOf(at) : at.getKind();
+    }
+
+    // ----------------------------------------------------------------------
+    // Compilation
+    // ----------------------------------------------------------------------
+
+    private void compile() {
+        if (roots != null) return;
+        Decision[] compiled = new Decision[NodeKind.values().length];
+        long mask = 0;
+        for (NodeKind kind : NodeKind.values()) {
+            List<Rule> bucket = new ArrayList<>();
+            for (Rule r : rules) {
+                if (r.pattern().kind() == null || r.pattern().kind() == kind) bucket.add(r);
+            }
+            if (!bucket.isEmpty()) mask |= kind.mask();
+            compiled[kind.ordinal()] = build(bucket, new HashSet<>());
+        }
+        kinds = mask;
+        roots = compiled;
+    }
+
+    private static Decision build(List<Rule> bucket, Set<NodePattern.Test> tested) {
+        Decision d = new Decision();
+        NodePattern.Test test = bucket.size() > 1 ? mostConstrained(bucket, tested) : null;
+        if (test == null) {
+            d.candidates = bucket.isEmpty() ? NO_RULES : bucket.toArray(NO_RULES);
+            return d;
+        }
+
+        Map<Object, List<Rule>> split = new HashMap<>();
+        List<Rule> indifferent = new ArrayList<>();
+        for (Rule r : bucket) {
+            Object required = r.constraints().get(test);
+            if (required == null) indifferent.add(r);
+            else split.computeIfAbsent(required, k -> new ArrayList<>());
+        }
+        // every branch keeps the rules that do not care, in their original order
+        for (Rule r : bucket) {
+            Object required = r.constraints().get(test);
+            if (required == null) split.values().forEach(list -> list.add(r));
+            else split.get(required).add(r);
+        }
+
+        Set<NodePattern.Test> below = new HashSet<>(tested);
+        below.add(test);
+        d.test = test;
+        d.branches = new HashMap<>();
+        split.forEach((value, rules) -> d.branches.put(value, build(rules, below)));
+        d.otherwise = build(indifferent, below);
+        return d;
+    }
+
+    // The untested position constrained by the most rules; kinds before texts, shallow before deep.
+    private static NodePattern.Test mostConstrained(List<Rule> bucket, Set<NodePattern.Test> tested) {
+        Map<NodePattern.Test, Integer> counts = new HashMap<>();
+        for (Rule r : bucket) {
+            for (NodePattern.Test t : r.constraints().keySet()) {
+                if (!tested.contains(t)) counts.merge(t, 1, Integer::sum);
+            }
+        }
+        NodePattern.Test best = null;
+        int bestCount = 0;
+        for (Map.Entry<NodePattern.Test, Integer> e : counts.entrySet()) {
+            NodePattern.Test t = e.getKey();
+            int c = e.getValue();
+            if (best == null || c > bestCount || c == bestCount && precedes(t, best)) {
+                best = t;
+                bestCount = c;
+            }
+        }
+        return best;
+    }
+
+    private static boolean precedes(NodePattern.Test a, NodePattern.Test b) {
+        if (a.text() != b.text()) return !a.text();
+        if (a.path().size() != b.path().size()) return a.path().size() < b.path().size();
+        return a.path().toString().compareTo(b.path().toString()) < 0;
+    }
+
+    /** One bottom-up pass offering every rebuilt node to the rules. */
+    private final class Pass extends BaseRewriter {
+        @Override
+        protected long rewrittenKinds() {
+            return kinds;
+        }
+
+        @Override
+        protected boolean isStateless() {
+            return true;        // rules see only the node they are given
+        }
+
+        Node rewriteRoot(Node root) {
+            return postVisit(root.accept(this));
+        }
+
+        @Override
+        protected Node postVisit(Node node) {
+            return apply(node);
+        }
+    }
+}
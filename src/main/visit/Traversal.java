@@ -0,0 +1,259 @@
+package main.visit;
+
+import main.ast.Node;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Walks a tree with an explicit stack instead of Java recursion, so nesting depth is
+ * limited by the heap rather than the thread's stack.
+ * <p>{@link #run(Node, Script)} drives visitors that produce output in order, such as
+ * code generators. When a node is entered, the script schedules the parts of that node
+ * in output order: child visits and numbered steps (text, indentation, anything the
+ * script interprets). They run after the node's callback returns and before anything
+ * scheduled earlier, so a step scheduled after the last child acts as the node's post
+ * event. Work with nothing queued ahead of it runs at once instead, recursing up to
+ * {@value #MAX_NESTING} levels, so shallow trees cost about what a recursive visitor
+ * does and only the deep parts go through the stack. Nothing is allocated per node.</p>
+ * <p>{@link #reduce(Node, Reducer)} drives bottom-up computations such as rewriters.
+ * Every node is reduced after all of its children. The children's results are
+ * collected on a value stack and handed over in {@link Node#childAt(int)} order.</p>
+ * <h3>Usage:</h3>
+ * <pre>{@code
+ * // Script: print binary expressions fully parenthesized
+ * Traversal walk = new Traversal();
+ * StringBuilder out = new StringBuilder();
+ * walk.run(root, new Traversal.Script() {
+ *     public void enter(Node node) {
+ *         if (node instanceof BinaryExpression b) {
+ *             walk.step(0, "(");
+ *             walk.visit(b.getLeft());
+ *             walk.step(0, " " + b.getOp().getSymbolText() + " ");
+ *             walk.visit(b.getRight());
+ *             walk.step(0, ")");
+ *         } else {
+ *             walk.step(0, NodePattern.textOf(node));
+ *         }
+ *     }
+ *     public void step(int op, Object arg) { out.append(arg); }
+ * });
+ *
+ * // Reducer: count nodes bottom-up
+ * int count = Traversal.reduce(root, new Traversal.Reducer<Integer>() {
+ *     public Integer skip(Node child) { return null; }
+ *     public Integer reduce(Node node, List<Integer> children) {
+ *         int sum = 1;
+ *         for (Integer c : children) sum += c;
+ *         return sum;
+ *     }
+ * });
+ * }</pre>
+ */
+public final class Traversal {
+
+    /**
+     * Callbacks of {@link #run(Node, Script)}.
+     */
+    public interface Script {
+        /**
+         * Called when {@code node} is reached; schedule its parts on the traversal.
+         */
+        void enter(Node node);
+
+        /**
+         * Performs a step scheduled with {@link #step(int, Object)}. May schedule more work.
+         */
+        void step(int op, Object arg);
+    }
+
+    /**
+     * Callbacks of {@link #reduce(Node, Reducer)}.
+     */
+    public interface Reducer<R> {
+        /**
+         * The result for {@code child} without walking it, or null to walk it.
+         */
+        R skip(Node child);
+
+        /**
+         * Combines {@code node} with its children's results, one per child in
+         * {@link Node#childAt(int)} order (null for a null child). The list is only
+         * valid during this call.
+         */
+        R reduce(Node node, List<R> children);
+    }
+
+    private static final int VISIT = -1;
+    private static final int MAX_NESTING = 128;
+
+    private int[] ops = new int[64];          // work stack, top at size - 1
+    private Object[] args = new Object[64];
+    private int size;
+
+    private int[] pendingOps = new int[16];   // scheduled by the running callback, in order
+    private Object[] pendingArgs = new Object[16];
+    private int pending;
+
+    private Script script;        // while running
+    private int nesting;          // enter() calls running inside one another
+
+    /**
+     * Schedules a visit of {@code node}. Null is ignored.
+     */
+    public void visit(Node node) {
+        if (node == null) return;
+        if (script != null && pending == 0 && nesting < MAX_NESTING) {
+            nesting++;
+            try {
+                script.enter(node);
+            } finally {
+                nesting--;
+            }
+        } else {
+            schedule(VISIT, node);
+        }
+    }
+
+    /**
+     * Schedules {@code op}, a number of the script's choosing (zero or more), with {@code arg}.
+     */
+    public void step(int op, Object arg) {
+        if (op < 0) throw new IllegalArgumentException("op must not be negative: " + op);
+        if (script != null && pending == 0) script.step(op, arg);
+        else schedule(op, arg);
+    }
+
+    public void step(int op) {
+        step(op, null);
+    }
+
+    /**
+     * Enters {@code root} and runs everything scheduled from there on, depth first.
+     */
+    public void run(Node root, Script script) {
+        if (this.script != null) throw new IllegalStateException("Traversal is already running");
+        size = 0;
+        pending = 0;
+        nesting = 0;
+        this.script = script;
+        try {
+            visit(root);
+            flush();
+            while (size > 0) {
+                int op = ops[--size];
+                Object arg = args[size];
+                args[size] = null;
+                if (op == VISIT) script.enter((Node) arg);
+                else script.step(op, arg);
+                flush();
+            }
+        } finally {
+            this.script = null;
+            Arrays.fill(args, 0, size, null);
+        }
+    }
+
+    private void schedule(int op, Object arg) {
+        if (pending == pendingOps.length) {
+            pendingOps = Arrays.copyOf(pendingOps, pending * 2);
+            pendingArgs = Arrays.copyOf(pendingArgs, pending * 2);
+        }
+        pendingOps[pending] = op;
+        pendingArgs[pending] = arg;
+        pending++;
+    }
+
+    // Moves the callback's work onto the stack, reversed so the first scheduled runs first.
+    private void flush() {
+        if (size + pending > ops.length) {
+            int grown = Math.max(ops.length * 2, size + pending);
+            ops = Arrays.copyOf(ops, grown);
+            args = Arrays.copyOf(args, grown);
+        }
+        for (int i = pending - 1; i >= 0; i--) {
+            ops[size] = pendingOps[i];
+            args[size] = pendingArgs[i];
+            pendingArgs[i] = null;
+            size++;
+        }
+        pending = 0;
+    }
+
+    // ----------------------------------------------------------------------
+    // Bottom-up reduction
+    // ----------------------------------------------------------------------
+
+    /**
+     * Reduces {@code root} bottom-up and returns its result.
+     */
+    public static <R> R reduce(Node root, Reducer<R> reducer) {
+        Node[] nodes = new Node[64];
+        int[] next = new int[64];
+        int[] base = new int[64];
+        Object[] values = new Object[64];
+        int top = 0;
+        int depth = 1;
+        nodes[0] = root;
+        Values<R> view = new Values<>();
+
+        while (true) {
+            int d = depth - 1;
+            Node n = nodes[d];
+            if (next[d] < n.childCount()) {
+                Node child = n.childAt(next[d]++);
+                R skipped = child == null ? null : reducer.skip(child);
+                if (child == null || skipped != null) {
+                    if (top == values.length) values = Arrays.copyOf(values, top * 2);
+                    values[top++] = skipped;
+                    continue;
+                }
+                if (depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, depth * 2);
+                    next = Arrays.copyOf(next, depth * 2);
+                    base = Arrays.copyOf(base, depth * 2);
+                }
+                nodes[depth] = child;
+                next[depth] = 0;
+                base[depth] = top;
+                depth++;
+                continue;
+            }
+
+            view.set(values, base[d], top - base[d]);
+            R result = reducer.reduce(n, view);
+            view.set(null, 0, 0);
+            Arrays.fill(values, base[d], top, null);
+            top = base[d];
+            nodes[d] = null;
+            if (--depth == 0) return result;
+            if (top == values.length) values = Arrays.copyOf(values, top * 2);
+            values[top++] = result;
+        }
+    }
+
+    /** Window onto the value stack holding one node's child results. */
+    private static final class Values<R> extends AbstractList<R> {
+        private Object[] values;
+        private int from, count;
+
+        void set(Object[] values, int from, int count) {
+            this.values = values;
+            this.from = from;
+            this.count = count;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public R get(int index) {
+            if (index < 0 || index >= count) throw new IndexOutOfBoundsException(index);
+            return (R) values[from + index];
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
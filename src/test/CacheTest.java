@@ -0,0 +1,96 @@
+package test;
+
+import main.ast.Chunk;
+import main.parser.ChunkCache;
+import main.parser.ParseCache;
+import main.parser.Parser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class CacheTest {
+
+    void main() throws IOException {
+        Path dir = Files.createTempDirectory("parse-cache");
+        try {
+            parseCache(dir);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        chunkCache();
+    }
+
+    private static void parseCache(Path dir) throws IOException {
+        String source = source(0);
+        ParseCache cache = ParseCache.open(dir.resolve("hits"), 1L << 20);
+        report("parse cache misses when empty", cache.get(source) == null && cache.getMisses() == 1);
+
+        Chunk chunk = new Parser(source).parseChunk();
+        cache.put(source, chunk);
+        Chunk cached = cache.get(source);
+        report("parse cache hits after put", cached != null && cached.structurallyEquals(chunk)
+                && cache.getHits() == 1 && cache.getWrites() == 1 && cache.getEntryCount() == 1);
+
+        Chunk parsed = new Parser(source, ParseCache.open(dir.resolve("hits"), 1L << 20)).parseChunk();
+        report("parser reads a reopened cache", parsed.structurallyEquals(chunk));
+
+        // room for about two entries, so older ones go as new ones arrive
+        long budget = cache.getSizeBytes() * 5 / 2;
+        ParseCache small = ParseCache.open(dir.resolve("evict"), budget);
+        for (int i = 0; i < 6; i++) {
+            small.put(source(i), new Parser(source(i)).parseChunk());
+        }
+        report("parse cache evicts over budget", small.getEvictions() > 0 && small.getSizeBytes() <= budget
+                && small.get(source(5)) != null && small.get(source(0)) == null);
+    }
+
+    private static void chunkCache() {
+        ChunkCache cache = new ChunkCache(64L << 20);
+        Path path = Path.of("a.lua");
+        Chunk first = cache.get(path, source(0));
+        Chunk second = cache.get(path, source(0));
+        report("chunk cache loads once, then hits", first == second
+                && cache.getLoads() == 1 && cache.getMisses() == 1 && cache.getHits() == 1);
+        report("chunk cache keys on content", cache.get(path, source(1)) != first && cache.getLoads() == 2);
+
+        cache.invalidateAll();
+        report("chunk cache empties on invalidateAll", cache.size() == 0 && cache.getWeight() == 0
+                && cache.getIfPresent(path, source(0)) == null);
+
+        // room for a few trees: keys seen once are turned away, while a key asked for again
+        // displaces the oldest entry once the next key pushes it out of the admission window
+        long weight = ChunkCache.estimateWeight(first);
+        ChunkCache small = new ChunkCache(weight * 4);
+        for (int i = 0; i < 40; i++) {
+            small.get(Path.of(i + ".lua"), source(i));
+        }
+        report("chunk cache rejects one-off keys", small.getRejections() > 0 && small.getWeight() <= weight * 4);
+        Path popular = Path.of("popular.lua");
+        for (int i = 0; i < 3; i++) {
+            small.get(popular, source(100));
+        }
+        small.get(Path.of("next.lua"), source(101));
+        report("chunk cache evicts for a popular key", small.getEvictions() > 0
+                && small.getIfPresent(popular, source(100)) != null && small.getWeight() <= weight * 4);
+
+        ChunkCache tiny = new ChunkCache(weight / 2);
+        tiny.get(path, source(0));
+        report("chunk cache rejects trees over a segment", tiny.getRejections() == 1 && tiny.size() == 0);
+    }
+
+    // Sources of nearly equal size, so weights and file sizes stay comparable
+    private static String source(int i) {
+        return ("local t" + i + " = { 1, 2, 3, \"four\" }\n").repeat(20) + "print(t" + i + ")\n";
+    }
+
+    private static void report(String name, boolean ok) {
+        IO.println((ok ? "[OK] " : "[FAIL] ") + name);
+    }
+}
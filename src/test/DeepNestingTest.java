@@ -0,0 +1,101 @@
+package test;
+
+import main.ast.Chunk;
+import main.ast.Node;
+import main.examples.rewriters.FlattenerRewriter;
+import main.examples.rewriters.HelloWorldRewriter;
+import main.parser.Parser;
+import main.util.ASTBinaryReader;
+import main.util.ASTBinaryWriter;
+import main.util.ASTSnapshot;
+import main.util.ASTSnapshotWriter;
+import main.visit.BaseRewriter;
+import main.visit.FusedRewriter;
+import main.visit.HashConsingRewriter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.function.UnaryOperator;
+
+public class DeepNestingTest {
+
+    // Far deeper than a recursive walk survives on the small stack below
+    private static final int DEPTH = 20_000;
+    private static final long STACK = 1L << 20;
+
+    void main() throws Exception {
+        Chunk blocks = parse(nest("do ", "f()", " end", DEPTH));
+        Chunk expressions = parse("return " + nest("(", "1", ")", DEPTH));
+
+        rewrite("identity rewriter", blocks, root -> root.accept(new BaseRewriter() {}));
+        rewrite("FlattenerRewriter", blocks, root -> root.accept(new FlattenerRewriter()));
+        rewrite("HelloWorldRewriter", expressions, root -> root.accept(new HelloWorldRewriter()));
+        rewrite("FusedRewriter", expressions, root -> new FusedRewriter(new HelloWorldRewriter(), new HelloWorldRewriter()).rewrite(root));
+        rewrite("HashConsingRewriter", blocks, root -> root.accept(new HashConsingRewriter()));
+        rewrite("HashConsingRewriter merging parsed trees", expressions, root -> {
+            HashConsingRewriter rewriter = new HashConsingRewriter();
+            rewriter.setMergeParsed(true);
+            return root.accept(rewriter);
+        });
+
+        for (Chunk chunk : new Chunk[] { blocks, expressions }) {
+            String shape = chunk == blocks ? " (blocks)" : " (expressions)";
+            check("structural hash and equality" + shape, () -> {
+                // a decoded copy has no cached hashes yet
+                Chunk copy = ASTBinaryReader.read(ASTBinaryWriter.toByteArray(chunk));
+                return copy.structuralHash() == chunk.structuralHash() && copy.structurallyEquals(chunk);
+            });
+            check("binary round-trip" + shape, () -> ASTBinaryReader.read(ASTBinaryWriter.toByteArray(chunk)).structurallyEquals(chunk));
+            check("snapshot round-trip" + shape, () -> {
+                Path file = Files.createTempFile("deep", ".ast");
+                try {
+                    try (ASTSnapshotWriter writer = ASTSnapshotWriter.create(file)) {
+                        writer.add("deep", chunk);
+                    }
+                    try (ASTSnapshot snapshot = ASTSnapshot.open(file)) {
+                        return snapshot.materialize(snapshot.root(0)).structurallyEquals(chunk);
+                    }
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            });
+        }
+    }
+
+    private static String nest(String open, String inner, String close, int depth) {
+        return open.repeat(depth) + inner + close.repeat(depth);
+    }
+
+    // The parser itself recurses, so it gets a large stack
+    private static Chunk parse(String source) throws InterruptedException {
+        Chunk[] chunk = new Chunk[1];
+        Thread parse = new Thread(null, () -> chunk[0] = new Parser(source).parseChunk(), "deep-parse", 1L << 30);
+        parse.start();
+        parse.join();
+        return chunk[0];
+    }
+
+    private static void rewrite(String name, Node root, UnaryOperator<Node> work) throws InterruptedException {
+        check(name, () -> work.apply(root).getSubtreeSize() == root.getSubtreeSize());
+    }
+
+    private static void check(String name, Callable<Boolean> work) throws InterruptedException {
+        Object[] outcome = new Object[1];
+        Thread t = new Thread(null, () -> {
+            try {
+                outcome[0] = work.call();
+            } catch (Throwable x) {
+                outcome[0] = x;
+            }
+        }, "deep-" + name, STACK);
+        t.start();
+        t.join();
+
+        if (Boolean.TRUE.equals(outcome[0])) {
+            IO.println("[OK] " + name + " at depth " + DEPTH);
+        } else {
+            IO.println("[FAIL] " + name + " at depth " + DEPTH + ": " + (outcome[0] instanceof Throwable x ? x : "result differs"));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package test;
+
+import main.ast.Chunk;
+import main.ast.Node;
+import main.ast.NodeKind;
+import main.ast.exp.IdentifierExpression;
+import main.examples.rewriters.FlattenerRewriter;
+import main.examples.rewriters.HelloWorldRewriter;
+import main.examples.rewriters.IfWrapperRewriter;
+import main.parser.Parser;
+import main.util.ASTStringGenerator;
+import main.util.CorpusGenerator;
+import main.visit.BaseRewriter;
+import main.visit.CompositeVisitor;
+import main.visit.FusedRewriter;
+import main.visit.ParallelRewriter;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+public class RewriterEquivalenceTest {
+
+    void main() {
+        String hello = "local s = \"goodbye world\"\nprint(\"goodbye world\", x)\n";
+        List<String> sources = List.of(
+                hello,
+                "do\n" + hello + "end\n",
+                "for k, v in pairs(t) do\n" + new CorpusGenerator(1).generate(20_000) + "\nend\n",
+                "if a then x() elseif b then\n" + new CorpusGenerator(2).generate(100_000) + "\nend\n",
+                new CorpusGenerator(3).generate(200_000));
+
+        for (int i = 0; i < sources.size(); i++) {
+            Chunk chunk = new Parser(sources.get(i)).parseChunk();
+            checkFused("source " + i, chunk);
+            checkParallel("source " + i, chunk);
+            checkComposite("source " + i, chunk);
+        }
+
+        // guards against the chain above comparing two unchanged trees
+        String text = ASTStringGenerator.generate(new FusedRewriter(new HelloWorldRewriter(), new Renamer())
+                .rewrite(new Parser(hello).parseChunk()), false);
+        report("fused chain rewrites", text.contains("hello world") && text.contains("renamed") && !text.contains("goodbye"));
+    }
+
+    private static void checkFused(String name, Chunk chunk) {
+        FusedRewriter fused = new FusedRewriter(new HelloWorldRewriter(), new Renamer(), new IfWrapperRewriter(), new FlattenerRewriter());
+        Node sequential = chunk.accept(new HelloWorldRewriter())
+                .accept(new Renamer())
+                .accept(new IfWrapperRewriter())
+                .accept(new FlattenerRewriter());
+        report("fused equals sequential, " + name, fused.getPassCount() == 3 && same(fused.rewrite(chunk), sequential));
+    }
+
+    private static void checkParallel(String name, Chunk chunk) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelRewriter parallel = new ParallelRewriter(IfWrapperRewriter::new, pool);
+            parallel.setMinTaskNodes(64);
+            report("parallel equals sequential, " + name, same(parallel.rewrite(chunk), chunk.accept(new IfWrapperRewriter())));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // One shared walk must see the same nodes as a separate search per kind
+    private static void checkComposite(String name, Chunk chunk) {
+        List<NodeKind> kinds = List.of(NodeKind.LITERAL, NodeKind.IDENTIFIER, NodeKind.FUNCTION_CALL, NodeKind.BLOCK);
+        Map<NodeKind, Integer> counts = new EnumMap<>(NodeKind.class);
+        CompositeVisitor composite = new CompositeVisitor();
+        for (NodeKind kind : kinds) {
+            counts.put(kind, 0);
+            composite.add(CompositeVisitor.Rule.onEnter(kind, node -> counts.merge(node.getKind(), 1, Integer::sum)));
+        }
+        composite.walk(chunk);
+
+        boolean ok = true;
+        for (NodeKind kind : kinds) {
+            ok &= counts.get(kind) == chunk.ofKind(kind).size();
+        }
+        report("composite equals separate walks, " + name, ok);
+    }
+
+    private static boolean same(Node a, Node b) {
+        return a.structurallyEquals(b) && ASTStringGenerator.generate(a, true).equals(ASTStringGenerator.generate(b, true));
+    }
+
+    private static void report(String name, boolean ok) {
+        IO.println((ok ? "[OK] " : "[FAIL] ") + name);
+    }
+
+    // A second local rewriter, so that the fused chain actually shares a pass
+    private static final class Renamer extends BaseRewriter {
+        @Override
+        protected long rewrittenKinds() {
+            return NodeKind.IDENTIFIER.mask();
+        }
+
+        @Override
+        protected boolean isLocal() {
+            return true;
+        }
+
+        @Override
+        public Node visitIdentifier(IdentifierExpression n) {
+            return n.getName().equals("x")
+                    ? new IdentifierExpression("renamed", n.getSpan(), n.getLeadingComments(), n.getTrailingComments())
+                    : n;
+        }
+    }
+}
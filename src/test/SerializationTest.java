@@ -0,0 +1,71 @@
+package test;
+
+import main.ast.Chunk;
+import main.ast.Node;
+import main.parser.Parser;
+import main.util.ASTBinaryReader;
+import main.util.ASTBinaryWriter;
+import main.util.ASTSnapshot;
+import main.util.ASTSnapshotWriter;
+import main.util.ASTStringGenerator;
+import main.util.CorpusGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class SerializationTest {
+
+    void main() throws IOException {
+        Map<String, Chunk> chunks = new LinkedHashMap<>();
+        try (Stream<Path> files = Files.list(Path.of("src/test/statements"))) {
+            for (Path file : files.sorted().toList()) {
+                chunks.put(file.getFileName().toString(), new Parser(Files.readString(file)).parseChunk());
+            }
+        }
+        for (int seed = 0; seed < 4; seed++) {
+            chunks.put("generated-" + seed, new Parser(new CorpusGenerator(seed).generate(20_000)).parseChunk());
+        }
+
+        for (Map.Entry<String, Chunk> e : chunks.entrySet()) {
+            Chunk chunk = e.getValue();
+            Chunk again = ASTBinaryReader.read(ASTBinaryWriter.toByteArray(chunk));
+            report("binary round-trip " + e.getKey(), sameTree(chunk, again));
+        }
+
+        Path file = Files.createTempFile("snapshot", ".ast");
+        try {
+            try (ASTSnapshotWriter writer = ASTSnapshotWriter.create(file)) {
+                for (Map.Entry<String, Chunk> e : chunks.entrySet()) {
+                    writer.add(e.getKey(), e.getValue());
+                }
+            }
+            try (ASTSnapshot snapshot = ASTSnapshot.open(file)) {
+                List<String> names = List.copyOf(chunks.keySet());
+                report("snapshot root count", snapshot.rootCount() == names.size());
+                for (int i = 0; i < snapshot.rootCount(); i++) {
+                    String name = snapshot.rootName(i);
+                    Node materialized = snapshot.materialize(snapshot.root(i));
+                    report("snapshot round-trip " + name,
+                            name.equals(names.get(i)) && materialized.structurallyEquals(chunks.get(name)));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Binary trees keep spans and comments, so the generated text must match too
+    private static boolean sameTree(Chunk expected, Chunk actual) {
+        return expected.structurallyEquals(actual)
+                && ASTStringGenerator.generate(expected, true).equals(ASTStringGenerator.generate(actual, true));
+    }
+
+    private static void report(String name, boolean ok) {
+        IO.println((ok ? "[OK] " : "[FAIL] ") + name);
+    }
+}
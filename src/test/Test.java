@@ -1,12 +1,10 @@
 package test;
 
-import main.lexer.Lexer;
+import main.parser.ProjectParser;
 import main.parser.exceptions.ParseException;
-import main.parser.Parser;
 import main.util.ASTStringGenerator;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -37,38 +35,32 @@ public class Test {
         System.out.println(System.getProperty("user.dir"));
 
 
-        String currentTestPath = "";
-
-
-        for (String testPath : testPaths) {
-            // eliminate src/test/statements/
-            currentTestPath = testPath.replace("src/test/statements/", "");
-            try {
-                int startTime = (int) System.currentTimeMillis();
-
-                var path = Path.of(testPath); // relative path
-                var luaSource = Files.readString(path);
-
-                var lexer = new Lexer(luaSource);
-                var tokens = lexer.tokenize();
-
-                var parser = new Parser(tokens);
-                var ast = parser.parseChunk();
-
-                var b = ASTStringGenerator.generate(ast, true);
-
-                var endTime = (int) System.currentTimeMillis();
-                var duration = endTime - startTime;
-
-                IO.println("[OK] Parsed -> " + testPath + "Time: " + duration + " ms");
-            } catch (IOException e) {
-                IO.println("IO Error in file: " + currentTestPath);
-                IO.println(e.getMessage());
-            } catch (ParseException pe) {
-                IO.print("[ERROR] Parse Error in file: " + currentTestPath + " ");
-                IO.println(pe.getMessage());
-            }
-
+        List<Path> files = testPaths.stream().map(Path::of).toList();
+
+        try (ProjectParser parser = new ProjectParser()) {
+            parser.parse(files, file -> {
+                // eliminate src/test/statements/
+                String currentTestPath = file.path().toString().replace("src/test/statements/", "");
+                switch (file.error()) {
+                    case null -> {
+                        var b = ASTStringGenerator.generate(file.chunk(), true);
+                        var duration = file.parseNanos() / 1_000_000;
+                        IO.println("[OK] Parsed -> " + file.path() + "Time: " + duration + " ms");
+                    }
+                    case IOException e -> {
+                        IO.println("IO Error in file: " + currentTestPath);
+                        IO.println(e.getMessage());
+                    }
+                    case ParseException pe -> {
+                        IO.print("[ERROR] Parse Error in file: " + currentTestPath + " ");
+                        IO.println(pe.getMessage());
+                    }
+                    default -> {
+                        IO.print("[ERROR] in file: " + currentTestPath + " ");
+                        IO.println(file.error().toString());
+                    }
+                }
+            });
         }
 
     }